@@ -66,8 +66,9 @@ public class AsyncBrokerExampleHandler extends AbstractOpenServiceBrokerHandler
 	public AsyncBrokerExampleHandler(FakeService fakeService) throws IOException {
 		this.fakeService = fakeService;
 
-		// load catalog from file into memory
+		// load catalog from file into memory and share it read-only
 		catalog = readCatalogFromResourceFile("/catalog.json");
+		catalog.freeze();
 	}
 
 	@Override
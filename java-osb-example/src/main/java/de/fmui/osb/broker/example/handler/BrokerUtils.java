@@ -15,6 +15,9 @@
  */
 package de.fmui.osb.broker.example.handler;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
 import de.fmui.osb.broker.BasicAuthCredentials;
 import de.fmui.osb.broker.RequestCredentials;
 import de.fmui.osb.broker.exceptions.UnauthorizedException;
@@ -44,9 +47,16 @@ public class BrokerUtils {
 
 		BasicAuthCredentials basicAuth = (BasicAuthCredentials) credentials;
 
-		// check username and password
-		if (!username.equals(basicAuth.getUsername()) || !password.equals(basicAuth.getPassword())) {
+		// check username and password, in constant time
+		boolean usernameMatches = isEqual(username, basicAuth.getUsername());
+		boolean passwordMatches = isEqual(password, basicAuth.getPassword());
+		if (!usernameMatches || !passwordMatches) {
 			throw new UnauthorizedException();
 		}
 	}
+
+	private static boolean isEqual(String expected, String actual) {
+		return MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8),
+				actual.getBytes(StandardCharsets.UTF_8));
+	}
 }
@@ -59,8 +59,9 @@ public class SyncBrokerExampleHandler extends AbstractOpenServiceBrokerHandler {
 	public SyncBrokerExampleHandler(FakeService fakeService) throws IOException {
 		this.fakeService = fakeService;
 
-		// load catalog from file into memory
+		// load catalog from file into memory and share it read-only
 		catalog = readCatalogFromResourceFile("/catalog.json");
+		catalog.freeze();
 	}
 
 	@Override
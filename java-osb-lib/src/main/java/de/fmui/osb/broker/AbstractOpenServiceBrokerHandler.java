@@ -15,7 +15,9 @@
  */
 package de.fmui.osb.broker;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 
 import de.fmui.osb.broker.binding.BindingLastOperationRequest;
@@ -23,6 +25,7 @@ import de.fmui.osb.broker.binding.BindingLastOperationResponse;
 import de.fmui.osb.broker.binding.FetchBindingRequest;
 import de.fmui.osb.broker.binding.FetchBindingResponse;
 import de.fmui.osb.broker.catalog.CatalogResponseBody;
+import de.fmui.osb.broker.catalog.CompiledCatalog;
 import de.fmui.osb.broker.exceptions.BadRequestException;
 import de.fmui.osb.broker.exceptions.OpenServiceBrokerException;
 import de.fmui.osb.broker.handler.OpenServiceBrokerHandler;
@@ -33,6 +36,7 @@ import de.fmui.osb.broker.instance.InstanceLastOperationResponse;
 import de.fmui.osb.broker.internal.json.JSONObjectImpl;
 import de.fmui.osb.broker.internal.json.parser.JSONParseException;
 import de.fmui.osb.broker.internal.json.parser.JSONParser;
+import de.fmui.osb.broker.internal.json.parser.JSONParserPool;
 import de.fmui.osb.broker.json.JSONObject;
 
 public abstract class AbstractOpenServiceBrokerHandler implements OpenServiceBrokerHandler {
@@ -88,6 +92,32 @@ public abstract class AbstractOpenServiceBrokerHandler implements OpenServiceBro
 		return result;
 	}
 
+	/**
+	 * Reads a compiled catalog from a resource file.
+	 * 
+	 * @param path
+	 *            the resource path
+	 * 
+	 * @return a frozen {@link CatalogResponseBody} object
+	 * 
+	 * @throws IOException
+	 *             if reading the compiled catalog fails
+	 * 
+	 * @see CompiledCatalog
+	 */
+	public CatalogResponseBody readCompiledCatalogFromResourceFile(String path) throws IOException {
+		InputStream stream = this.getClass().getResourceAsStream(path);
+		if (stream == null) {
+			throw new IOException("Resource not found: " + path);
+		}
+
+		try {
+			return CompiledCatalog.read(new BufferedInputStream(stream));
+		} finally {
+			stream.close();
+		}
+	}
+
 	/**
 	 * Reads a JSON object from a resource file.
 	 * 
@@ -101,13 +131,14 @@ public abstract class AbstractOpenServiceBrokerHandler implements OpenServiceBro
 	 */
 	public JSONObject readJSONFromResourceFile(String path) throws IOException {
 		InputStreamReader reader = null;
+		JSONParser parser = JSONParserPool.getDefault().acquire();
 		try {
 			reader = new InputStreamReader(this.getClass().getResourceAsStream(path), "UTF-8");
-			JSONParser parser = new JSONParser();
 			return parser.parse(reader, new JSONObjectImpl());
 		} catch (JSONParseException e) {
 			throw new IOException("Invalid JSON!", e);
 		} finally {
+			JSONParserPool.getDefault().release(parser);
 			if (reader != null) {
 				reader.close();
 			}
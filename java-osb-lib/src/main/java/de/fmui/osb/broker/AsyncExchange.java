@@ -0,0 +1,126 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import de.fmui.osb.broker.exceptions.ServiceUnavailableException;
+
+/**
+ * An HTTP exchange in asynchronous mode.
+ *
+ * Either the result of the request or the timeout error is sent, whichever
+ * comes first. The other one is dropped, so that a late handler never writes
+ * into a response that has already been completed.
+ */
+class AsyncExchange {
+
+	private final OpenServiceBroker broker;
+	private final HttpServletRequest request;
+	private final HttpServletResponse response;
+	private final AsyncContext asyncContext;
+	private final AtomicBoolean responded = new AtomicBoolean(false);
+
+	/**
+	 * Puts the request into asynchronous mode.
+	 *
+	 * @param timeout
+	 *            the timeout in milliseconds, 0 or less for the container default
+	 */
+	AsyncExchange(OpenServiceBroker broker, HttpServletRequest request, HttpServletResponse response, long timeout) {
+		this.broker = broker;
+		this.request = request;
+		this.response = response;
+		this.asyncContext = request.startAsync(request, response);
+
+		if (timeout > 0) {
+			asyncContext.setTimeout(timeout);
+		}
+
+		asyncContext.addListener(new AsyncListener() {
+			@Override
+			public void onTimeout(AsyncEvent event) throws IOException {
+				fail(new ServiceUnavailableException("Request processing timed out."));
+			}
+
+			@Override
+			public void onError(AsyncEvent event) throws IOException {
+				// the response can't be sent anymore
+				if (responded.compareAndSet(false, true)) {
+					asyncContext.complete();
+				}
+			}
+
+			@Override
+			public void onStartAsync(AsyncEvent event) throws IOException {
+			}
+
+			@Override
+			public void onComplete(AsyncEvent event) throws IOException {
+			}
+		});
+	}
+
+	/**
+	 * Sends the response or the error and completes the exchange, unless the
+	 * exchange has already been completed.
+	 *
+	 * @return {@code true} if the response has been sent, {@code false} if the
+	 *         exchange has already been completed
+	 */
+	boolean complete(OpenServiceBrokerResponse osbResponse, Throwable error) {
+		if (!responded.compareAndSet(false, true)) {
+			return false;
+		}
+
+		try {
+			if (error == null) {
+				broker.sendResponse(request, response, osbResponse);
+			} else {
+				broker.sendError(response, OpenServiceBroker.unwrapException(error));
+			}
+		} catch (IOException ioe) {
+			// the client is gone, nothing we can do
+		} finally {
+			asyncContext.complete();
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns whether the exchange has already been completed, for example by
+	 * the timeout. The request doesn't need to be handled anymore.
+	 */
+	boolean isCompleted() {
+		return responded.get();
+	}
+
+	/**
+	 * Sends an error and completes the exchange, unless the exchange has already
+	 * been completed.
+	 */
+	boolean fail(Exception error) {
+		return complete(null, error);
+	}
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import de.fmui.osb.broker.binding.BindRequest;
+import de.fmui.osb.broker.binding.BindResponse;
+import de.fmui.osb.broker.binding.BindingLastOperationRequest;
+import de.fmui.osb.broker.binding.BindingLastOperationResponse;
+import de.fmui.osb.broker.binding.FetchBindingRequest;
+import de.fmui.osb.broker.binding.FetchBindingResponse;
+import de.fmui.osb.broker.binding.UnbindRequest;
+import de.fmui.osb.broker.binding.UnbindResponse;
+import de.fmui.osb.broker.catalog.CatalogRequest;
+import de.fmui.osb.broker.catalog.CatalogResponse;
+import de.fmui.osb.broker.exceptions.OpenServiceBrokerException;
+import de.fmui.osb.broker.exceptions.ServiceUnavailableException;
+import de.fmui.osb.broker.handler.AsyncOpenServiceBrokerHandler;
+import de.fmui.osb.broker.handler.OpenServiceBrokerHandler;
+import de.fmui.osb.broker.instance.DeprovisionRequest;
+import de.fmui.osb.broker.instance.DeprovisionResponse;
+import de.fmui.osb.broker.instance.FetchInstanceRequest;
+import de.fmui.osb.broker.instance.FetchInstanceResponse;
+import de.fmui.osb.broker.instance.InstanceLastOperationRequest;
+import de.fmui.osb.broker.instance.InstanceLastOperationResponse;
+import de.fmui.osb.broker.instance.ProvisionRequest;
+import de.fmui.osb.broker.instance.ProvisionResponse;
+import de.fmui.osb.broker.instance.UpdateServiceInstanceRequest;
+import de.fmui.osb.broker.instance.UpdateServiceInstanceResponse;
+
+/**
+ * Adapter that turns a blocking {@link OpenServiceBrokerHandler} into an
+ * {@link AsyncOpenServiceBrokerHandler}.
+ * 
+ * Without an executor, the blocking handler is called on the calling thread and
+ * the returned stages are already completed. With an executor, the blocking
+ * handler is called on an executor thread.
+ */
+public class AsyncOpenServiceBrokerHandlerAdapter implements AsyncOpenServiceBrokerHandler {
+
+	private final OpenServiceBrokerHandler handler;
+	private final Executor executor;
+
+	/**
+	 * Creates an adapter that calls the handler on the calling thread.
+	 * 
+	 * @param handler
+	 *            the blocking handler
+	 */
+	public AsyncOpenServiceBrokerHandlerAdapter(OpenServiceBrokerHandler handler) {
+		this(handler, null);
+	}
+
+	/**
+	 * Creates an adapter that calls the handler on an executor thread.
+	 * 
+	 * @param handler
+	 *            the blocking handler
+	 * @param executor
+	 *            the executor or {@code null} to call the handler on the calling
+	 *            thread
+	 */
+	public AsyncOpenServiceBrokerHandlerAdapter(OpenServiceBrokerHandler handler, Executor executor) {
+		if (handler == null) {
+			throw new IllegalArgumentException("Handler must not be null!");
+		}
+
+		this.handler = handler;
+		this.executor = executor;
+	}
+
+	/**
+	 * Returns the wrapped blocking handler.
+	 * 
+	 * @return the blocking handler
+	 */
+	public OpenServiceBrokerHandler getHandler() {
+		return handler;
+	}
+
+	@Override
+	public void authenticate(RequestCredentials credentials) throws OpenServiceBrokerException {
+		handler.authenticate(credentials);
+	}
+
+	@Override
+	public CompletionStage<CatalogResponse> getCatalog(final CatalogRequest request) throws OpenServiceBrokerException {
+		return call(new BlockingCall<CatalogResponse>() {
+			@Override
+			public CatalogResponse call() throws OpenServiceBrokerException {
+				return handler.getCatalog(request);
+			}
+		});
+	}
+
+	@Override
+	public CompletionStage<ProvisionResponse> provision(final ProvisionRequest request)
+			throws OpenServiceBrokerException {
+		return call(new BlockingCall<ProvisionResponse>() {
+			@Override
+			public ProvisionResponse call() throws OpenServiceBrokerException {
+				return handler.provision(request);
+			}
+		});
+	}
+
+	@Override
+	public CompletionStage<FetchInstanceResponse> fetchServiceInstance(final FetchInstanceRequest request)
+			throws OpenServiceBrokerException {
+		return call(new BlockingCall<FetchInstanceResponse>() {
+			@Override
+			public FetchInstanceResponse call() throws OpenServiceBrokerException {
+				return handler.fetchServiceInstance(request);
+			}
+		});
+	}
+
+	@Override
+	public CompletionStage<UpdateServiceInstanceResponse> update(final UpdateServiceInstanceRequest request)
+			throws OpenServiceBrokerException {
+		return call(new BlockingCall<UpdateServiceInstanceResponse>() {
+			@Override
+			public UpdateServiceInstanceResponse call() throws OpenServiceBrokerException {
+				return handler.update(request);
+			}
+		});
+	}
+
+	@Override
+	public CompletionStage<DeprovisionResponse> deprovision(final DeprovisionRequest request)
+			throws OpenServiceBrokerException {
+		return call(new BlockingCall<DeprovisionResponse>() {
+			@Override
+			public DeprovisionResponse call() throws OpenServiceBrokerException {
+				return handler.deprovision(request);
+			}
+		});
+	}
+
+	@Override
+	public CompletionStage<InstanceLastOperationResponse> getLastOperationForInstance(
+			final InstanceLastOperationRequest request) throws OpenServiceBrokerException {
+		return call(new BlockingCall<InstanceLastOperationResponse>() {
+			@Override
+			public InstanceLastOperationResponse call() throws OpenServiceBrokerException {
+				return handler.getLastOperationForInstance(request);
+			}
+		});
+	}
+
+	@Override
+	public CompletionStage<BindResponse> bind(final BindRequest request) throws OpenServiceBrokerException {
+		return call(new BlockingCall<BindResponse>() {
+			@Override
+			public BindResponse call() throws OpenServiceBrokerException {
+				return handler.bind(request);
+			}
+		});
+	}
+
+	@Override
+	public CompletionStage<FetchBindingResponse> fetchServiceBinding(final FetchBindingRequest request)
+			throws OpenServiceBrokerException {
+		return call(new BlockingCall<FetchBindingResponse>() {
+			@Override
+			public FetchBindingResponse call() throws OpenServiceBrokerException {
+				return handler.fetchServiceBinding(request);
+			}
+		});
+	}
+
+	@Override
+	public CompletionStage<UnbindResponse> unbind(final UnbindRequest request) throws OpenServiceBrokerException {
+		return call(new BlockingCall<UnbindResponse>() {
+			@Override
+			public UnbindResponse call() throws OpenServiceBrokerException {
+				return handler.unbind(request);
+			}
+		});
+	}
+
+	@Override
+	public CompletionStage<BindingLastOperationResponse> getLastOperationForBinding(
+			final BindingLastOperationRequest request) throws OpenServiceBrokerException {
+		return call(new BlockingCall<BindingLastOperationResponse>() {
+			@Override
+			public BindingLastOperationResponse call() throws OpenServiceBrokerException {
+				return handler.getLastOperationForBinding(request);
+			}
+		});
+	}
+
+	private <T> CompletionStage<T> call(final BlockingCall<T> call) {
+		final CompletableFuture<T> result = new CompletableFuture<T>();
+
+		Runnable runnable = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					result.complete(call.call());
+				} catch (Throwable t) {
+					result.completeExceptionally(t);
+				}
+			}
+		};
+
+		if (executor == null) {
+			runnable.run();
+		} else {
+			try {
+				executor.execute(runnable);
+			} catch (RejectedExecutionException ree) {
+				result.completeExceptionally(new ServiceUnavailableException("Too many concurrent requests."));
+			}
+		}
+
+		return result;
+	}
+
+	private interface BlockingCall<T> {
+		T call() throws OpenServiceBrokerException;
+	}
+}
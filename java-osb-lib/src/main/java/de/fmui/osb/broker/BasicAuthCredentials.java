@@ -25,6 +25,7 @@ import de.fmui.osb.broker.internal.io.IOUtils;
  */
 public class BasicAuthCredentials extends RequestCredentials {
 
+	private String encoded;
 	private String username;
 	private String password;
 
@@ -44,6 +45,15 @@ public class BasicAuthCredentials extends RequestCredentials {
 		this.password = password;
 	}
 
+	/**
+	 * Creates credentials that are decoded when they are accessed for the first
+	 * time. A cached authenticator may never need them.
+	 */
+	private BasicAuthCredentials(HttpServletRequest request, String encoded) {
+		super(request);
+		this.encoded = encoded;
+	}
+
 	@Override
 	public boolean isBasicAuthentication() {
 		return true;
@@ -55,6 +65,7 @@ public class BasicAuthCredentials extends RequestCredentials {
 	 * @return the user name
 	 */
 	public String getUsername() {
+		decode();
 		return username;
 	}
 
@@ -64,9 +75,28 @@ public class BasicAuthCredentials extends RequestCredentials {
 	 * @return the password
 	 */
 	public String getPassword() {
+		decode();
 		return password;
 	}
 
+	private void decode() {
+		if (encoded == null) {
+			return;
+		}
+
+		String credentials = IOUtils.decodeBase64ISOString(encoded);
+		encoded = null;
+
+		int x = credentials.indexOf(':');
+		if (x == -1) {
+			username = credentials;
+			password = "";
+		} else {
+			username = credentials.substring(0, x);
+			password = credentials.substring(x + 1);
+		}
+	}
+
 	/**
 	 * Creates a {@link BasicAuthCredentials} object if the request has basic auth
 	 * credentials.
@@ -81,13 +111,7 @@ public class BasicAuthCredentials extends RequestCredentials {
 		String[] authHeader = HttpUtils.splitAuthHeader(request);
 		if (authHeader != null) {
 			if (authHeader[0].equalsIgnoreCase("basic")) {
-				String credentials = IOUtils.decodeBase64ISOString(authHeader[1]);
-				int x = credentials.indexOf(':');
-				if (x == -1) {
-					return new BasicAuthCredentials(request, credentials, "");
-				} else {
-					return new BasicAuthCredentials(request, credentials.substring(0, x), credentials.substring(x + 1));
-				}
+				return new BasicAuthCredentials(request, authHeader[1]);
 			}
 		}
 
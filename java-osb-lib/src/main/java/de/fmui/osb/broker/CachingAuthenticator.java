@@ -0,0 +1,226 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import de.fmui.osb.broker.exceptions.OpenServiceBrokerException;
+import de.fmui.osb.broker.handler.Authenticator;
+import de.fmui.osb.broker.internal.io.IOUtils;
+
+/**
+ * An {@link Authenticator} that remembers successful verifications.
+ * 
+ * Platforms poll {@code last_operation} endpoints frequently with the same
+ * credentials. If the verification is expensive, for example because it
+ * computes a salted password hash, the wrapped authenticator is only called
+ * once per time-to-live and set of credentials.
+ * 
+ * The cache doesn't hold the credentials. It is keyed by an HMAC-SHA256 digest
+ * of the raw {@code Authorization} header, computed with a random key that is
+ * created for each instance. Digests are compared in constant time. Failed
+ * verifications are not cached. The number of entries is bounded.
+ */
+public class CachingAuthenticator implements Authenticator {
+
+	/**
+	 * Default time-to-live of a successful verification in milliseconds.
+	 */
+	public static final long DEFAULT_TTL = 60 * 1000;
+
+	/**
+	 * Default maximum number of cached verifications.
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+	private static final String HMAC_ALGORITHM = "HmacSHA256";
+	private static final int MAC_POOL_SIZE = 16;
+
+	private static class Entry {
+		final byte[] digest;
+		final String principal;
+		final long expires;
+
+		Entry(byte[] digest, String principal, long expires) {
+			this.digest = digest;
+			this.principal = principal;
+			this.expires = expires;
+		}
+	}
+
+	private final Authenticator authenticator;
+	private final long ttlNanos;
+	private final int maxEntries;
+	private final SecretKeySpec key;
+	private final ArrayBlockingQueue<Mac> macPool = new ArrayBlockingQueue<Mac>(MAC_POOL_SIZE);
+	// keyed by the first 64 bits of the digest, the entry holds the full digest
+	private final ConcurrentHashMap<Long, Entry> cache = new ConcurrentHashMap<Long, Entry>();
+
+	/**
+	 * Creates a cache with the default time-to-live and size.
+	 * 
+	 * @param authenticator
+	 *            the authenticator that verifies the credentials
+	 */
+	public CachingAuthenticator(Authenticator authenticator) {
+		this(authenticator, DEFAULT_TTL, DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param authenticator
+	 *            the authenticator that verifies the credentials
+	 * @param ttl
+	 *            the time in milliseconds a successful verification is
+	 *            remembered
+	 * @param maxEntries
+	 *            the maximum number of remembered verifications
+	 */
+	public CachingAuthenticator(Authenticator authenticator, long ttl, int maxEntries) {
+		if (authenticator == null) {
+			throw new IllegalArgumentException("Authenticator must not be null!");
+		}
+		if (ttl < 1) {
+			throw new IllegalArgumentException("TTL must be positive!");
+		}
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("Max entries must be positive!");
+		}
+
+		this.authenticator = authenticator;
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttl);
+		this.maxEntries = maxEntries;
+
+		byte[] keyBytes = new byte[32];
+		new SecureRandom().nextBytes(keyBytes);
+		this.key = new SecretKeySpec(keyBytes, HMAC_ALGORITHM);
+	}
+
+	/**
+	 * Returns the wrapped authenticator.
+	 */
+	public Authenticator getAuthenticator() {
+		return authenticator;
+	}
+
+	@Override
+	public String authenticate(RequestCredentials credentials) throws OpenServiceBrokerException {
+		String header = credentials.getHttpServletRequest() == null ? null
+				: credentials.getHttpServletRequest().getHeader("Authorization");
+		if (header == null) {
+			return authenticator.authenticate(credentials);
+		}
+
+		byte[] digest = digest(header);
+		Long slot = Long.valueOf(slot(digest));
+		long now = System.nanoTime();
+
+		Entry entry = cache.get(slot);
+		if (entry != null && MessageDigest.isEqual(entry.digest, digest)) {
+			if (now - entry.expires < 0) {
+				return entry.principal;
+			}
+			cache.remove(slot, entry);
+		}
+
+		String principal = authenticator.authenticate(credentials);
+		if (principal == null) {
+			throw new IllegalStateException("Authenticator returned no principal!");
+		}
+
+		if (cache.size() >= maxEntries) {
+			evict(now);
+		}
+		cache.put(slot, new Entry(digest, principal, now + ttlNanos));
+
+		return principal;
+	}
+
+	/**
+	 * Forgets all verifications, for example after a password change.
+	 */
+	public void clear() {
+		cache.clear();
+	}
+
+	/**
+	 * Returns the number of cached verifications.
+	 */
+	public int size() {
+		return cache.size();
+	}
+
+	/**
+	 * Removes expired entries. If that doesn't free any space, an arbitrary entry
+	 * is removed.
+	 */
+	private void evict(long now) {
+		Iterator<Entry> iterator = cache.values().iterator();
+		boolean removed = false;
+		while (iterator.hasNext()) {
+			if (now - iterator.next().expires >= 0) {
+				iterator.remove();
+				removed = true;
+			}
+		}
+
+		if (!removed) {
+			iterator = cache.values().iterator();
+			if (iterator.hasNext()) {
+				iterator.next();
+				iterator.remove();
+			}
+		}
+	}
+
+	private byte[] digest(String header) {
+		Mac mac = macPool.poll();
+		if (mac == null) {
+			try {
+				mac = Mac.getInstance(HMAC_ALGORITHM);
+				mac.init(key);
+			} catch (GeneralSecurityException e) {
+				throw new RuntimeException(HMAC_ALGORITHM + " not available!", e);
+			}
+		}
+
+		try {
+			return mac.doFinal(IOUtils.toUTF8Bytes(header));
+		} finally {
+			// doFinal() resets the Mac
+			macPool.offer(mac);
+		}
+	}
+
+	private static long slot(byte[] digest) {
+		long result = 0;
+		for (int i = 0; i < 8; i++) {
+			result = (result << 8) | (digest[i] & 0xFF);
+		}
+
+		return result;
+	}
+}
@@ -15,11 +15,18 @@
  */
 package de.fmui.osb.broker;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -30,13 +37,20 @@ import de.fmui.osb.broker.binding.BindingLastOperationRequest;
 import de.fmui.osb.broker.binding.FetchBindingRequest;
 import de.fmui.osb.broker.binding.UnbindRequest;
 import de.fmui.osb.broker.catalog.CatalogRequest;
+import de.fmui.osb.broker.catalog.CatalogResponse;
+import de.fmui.osb.broker.catalog.CatalogResponseBody;
+import de.fmui.osb.broker.catalog.CatalogSource;
 import de.fmui.osb.broker.exceptions.BadRequestException;
 import de.fmui.osb.broker.exceptions.InvalidBrokerAPIVersionHeader;
 import de.fmui.osb.broker.exceptions.OpenServiceBrokerException;
+import de.fmui.osb.broker.exceptions.UpdateNotPossibleException;
 import de.fmui.osb.broker.exceptions.ValidationException;
+import de.fmui.osb.broker.handler.AsyncOpenServiceBrokerHandler;
+import de.fmui.osb.broker.handler.Authenticator;
 import de.fmui.osb.broker.handler.ContextHandler;
 import de.fmui.osb.broker.handler.ErrorLogHandler;
 import de.fmui.osb.broker.handler.OpenServiceBrokerHandler;
+import de.fmui.osb.broker.handler.StreamingParametersHandler;
 import de.fmui.osb.broker.instance.DeprovisionRequest;
 import de.fmui.osb.broker.instance.FetchInstanceRequest;
 import de.fmui.osb.broker.instance.InstanceLastOperationRequest;
@@ -45,20 +59,46 @@ import de.fmui.osb.broker.instance.ProvisionRequestBody;
 import de.fmui.osb.broker.instance.UpdateServiceInstanceRequest;
 import de.fmui.osb.broker.instance.UpdateServiceInstanceRequestBody;
 import de.fmui.osb.broker.internal.Constraints;
-import de.fmui.osb.broker.internal.io.CappedInputStream;
+import de.fmui.osb.broker.internal.io.BodyBuffer;
+import de.fmui.osb.broker.internal.io.BufferPool;
+import de.fmui.osb.broker.internal.io.CachedBody;
+import de.fmui.osb.broker.internal.io.CatalogCache;
 import de.fmui.osb.broker.internal.io.HttpUtils;
-import de.fmui.osb.broker.internal.io.IOUtils;
+import de.fmui.osb.broker.internal.json.RawJSONValue;
 import de.fmui.osb.broker.internal.json.parser.JSONParseException;
 import de.fmui.osb.broker.internal.json.parser.JSONParser;
+import de.fmui.osb.broker.internal.json.parser.JSONParserPool;
+import de.fmui.osb.broker.internal.routing.Operation;
+import de.fmui.osb.broker.internal.routing.RequestPath;
+import de.fmui.osb.broker.internal.routing.RouteMatch;
+import de.fmui.osb.broker.internal.routing.RouteTable;
 import de.fmui.osb.broker.json.JSONObject;
 import de.fmui.osb.broker.objects.Context;
+import de.fmui.osb.broker.objects.Plan;
+import de.fmui.osb.broker.objects.PreviousValues;
+import de.fmui.osb.broker.objects.Service;
 import de.fmui.osb.broker.objects.Validatable;
 
 public class OpenServiceBroker {
 
-	private BrokerAPIVersion brokerAPIMinVersion = new BrokerAPIVersion("2.4");
-	private ErrorLogHandler errorLogHandler = new DefaultErrorLogHandler();
-	private ContextHandler contextHandler = new DefaultContextHandler();
+	private static final String KEY_PARAMETERS = "parameters";
+	private static final Set<String> STREAMED_KEYS = Collections.singleton(KEY_PARAMETERS);
+
+	// read on every request, volatile instead of synchronized to avoid lock
+	// contention and carrier thread pinning on virtual threads
+	private volatile BrokerAPIVersion brokerAPIMinVersion = new BrokerAPIVersion("2.4");
+	private volatile ErrorLogHandler errorLogHandler = new DefaultErrorLogHandler();
+	private volatile ContextHandler contextHandler = new DefaultContextHandler();
+	private volatile Set<String> lazyParsedKeys = Collections.emptySet();
+	private volatile int maxBufferedResponseSize = HttpUtils.DEFAULT_MAX_BUFFERED_RESPONSE_SIZE;
+	private volatile int compressionThreshold = HttpUtils.DEFAULT_COMPRESSION_THRESHOLD;
+	private volatile boolean catalogCaching = true;
+	private volatile long asyncTimeout;
+	private volatile CatalogResponseBody catalog;
+	private volatile CatalogSource catalogSource;
+	private volatile Authenticator authenticator;
+
+	private final CatalogCache catalogCache = new CatalogCache();
 
 	/**
 	 * Sets the minimum Broker API Version that this broker requires.
@@ -66,7 +106,7 @@ public class OpenServiceBroker {
 	 * @param version
 	 *            the Broker API Version as a string
 	 */
-	public synchronized void setBrokerAPIMinVersion(String version) {
+	public void setBrokerAPIMinVersion(String version) {
 		brokerAPIMinVersion = new BrokerAPIVersion(version);
 	}
 
@@ -75,7 +115,7 @@ public class OpenServiceBroker {
 	 * 
 	 * @return the min broker API version
 	 */
-	public synchronized BrokerAPIVersion getBrokerAPIMinVersion() {
+	public BrokerAPIVersion getBrokerAPIMinVersion() {
 		return brokerAPIMinVersion;
 	}
 
@@ -85,7 +125,7 @@ public class OpenServiceBroker {
 	 * @param errorLogHandler
 	 *            the error handler or {@code null} if errors shouldn't be logged
 	 */
-	public synchronized void setErrorLogHandler(ErrorLogHandler errorLogHandler) {
+	public void setErrorLogHandler(ErrorLogHandler errorLogHandler) {
 		this.errorLogHandler = errorLogHandler;
 	}
 
@@ -94,7 +134,7 @@ public class OpenServiceBroker {
 	 * 
 	 * @return the error log handler
 	 */
-	public synchronized ErrorLogHandler getErrorLogHandler() {
+	public ErrorLogHandler getErrorLogHandler() {
 		return errorLogHandler;
 	}
 
@@ -105,7 +145,7 @@ public class OpenServiceBroker {
 	 *            the context handler or {@code null} if context objects shouldn't
 	 *            be converted
 	 */
-	public synchronized void setContextHandler(ContextHandler contextHandler) {
+	public void setContextHandler(ContextHandler contextHandler) {
 		this.contextHandler = contextHandler;
 	}
 
@@ -114,10 +154,222 @@ public class OpenServiceBroker {
 	 * 
 	 * @return the context handler
 	 */
-	public synchronized ContextHandler getContextHandler() {
+	public ContextHandler getContextHandler() {
 		return contextHandler;
 	}
 
+	/**
+	 * Sets the keys of request body fields that are parsed on first access.
+	 * 
+	 * The object values of these fields are validated while the request body is
+	 * parsed, but they are only turned into objects when a handler accesses them,
+	 * for example with {@code getParameters()}. Handlers that never look at these
+	 * fields save the parse time and the memory of the objects. This applies to
+	 * the top-level fields of provision, update and bind request bodies.
+	 * 
+	 * @param keys
+	 *            the field keys, for example {@code parameters}, or {@code null}
+	 *            to parse all fields immediately
+	 */
+	public void setLazyParsedKeys(Collection<String> keys) {
+		if (keys == null || keys.isEmpty()) {
+			lazyParsedKeys = Collections.emptySet();
+		} else {
+			lazyParsedKeys = Collections.unmodifiableSet(new LinkedHashSet<String>(keys));
+		}
+	}
+
+	/**
+	 * Gets the keys of request body fields that are parsed on first access.
+	 * 
+	 * @return the field keys, never {@code null}
+	 */
+	public Set<String> getLazyParsedKeys() {
+		return lazyParsedKeys;
+	}
+
+	/**
+	 * Sets the maximum size of a response body that is buffered and sent with a
+	 * {@code Content-Length} header.
+	 * 
+	 * Response bodies are encoded into UTF-8 bytes in a pooled buffer. Bodies up
+	 * to this size are sent in one piece with an exact {@code Content-Length}.
+	 * Larger bodies, for example big catalogs, are streamed.
+	 * 
+	 * @param size
+	 *            the size in bytes, 0 to stream all response bodies
+	 */
+	public void setMaxBufferedResponseSize(int size) {
+		if (size < 0) {
+			throw new IllegalArgumentException("Invalid size!");
+		}
+
+		maxBufferedResponseSize = size;
+	}
+
+	/**
+	 * Gets the maximum size of a response body that is buffered and sent with a
+	 * {@code Content-Length} header.
+	 * 
+	 * @return the size in bytes
+	 */
+	public int getMaxBufferedResponseSize() {
+		return maxBufferedResponseSize;
+	}
+
+	/**
+	 * Sets the minimum size of a response body that is compressed.
+	 * 
+	 * Response bodies are compressed with gzip or deflate if the client accepts
+	 * it ({@code Accept-Encoding} header) and the body has at least this size.
+	 * The default is 1024 bytes.
+	 * 
+	 * @param size
+	 *            the size in bytes, 0 to compress all response bodies, or a
+	 *            negative value to disable compression
+	 */
+	public void setCompressionThreshold(int size) {
+		compressionThreshold = size;
+	}
+
+	/**
+	 * Gets the minimum size of a response body that is compressed.
+	 * 
+	 * @return the size in bytes, a negative value if compression is disabled
+	 */
+	public int getCompressionThreshold() {
+		return compressionThreshold;
+	}
+
+	/**
+	 * Enables or disables the catalog cache.
+	 * 
+	 * If enabled (the default), the serialized catalog is kept and sent again as
+	 * long as the catalog returned by the handler doesn't change. Catalog
+	 * responses carry a strong ETag, requests with a matching
+	 * {@code If-None-Match} header get a 304 (Not Modified) response, and the
+	 * compressed catalog is kept for clients that accept compression.
+	 * 
+	 * @param enabled
+	 *            {@code true} to cache the catalog, {@code false} to serialize it
+	 *            for every request
+	 */
+	public void setCatalogCaching(boolean enabled) {
+		catalogCaching = enabled;
+		if (!enabled) {
+			catalogCache.clear();
+		}
+	}
+
+	/**
+	 * Returns whether the catalog cache is enabled.
+	 * 
+	 * @return {@code true} if the catalog is cached
+	 */
+	public boolean isCatalogCaching() {
+		return catalogCaching;
+	}
+
+	/**
+	 * Sets the timeout for requests that are processed by an
+	 * {@link AsyncOpenServiceBrokerHandler}. Requests that are not answered
+	 * within this time get a 503 error response.
+	 * 
+	 * @param timeout
+	 *            the timeout in milliseconds, 0 or less for the container default
+	 *            (the default)
+	 */
+	public void setAsyncTimeout(long timeout) {
+		asyncTimeout = timeout;
+	}
+
+	/**
+	 * Returns the timeout for requests that are processed by an
+	 * {@link AsyncOpenServiceBrokerHandler}.
+	 * 
+	 * @return the timeout in milliseconds, 0 or less for the container default
+	 */
+	public long getAsyncTimeout() {
+		return asyncTimeout;
+	}
+
+	/**
+	 * Sets the authenticator that verifies the credentials of all requests
+	 * before the handler is called. The name of the authenticated principal is
+	 * available from {@link RequestCredentials#getPrincipal()}.
+	 * 
+	 * @param authenticator
+	 *            the authenticator, or {@code null} to leave authentication to
+	 *            the handler
+	 * 
+	 * @see CachingAuthenticator
+	 */
+	public void setAuthenticator(Authenticator authenticator) {
+		this.authenticator = authenticator;
+	}
+
+	/**
+	 * Returns the authenticator.
+	 * 
+	 * @return the authenticator, or {@code null} if none is set
+	 */
+	public Authenticator getAuthenticator() {
+		return authenticator;
+	}
+
+	/**
+	 * Sets the catalog that requests are checked against.
+	 * 
+	 * If a catalog is set, provision, update, deprovision, bind, unbind and last
+	 * operation requests with an unknown service or plan ID are rejected with a
+	 * 400 (Bad Request) error before the handler is called. So are bind requests
+	 * for plans that are not bindable. Plan changes of services and plans that are
+	 * not {@code plan_updateable} are rejected with a 422 (Unprocessable Entity)
+	 * error.
+	 * 
+	 * Only set a catalog if services and plans are never removed while there are
+	 * still instances of them. Otherwise, these instances can't be deprovisioned
+	 * anymore.
+	 * 
+	 * The catalog should be frozen, so that lookups can use its index without
+	 * any checks.
+	 * 
+	 * @param catalog
+	 *            the catalog, or {@code null} to turn the checks off
+	 */
+	public void setCatalog(CatalogResponseBody catalog) {
+		this.catalogSource = null;
+		this.catalog = catalog;
+	}
+
+	/**
+	 * Sets the source of the catalog that requests are checked against. The
+	 * checks always use the current version of the catalog.
+	 * 
+	 * @param catalogSource
+	 *            the catalog source, or {@code null} to turn the checks off
+	 * 
+	 * @see #setCatalog(CatalogResponseBody)
+	 */
+	public void setCatalogSource(CatalogSource catalogSource) {
+		this.catalog = null;
+		this.catalogSource = catalogSource;
+	}
+
+	/**
+	 * Returns the catalog that requests are checked against.
+	 * 
+	 * @return the catalog, or {@code null} if requests are not checked
+	 */
+	public CatalogResponseBody getCatalog() {
+		CatalogSource source = catalogSource;
+		if (source != null) {
+			return source.getCatalog();
+		}
+
+		return catalog;
+	}
+
 	/**
 	 * Processes an Open Service Broker request.
 	 * 
@@ -133,221 +385,520 @@ public class OpenServiceBroker {
 	public void processRequest(HttpServletRequest request, HttpServletResponse response,
 			OpenServiceBrokerHandler handler) throws IOException {
 		try {
-			OpenServiceBrokerRequest osbRequest = null;
-			OpenServiceBrokerResponse osbResponse = null;
+			OpenServiceBrokerResponse osbResponse = handleRequest(request, handler);
+			send(request, response, osbResponse);
+		} catch (Exception e) {
+			sendError(response, e);
+		}
+	}
+
+	/**
+	 * Parses an Open Service Broker request and calls the handler, but doesn't
+	 * send a response.
+	 * 
+	 * @param request
+	 *            the HTTP request object
+	 * @param handler
+	 *            the handler that handles the request
+	 * 
+	 * @return the valid response object returned by the handler
+	 * 
+	 * @throws Exception
+	 *             if the request is invalid or the handler fails, see
+	 *             {@link #sendError(HttpServletResponse, Exception)}
+	 */
+	public OpenServiceBrokerResponse handleRequest(HttpServletRequest request, OpenServiceBrokerHandler handler)
+			throws Exception {
+		// check broker API version
+		BrokerAPIVersion brokerAPIVersion = checkBrokerAPIVersion(request);
+
+		// check authentication
+		RequestCredentials credentials = getCredentials(request);
+		authenticate(credentials);
+		handler.authenticate(credentials);
+
+		// detect operation and parse request
+		RouteMatch route = matchRoute(request);
+		OpenServiceBrokerRequest osbRequest = createRequestObject(route, request, brokerAPIVersion, credentials,
+				getStreamingParametersHandler(handler));
+
+		OpenServiceBrokerResponse osbResponse = null;
+		switch (route.getOperation()) {
+		case CATALOG:
+			osbResponse = handler.getCatalog((CatalogRequest) osbRequest);
+			break;
+		case PROVISION:
+			osbResponse = handler.provision((ProvisionRequest) osbRequest);
+			break;
+		case FETCH_INSTANCE:
+			osbResponse = handler.fetchServiceInstance((FetchInstanceRequest) osbRequest);
+			break;
+		case UPDATE:
+			osbResponse = handler.update((UpdateServiceInstanceRequest) osbRequest);
+			break;
+		case DEPROVISION:
+			osbResponse = handler.deprovision((DeprovisionRequest) osbRequest);
+			break;
+		case INSTANCE_LAST_OPERATION:
+			osbResponse = handler.getLastOperationForInstance((InstanceLastOperationRequest) osbRequest);
+			break;
+		case BIND:
+			osbResponse = handler.bind((BindRequest) osbRequest);
+			break;
+		case FETCH_BINDING:
+			osbResponse = handler.fetchServiceBinding((FetchBindingRequest) osbRequest);
+			break;
+		case UNBIND:
+			osbResponse = handler.unbind((UnbindRequest) osbRequest);
+			break;
+		case BINDING_LAST_OPERATION:
+			osbResponse = handler.getLastOperationForBinding((BindingLastOperationRequest) osbRequest);
+			break;
+		}
+
+		return checkResponse(osbResponse);
+	}
+
+	/**
+	 * Processes an Open Service Broker request with an asynchronous handler.
+	 * 
+	 * If the servlet request supports asynchronous processing, the request is put
+	 * into asynchronous mode and this method returns immediately. The response is
+	 * sent and the exchange is completed when the {@link CompletionStage} returned
+	 * by the handler finishes. Otherwise, this method waits for the handler.
+	 * 
+	 * @param request
+	 *            the HTTP request object
+	 * @param response
+	 *            the HTTP response object
+	 * @param handler
+	 *            the handler that handles the request
+	 * @throws IOException
+	 *             if the request cannot be read or the response cannot be sent
+	 */
+	public void processRequest(HttpServletRequest request, HttpServletResponse response,
+			AsyncOpenServiceBrokerHandler handler) throws IOException {
+		if (request.isAsyncSupported()) {
+			final AsyncExchange exchange = new AsyncExchange(this, request, response, asyncTimeout);
+			handleRequest(request, handler).whenComplete(new BiConsumer<OpenServiceBrokerResponse, Throwable>() {
+				@Override
+				public void accept(OpenServiceBrokerResponse osbResponse, Throwable error) {
+					exchange.complete(osbResponse, error);
+				}
+			});
+		} else {
+			OpenServiceBrokerResponse osbResponse;
+			try {
+				osbResponse = handleRequest(request, handler).toCompletableFuture().get();
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				sendError(response, ie);
+				return;
+			} catch (Exception e) {
+				sendError(response, unwrapException(e));
+				return;
+			}
+
+			sendResponse(request, response, osbResponse);
+		}
+	}
 
+	/**
+	 * Parses an Open Service Broker request and calls the asynchronous handler,
+	 * but doesn't send a response.
+	 * 
+	 * @param request
+	 *            the HTTP request object
+	 * @param handler
+	 *            the handler that handles the request
+	 * 
+	 * @return a {@link CompletionStage} that provides the valid response object
+	 *         returned by the handler or completes exceptionally if the request is
+	 *         invalid or the handler fails
+	 */
+	public CompletionStage<OpenServiceBrokerResponse> handleRequest(HttpServletRequest request,
+			AsyncOpenServiceBrokerHandler handler) {
+		CompletionStage<? extends OpenServiceBrokerResponse> stage = null;
+		try {
 			// check broker API version
 			BrokerAPIVersion brokerAPIVersion = checkBrokerAPIVersion(request);
 
 			// check authentication
 			RequestCredentials credentials = getCredentials(request);
+			authenticate(credentials);
 			handler.authenticate(credentials);
 
-			// detect operation
-			String method = request.getMethod();
-			String[] path = HttpUtils.splitPath(request);
-
-			if (isCatalogRequest(method, path)) {
-				// catalog request
-				osbRequest = new CatalogRequest();
-				populateRequestObject(osbRequest, request, brokerAPIVersion, credentials, null);
-
-				osbResponse = handler.getCatalog((CatalogRequest) osbRequest);
-			} else if (isProvisionRequest(method, path)) {
-				// provision request
-				String instanceID = getPathSegment(path, -1);
-
-				osbRequest = new ProvisionRequest(instanceID);
-				populateRequestObject(osbRequest, request, brokerAPIVersion, credentials, new ProvisionRequestBody());
-
-				osbResponse = handler.provision((ProvisionRequest) osbRequest);
-
-			} else if (isInstanceFetchRequest(method, path)) {
-				// fetch instance request
-				String instanceID = getPathSegment(path, -1);
-
-				osbRequest = new FetchInstanceRequest(instanceID);
-				populateRequestObject(osbRequest, request, brokerAPIVersion, credentials, null);
-
-				osbResponse = handler.fetchServiceInstance((FetchInstanceRequest) osbRequest);
-
-			} else if (isInstanceUpdateRequest(method, path)) {
-				// update request
-				String instanceID = getPathSegment(path, -1);
-
-				osbRequest = new UpdateServiceInstanceRequest(instanceID);
-				populateRequestObject(osbRequest, request, brokerAPIVersion, credentials,
-						new UpdateServiceInstanceRequestBody());
-
-				osbResponse = handler.update((UpdateServiceInstanceRequest) osbRequest);
-			} else if (isDeprovsionRequest(method, path)) {
-				// deprovision request
-				String instanceID = getPathSegment(path, -1);
-				String serviceID = getRequiredParameter(request, "service_id");
-				String planID = getRequiredParameter(request, "plan_id");
-
-				osbRequest = new DeprovisionRequest(instanceID, serviceID, planID);
-				populateRequestObject(osbRequest, request, brokerAPIVersion, credentials, null);
-
-				osbResponse = handler.deprovision((DeprovisionRequest) osbRequest);
-			} else if (isInstanceLastOperationRequest(method, path)) {
-				// instance last operation request
-				String instanceID = getPathSegment(path, -2);
-				String serviceID = request.getParameter("service_id");
-				String planID = request.getParameter("plan_id");
-				String operation = request.getParameter("operation");
-
-				osbRequest = new InstanceLastOperationRequest(instanceID, serviceID, planID, operation);
-				populateRequestObject(osbRequest, request, brokerAPIVersion, credentials, null);
-
-				osbResponse = handler.getLastOperationForInstance((InstanceLastOperationRequest) osbRequest);
-			} else if (isBindRequest(method, path)) {
-				// instance last operation request
-				String instanceID = getPathSegment(path, -3);
-				String bindingID = getPathSegment(path, -1);
-
-				osbRequest = new BindRequest(instanceID, bindingID);
-				populateRequestObject(osbRequest, request, brokerAPIVersion, credentials, new BindRequestBody());
-
-				osbResponse = handler.bind((BindRequest) osbRequest);
-			} else if (isBindingFetchRequest(method, path)) {
-				// fetch binding request
-				String instanceID = getPathSegment(path, -3);
-				String bindingID = getPathSegment(path, -1);
-
-				osbRequest = new FetchBindingRequest(instanceID, bindingID);
-				populateRequestObject(osbRequest, request, brokerAPIVersion, credentials, null);
-
-				osbResponse = handler.fetchServiceBinding((FetchBindingRequest) osbRequest);
-			} else if (isUnbindRequest(method, path)) {
-				// instance last operation request
-				String instanceID = getPathSegment(path, -3);
-				String bindingID = getPathSegment(path, -1);
-				String serviceID = getRequiredParameter(request, "service_id");
-				String planID = getRequiredParameter(request, "plan_id");
-
-				osbRequest = new UnbindRequest(instanceID, bindingID, serviceID, planID);
-				populateRequestObject(osbRequest, request, brokerAPIVersion, credentials, null);
-
-				osbResponse = handler.unbind((UnbindRequest) osbRequest);
-			} else if (isBindingLastOperationRequest(method, path)) {
-				// instance last operation request
-				String instanceID = getPathSegment(path, -4);
-				String bindingID = getPathSegment(path, -2);
-				String serviceID = request.getParameter("service_id");
-				String planID = request.getParameter("plan_id");
-				String operation = request.getParameter("operation");
-
-				osbRequest = new BindingLastOperationRequest(instanceID, bindingID, serviceID, planID, operation);
-				populateRequestObject(osbRequest, request, brokerAPIVersion, credentials, null);
-
-				osbResponse = handler.getLastOperationForBinding((BindingLastOperationRequest) osbRequest);
+			// detect operation and parse request
+			RouteMatch route = matchRoute(request);
+			OpenServiceBrokerRequest osbRequest = createRequestObject(route, request, brokerAPIVersion, credentials,
+					getStreamingParametersHandler(handler));
+
+			switch (route.getOperation()) {
+			case CATALOG:
+				stage = handler.getCatalog((CatalogRequest) osbRequest);
+				break;
+			case PROVISION:
+				stage = handler.provision((ProvisionRequest) osbRequest);
+				break;
+			case FETCH_INSTANCE:
+				stage = handler.fetchServiceInstance((FetchInstanceRequest) osbRequest);
+				break;
+			case UPDATE:
+				stage = handler.update((UpdateServiceInstanceRequest) osbRequest);
+				break;
+			case DEPROVISION:
+				stage = handler.deprovision((DeprovisionRequest) osbRequest);
+				break;
+			case INSTANCE_LAST_OPERATION:
+				stage = handler.getLastOperationForInstance((InstanceLastOperationRequest) osbRequest);
+				break;
+			case BIND:
+				stage = handler.bind((BindRequest) osbRequest);
+				break;
+			case FETCH_BINDING:
+				stage = handler.fetchServiceBinding((FetchBindingRequest) osbRequest);
+				break;
+			case UNBIND:
+				stage = handler.unbind((UnbindRequest) osbRequest);
+				break;
+			case BINDING_LAST_OPERATION:
+				stage = handler.getLastOperationForBinding((BindingLastOperationRequest) osbRequest);
+				break;
 			}
+		} catch (Exception e) {
+			CompletableFuture<OpenServiceBrokerResponse> failed = new CompletableFuture<OpenServiceBrokerResponse>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
 
-			if (osbRequest == null) {
-				// no pattern matched -> no OSB request
-				throw new OpenServiceBrokerException(400, "InvalidPath", "Not a OSB v2 path.");
-			}
+		if (stage == null) {
+			stage = CompletableFuture.completedFuture(null);
+		}
 
-			if (osbResponse == null || osbResponse.getStatusCode() < 200 || osbResponse.getStatusCode() > 299) {
-				// handler did not return a valid response
-				if (errorLogHandler != null) {
-					errorLogHandler.logError("No OSB response.");
+		return stage.thenApply(new Function<OpenServiceBrokerResponse, OpenServiceBrokerResponse>() {
+			@Override
+			public OpenServiceBrokerResponse apply(OpenServiceBrokerResponse osbResponse) {
+				try {
+					return checkResponse(osbResponse);
+				} catch (OpenServiceBrokerException e) {
+					throw new CompletionException(e);
 				}
-				throw new OpenServiceBrokerException(500, "InternalError", "Processing error");
 			}
+		});
+	}
 
-			HttpUtils.sendResponse(response, osbResponse);
-		} catch (OpenServiceBrokerException osbe) {
-			HttpUtils.sendError(response, osbe);
-		} catch (ValidationException ve) {
-			HttpUtils.sendError(response, new BadRequestException(ve.toString(), ve));
+	/**
+	 * Finds the OSB operation of a request.
+	 * 
+	 * @param request
+	 *            the HTTP request object
+	 * 
+	 * @return the route match, never {@code null}
+	 * 
+	 * @throws OpenServiceBrokerException
+	 *             if the request path is not a OSB path
+	 */
+	protected RouteMatch matchRoute(HttpServletRequest request) throws OpenServiceBrokerException {
+		String method = request.getMethod();
+		RequestPath path = HttpUtils.tokenizePath(request);
+		RouteMatch route = RouteTable.OSB_V2.match(method, path);
+
+		if (route == null) {
+			// no pattern matched -> no OSB request
+			throw new OpenServiceBrokerException(400, "InvalidPath", "Not a OSB v2 path.");
+		}
+
+		return route;
+	}
+
+	/**
+	 * Returns the handler as {@link StreamingParametersHandler} if it implements
+	 * the interface.
+	 */
+	private static StreamingParametersHandler getStreamingParametersHandler(Object handler) {
+		if (handler instanceof StreamingParametersHandler) {
+			return (StreamingParametersHandler) handler;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Creates and populates the request object for an OSB operation.
+	 * 
+	 * @param streamingHandler
+	 *            the handler that decides if parameters are streamed, may be
+	 *            {@code null}
+	 */
+	protected OpenServiceBrokerRequest createRequestObject(RouteMatch route, HttpServletRequest request,
+			BrokerAPIVersion brokerAPIVersion, RequestCredentials credentials,
+			StreamingParametersHandler streamingHandler) throws OpenServiceBrokerException, ValidationException {
+		OpenServiceBrokerRequest osbRequest = null;
+
+		switch (route.getOperation()) {
+		case CATALOG: {
+			// catalog request
+			osbRequest = new CatalogRequest();
+			populateRequestObject(osbRequest, request, brokerAPIVersion, credentials, null);
+			break;
+		}
+		case PROVISION: {
+			// provision request
+			String instanceID = checkPathSegment(route.getInstanceID());
+
+			osbRequest = new ProvisionRequest(instanceID);
+			populateRequestObject(osbRequest, request, brokerAPIVersion, credentials, new ProvisionRequestBody(),
+					streamingHandler);
+			break;
+		}
+		case FETCH_INSTANCE: {
+			// fetch instance request
+			String instanceID = checkPathSegment(route.getInstanceID());
+
+			osbRequest = new FetchInstanceRequest(instanceID);
+			populateRequestObject(osbRequest, request, brokerAPIVersion, credentials, null);
+			break;
+		}
+		case UPDATE: {
+			// update request
+			String instanceID = checkPathSegment(route.getInstanceID());
+
+			osbRequest = new UpdateServiceInstanceRequest(instanceID);
+			populateRequestObject(osbRequest, request, brokerAPIVersion, credentials,
+					new UpdateServiceInstanceRequestBody(), streamingHandler);
+			break;
+		}
+		case DEPROVISION: {
+			// deprovision request
+			String instanceID = checkPathSegment(route.getInstanceID());
+			String serviceID = getRequiredParameter(request, "service_id");
+			String planID = getRequiredParameter(request, "plan_id");
+
+			osbRequest = new DeprovisionRequest(instanceID, serviceID, planID);
+			populateRequestObject(osbRequest, request, brokerAPIVersion, credentials, null);
+			break;
+		}
+		case INSTANCE_LAST_OPERATION: {
+			// instance last operation request
+			String instanceID = checkPathSegment(route.getInstanceID());
+			String serviceID = request.getParameter("service_id");
+			String planID = request.getParameter("plan_id");
+			String operation = request.getParameter("operation");
+
+			osbRequest = new InstanceLastOperationRequest(instanceID, serviceID, planID, operation);
+			populateRequestObject(osbRequest, request, brokerAPIVersion, credentials, null);
+			break;
+		}
+		case BIND: {
+			// bind request
+			String instanceID = checkPathSegment(route.getInstanceID());
+			String bindingID = checkPathSegment(route.getBindingID());
+
+			osbRequest = new BindRequest(instanceID, bindingID);
+			populateRequestObject(osbRequest, request, brokerAPIVersion, credentials, new BindRequestBody(),
+					streamingHandler);
+			break;
+		}
+		case FETCH_BINDING: {
+			// fetch binding request
+			String instanceID = checkPathSegment(route.getInstanceID());
+			String bindingID = checkPathSegment(route.getBindingID());
+
+			osbRequest = new FetchBindingRequest(instanceID, bindingID);
+			populateRequestObject(osbRequest, request, brokerAPIVersion, credentials, null);
+			break;
+		}
+		case UNBIND: {
+			// unbind request
+			String instanceID = checkPathSegment(route.getInstanceID());
+			String bindingID = checkPathSegment(route.getBindingID());
+			String serviceID = getRequiredParameter(request, "service_id");
+			String planID = getRequiredParameter(request, "plan_id");
+
+			osbRequest = new UnbindRequest(instanceID, bindingID, serviceID, planID);
+			populateRequestObject(osbRequest, request, brokerAPIVersion, credentials, null);
+			break;
+		}
+		case BINDING_LAST_OPERATION: {
+			// binding last operation request
+			String instanceID = checkPathSegment(route.getInstanceID());
+			String bindingID = checkPathSegment(route.getBindingID());
+			String serviceID = request.getParameter("service_id");
+			String planID = request.getParameter("plan_id");
+			String operation = request.getParameter("operation");
+
+			osbRequest = new BindingLastOperationRequest(instanceID, bindingID, serviceID, planID, operation);
+			populateRequestObject(osbRequest, request, brokerAPIVersion, credentials, null);
+			break;
+		}
+		}
+
+		return osbRequest;
+	}
+
+	/**
+	 * Checks if the handler returned a valid response.
+	 */
+	protected OpenServiceBrokerResponse checkResponse(OpenServiceBrokerResponse osbResponse)
+			throws OpenServiceBrokerException {
+		if (osbResponse == null || osbResponse.getStatusCode() < 200 || osbResponse.getStatusCode() > 299) {
+			// handler did not return a valid response
+			if (errorLogHandler != null) {
+				errorLogHandler.logError("No OSB response.");
+			}
+			throw new OpenServiceBrokerException(500, "InternalError", "Processing error");
+		}
+
+		return osbResponse;
+	}
+
+	/**
+	 * Unwraps the exception that made a {@link CompletionStage} fail.
+	 */
+	static Exception unwrapException(Throwable t) {
+		while ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null) {
+			t = t.getCause();
+		}
+
+		if (t instanceof Exception) {
+			return (Exception) t;
+		}
+
+		return new RuntimeException(t);
+	}
+
+	/**
+	 * Sends a response object.
+	 * 
+	 * If the response cannot be serialized, an error response is sent instead.
+	 * 
+	 * @param response
+	 *            the HTTP response object
+	 * @param osbResponse
+	 *            the response object
+	 * 
+	 * @throws IOException
+	 *             if the response cannot be sent
+	 */
+	public void sendResponse(HttpServletResponse response, OpenServiceBrokerResponse osbResponse)
+			throws IOException {
+		sendResponse(null, response, osbResponse);
+	}
+
+	/**
+	 * Sends a response object.
+	 * 
+	 * The request headers are used for conditional catalog requests
+	 * ({@code If-None-Match}) and compression ({@code Accept-Encoding}). If the
+	 * response cannot be serialized, an error response is sent instead.
+	 * 
+	 * @param request
+	 *            the HTTP request object, may be {@code null}
+	 * @param response
+	 *            the HTTP response object
+	 * @param osbResponse
+	 *            the response object
+	 * 
+	 * @throws IOException
+	 *             if the response cannot be sent
+	 */
+	public void sendResponse(HttpServletRequest request, HttpServletResponse response,
+			OpenServiceBrokerResponse osbResponse) throws IOException {
+		try {
+			send(request, response, osbResponse);
 		} catch (Exception e) {
+			sendError(response, e);
+		}
+	}
+
+	private void send(HttpServletRequest request, HttpServletResponse response, OpenServiceBrokerResponse osbResponse)
+			throws IOException {
+		if (catalogCaching && osbResponse instanceof CatalogResponse
+				&& osbResponse.getResponseBody() instanceof CatalogResponseBody) {
+			CatalogResponseBody catalog = (CatalogResponseBody) osbResponse.getResponseBody();
+			if (catalog.isCacheable()) {
+				CachedBody body = catalogCache.get(catalog);
+				HttpUtils.sendCachedBody(request, response, osbResponse.getStatusCode(), body, compressionThreshold);
+			} else {
+				// a one-off catalog, not worth caching
+				HttpUtils.sendResponse(request, response, osbResponse, maxBufferedResponseSize,
+						compressionThreshold);
+			}
+		} else {
+			HttpUtils.sendResponse(request, response, osbResponse, maxBufferedResponseSize, compressionThreshold);
+		}
+	}
+
+	/**
+	 * Sends an error response.
+	 * 
+	 * {@link OpenServiceBrokerException} objects are turned into their OSB error
+	 * response, validation errors become a Bad Request error, and all other
+	 * exceptions are logged and sent as a generic internal error.
+	 * 
+	 * @param response
+	 *            the HTTP response object
+	 * @param exception
+	 *            the exception
+	 * 
+	 * @throws IOException
+	 *             if the response cannot be sent
+	 */
+	public void sendError(HttpServletResponse response, Exception exception) throws IOException {
+		if (exception instanceof OpenServiceBrokerException) {
+			HttpUtils.sendError(response, (OpenServiceBrokerException) exception);
+		} else if (exception instanceof ValidationException) {
+			HttpUtils.sendError(response, new BadRequestException(exception.toString(), exception));
+		} else {
 			// handle all other exceptions and return a generic error
 			if (errorLogHandler != null) {
-				errorLogHandler.logError("Could not process OSB request: " + e.getMessage(), e);
+				errorLogHandler.logError("Could not process OSB request: " + exception.getMessage(), exception);
 			}
 
 			OpenServiceBrokerException error = new OpenServiceBrokerException(500, "InternalError", "Processing error",
-					e);
+					exception);
 			HttpUtils.sendError(response, error);
 		}
 	}
 
 	protected boolean isCatalogRequest(String method, String[] path) {
-		return "GET".equals(method) && //
-				path.length >= 2 && //
-				"v2".equals(path[path.length - 2]) && //
-				"catalog".equals(path[path.length - 1]);
+		return RouteTable.OSB_V2.matches(Operation.CATALOG, method, path);
 	}
 
 	protected boolean isProvisionRequest(String method, String[] path) {
-		return "PUT".equals(method) && //
-				path.length >= 3 && //
-				"v2".equals(path[path.length - 3]) && //
-				"service_instances".equals(path[path.length - 2]);
+		return RouteTable.OSB_V2.matches(Operation.PROVISION, method, path);
 	}
 
 	protected boolean isDeprovsionRequest(String method, String[] path) {
-		return "DELETE".equals(method) && //
-				path.length >= 3 && //
-				"v2".equals(path[path.length - 3]) && //
-				"service_instances".equals(path[path.length - 2]);
+		return RouteTable.OSB_V2.matches(Operation.DEPROVISION, method, path);
 	}
 
 	protected boolean isInstanceFetchRequest(String method, String[] path) {
-		return "GET".equals(method) && //
-				path.length >= 3 && //
-				"v2".equals(path[path.length - 3]) && //
-				"service_instances".equals(path[path.length - 2]);
+		return RouteTable.OSB_V2.matches(Operation.FETCH_INSTANCE, method, path);
 	}
 
 	protected boolean isInstanceUpdateRequest(String method, String[] path) {
-		return "PATCH".equals(method) && //
-				path.length >= 3 && //
-				"v2".equals(path[path.length - 3]) && //
-				"service_instances".equals(path[path.length - 2]);
+		return RouteTable.OSB_V2.matches(Operation.UPDATE, method, path);
 	}
 
 	protected boolean isInstanceLastOperationRequest(String method, String[] path) {
-		return "GET".equals(method) && //
-				path.length >= 4 && //
-				"v2".equals(path[path.length - 4]) && //
-				"service_instances".equals(path[path.length - 3]) && //
-				"last_operation".equals(path[path.length - 1]);
+		return RouteTable.OSB_V2.matches(Operation.INSTANCE_LAST_OPERATION, method, path);
 	}
 
 	protected boolean isBindRequest(String method, String[] path) {
-		return "PUT".equals(method) && //
-				path.length >= 5 && //
-				"v2".equals(path[path.length - 5]) && //
-				"service_instances".equals(path[path.length - 4]) && //
-				"service_bindings".equals(path[path.length - 2]);
+		return RouteTable.OSB_V2.matches(Operation.BIND, method, path);
 	}
 
 	protected boolean isUnbindRequest(String method, String[] path) {
-		return "DELETE".equals(method) && //
-				path.length >= 5 && //
-				"v2".equals(path[path.length - 5]) && //
-				"service_instances".equals(path[path.length - 4]) && //
-				"service_bindings".equals(path[path.length - 2]);
+		return RouteTable.OSB_V2.matches(Operation.UNBIND, method, path);
 	}
 
 	protected boolean isBindingFetchRequest(String method, String[] path) {
-		return "GET".equals(method) && //
-				path.length >= 5 && //
-				"v2".equals(path[path.length - 5]) && //
-				"service_instances".equals(path[path.length - 4]) && //
-				"service_bindings".equals(path[path.length - 2]);
+		return RouteTable.OSB_V2.matches(Operation.FETCH_BINDING, method, path);
 	}
 
 	protected boolean isBindingLastOperationRequest(String method, String[] path) {
-		return "GET".equals(method) && //
-				path.length >= 6 && //
-				"v2".equals(path[path.length - 6]) && //
-				"service_instances".equals(path[path.length - 5]) && //
-				"service_bindings".equals(path[path.length - 3]) && //
-				"last_operation".equals(path[path.length - 1]);
+		return RouteTable.OSB_V2.matches(Operation.BINDING_LAST_OPERATION, method, path);
 	}
 
 	protected BrokerAPIVersion checkBrokerAPIVersion(HttpServletRequest request) throws OpenServiceBrokerException {
@@ -391,6 +942,16 @@ public class OpenServiceBroker {
 		return new RequestCredentials(request);
 	}
 
+	/**
+	 * Verifies the credentials with the authenticator, if one is set.
+	 */
+	protected void authenticate(RequestCredentials credentials) throws OpenServiceBrokerException {
+		Authenticator auth = authenticator;
+		if (auth != null) {
+			credentials.setPrincipal(auth.authenticate(credentials));
+		}
+	}
+
 	protected boolean getAcceptsIncomplete(HttpServletRequest request) {
 		return "true".equals(request.getParameter("accepts_incomplete"));
 	}
@@ -401,12 +962,15 @@ public class OpenServiceBroker {
 			throw new IllegalArgumentException("Invalid position!");
 		}
 
-		String segement = path[index];
-		if (segement.isEmpty()) {
+		return checkPathSegment(path[index]);
+	}
+
+	protected String checkPathSegment(String segment) throws OpenServiceBrokerException {
+		if (segment == null || segment.isEmpty()) {
 			throw new BadRequestException("Invalid path!");
 		}
 
-		return segement;
+		return segment;
 	}
 
 	protected String getRequiredParameter(HttpServletRequest request, String name) throws OpenServiceBrokerException {
@@ -433,6 +997,19 @@ public class OpenServiceBroker {
 
 	protected <T extends Map<String, Object>> T parseBody(HttpServletRequest request, T root)
 			throws OpenServiceBrokerException, ValidationException {
+		return parseBody(request, root, null);
+	}
+
+	/**
+	 * Parses the request body, but leaves the values of the given keys of the
+	 * root object unparsed.
+	 * 
+	 * @param rawKeys
+	 *            the keys whose values are validated and stored as
+	 *            {@link RawJSONValue} objects, may be {@code null}
+	 */
+	protected <T extends Map<String, Object>> T parseBody(HttpServletRequest request, T root, Set<String> rawKeys)
+			throws OpenServiceBrokerException, ValidationException {
 		if (request.getMethod().equals("PUT") || request.getMethod().equals("PATCH")) {
 			// check content type
 			String contentType = request.getContentType();
@@ -440,34 +1017,50 @@ public class OpenServiceBroker {
 				throw new BadRequestException("Content type is not set or not 'application/json'!");
 			}
 
-			// parse
-			Reader in = null;
-			JSONParser parser = new JSONParser();
+			// read the body into a pooled buffer
+			BodyBuffer body = null;
 			try {
-				in = new InputStreamReader(
-						new CappedInputStream(new BufferedInputStream(request.getInputStream(), 64 * 1024),
-								Constraints.MAX_BODY),
-						IOUtils.UTF8);
-				parser.parse(in, root);
-			} catch (JSONParseException jpe) {
-				throw new BadRequestException("Invalid JSON object!", jpe);
+				body = new BodyBuffer(request.getInputStream(), request.getContentLengthLong(),
+						Constraints.MAX_BODY, BufferPool.getDefault());
 			} catch (IOException ioe) {
 				throw new BadRequestException("IO Error!", ioe);
-			} finally {
-				IOUtils.closeQuietly(in);
 			}
 
-			// validate input
-			if (root instanceof Validatable) {
-				((Validatable) root).validate();
-			}
+			// raw values refer to the buffer, it only stays out of the pool if
+			// they are handed out
+			boolean keepBody = false;
+			try {
+				// parse
+				Set<String> lazyKeys = lazyParsedKeys;
+				JSONParser parser = JSONParserPool.getDefault().acquire();
+				boolean hasRawValues;
+				try {
+					parser.parse(body.getBytes(), body.getLength(), root, rawKeys,
+							lazyKeys.isEmpty() ? null : lazyKeys);
+					hasRawValues = parser.hasRawValues();
+				} catch (JSONParseException jpe) {
+					throw new BadRequestException("Invalid JSON object!", jpe);
+				} finally {
+					JSONParserPool.getDefault().release(parser);
+				}
 
-			// convert context if there is one present
-			if (contextHandler != null && root.get("context") instanceof Context) {
-				root.put("context", contextHandler.convertContext((Context) root.get("context")));
-			}
+				// validate input
+				if (root instanceof Validatable) {
+					((Validatable) root).validate();
+				}
 
-			return root;
+				// convert context if there is one present
+				if (contextHandler != null && root.get("context") instanceof Context) {
+					root.put("context", contextHandler.convertContext((Context) root.get("context")));
+				}
+
+				keepBody = hasRawValues;
+				return root;
+			} finally {
+				if (!keepBody) {
+					body.release();
+				}
+			}
 		}
 
 		return null;
@@ -476,13 +1069,150 @@ public class OpenServiceBroker {
 	protected void populateRequestObject(OpenServiceBrokerRequest osbRequest, HttpServletRequest request,
 			BrokerAPIVersion brokerAPIVersion, RequestCredentials credentials, JSONObject root)
 			throws OpenServiceBrokerException, ValidationException {
+		populateRequestObject(osbRequest, request, brokerAPIVersion, credentials, root, null);
+	}
+
+	protected void populateRequestObject(OpenServiceBrokerRequest osbRequest, HttpServletRequest request,
+			BrokerAPIVersion brokerAPIVersion, RequestCredentials credentials, JSONObject root,
+			StreamingParametersHandler streamingHandler) throws OpenServiceBrokerException, ValidationException {
 		osbRequest.setBrokerAPIVersion(brokerAPIVersion);
 		osbRequest.setCredentials(credentials);
 		osbRequest.setAcceptsIncomplete(getAcceptsIncomplete(request));
 		osbRequest.setOriginatingIdentity(getOriginatingIdentity(request));
 		osbRequest.setHttpServletRequest(request);
 		if (root != null) {
-			osbRequest.setRequestBody(parseBody(request, root));
+			if (streamingHandler != null && streamingHandler.isStreamingParameters(osbRequest)) {
+				JSONObject body = parseBody(request, root, STREAMED_KEYS);
+				if (body != null) {
+					Object parameters = body.remove(KEY_PARAMETERS);
+					if (parameters instanceof RawJSONValue) {
+						osbRequest.setParameters((RawJSONValue) parameters);
+					}
+				}
+				osbRequest.setRequestBody(body);
+			} else {
+				osbRequest.setRequestBody(parseBody(request, root));
+			}
+		}
+
+		CatalogResponseBody checkCatalog = getCatalog();
+		if (checkCatalog != null) {
+			checkCatalog(osbRequest, checkCatalog);
+		}
+	}
+
+	/**
+	 * Checks the service and plan of a request against the catalog.
+	 * 
+	 * @see #setCatalog(CatalogResponseBody)
+	 */
+	protected void checkCatalog(OpenServiceBrokerRequest osbRequest, CatalogResponseBody catalog)
+			throws OpenServiceBrokerException {
+		if (osbRequest instanceof ProvisionRequest) {
+			ProvisionRequestBody body = ((ProvisionRequest) osbRequest).getRequestBody();
+			if (body != null) {
+				getCatalogPlan(catalog, body.getServiceID(), body.getPlanID());
+			}
+		} else if (osbRequest instanceof UpdateServiceInstanceRequest) {
+			UpdateServiceInstanceRequestBody body = ((UpdateServiceInstanceRequest) osbRequest).getRequestBody();
+			if (body == null) {
+				return;
+			}
+
+			String planID = body.getPlanID();
+			if (planID == null) {
+				getCatalogService(catalog, body.getServiceID());
+				return;
+			}
+
+			Plan plan = getCatalogPlan(catalog, body.getServiceID(), planID);
+			PreviousValues previousValues = body.getPreviousValues();
+			String previousPlanID = previousValues == null ? null : previousValues.getPlanID();
+			if (previousPlanID != null && !previousPlanID.equals(planID)) {
+				// the plan setting overrides the service setting, the default is false
+				Boolean updateable = plan.getPlanUpdateable();
+				if (updateable == null) {
+					updateable = catalog.getService(body.getServiceID()).getPlanUpdateable();
+				}
+				if (!Boolean.TRUE.equals(updateable)) {
+					throw new UpdateNotPossibleException("The plan of this service instance cannot be changed!");
+				}
+			}
+		} else if (osbRequest instanceof BindRequest) {
+			BindRequestBody body = ((BindRequest) osbRequest).getRequestBody();
+			if (body == null) {
+				return;
+			}
+
+			Plan plan = getCatalogPlan(catalog, body.getServiceID(), body.getPlanID());
+			// the plan setting overrides the service setting
+			Boolean bindable = plan.getBindable();
+			if (bindable == null) {
+				bindable = catalog.getService(body.getServiceID()).getBindable();
+			}
+			if (!Boolean.TRUE.equals(bindable)) {
+				throw new BadRequestException("Plan is not bindable!");
+			}
+		} else if (osbRequest instanceof DeprovisionRequest) {
+			DeprovisionRequest request = (DeprovisionRequest) osbRequest;
+			getCatalogPlan(catalog, request.getServiceID(), request.getPlanID());
+		} else if (osbRequest instanceof UnbindRequest) {
+			UnbindRequest request = (UnbindRequest) osbRequest;
+			getCatalogPlan(catalog, request.getServiceID(), request.getPlanID());
+		} else if (osbRequest instanceof InstanceLastOperationRequest) {
+			InstanceLastOperationRequest request = (InstanceLastOperationRequest) osbRequest;
+			checkOptionalCatalogPlan(catalog, request.getServiceID(), request.getPlanID());
+		} else if (osbRequest instanceof BindingLastOperationRequest) {
+			BindingLastOperationRequest request = (BindingLastOperationRequest) osbRequest;
+			checkOptionalCatalogPlan(catalog, request.getServiceID(), request.getPlanID());
+		}
+	}
+
+	private static Service getCatalogService(CatalogResponseBody catalog, String serviceID)
+			throws OpenServiceBrokerException {
+		if (serviceID == null) {
+			throw new BadRequestException("Service ID is not set!");
+		}
+
+		Service service = catalog.getService(serviceID);
+		if (service == null) {
+			throw new BadRequestException("Unknown service!");
+		}
+
+		return service;
+	}
+
+	private static Plan getCatalogPlan(CatalogResponseBody catalog, String serviceID, String planID)
+			throws OpenServiceBrokerException {
+		if (serviceID == null) {
+			throw new BadRequestException("Service ID is not set!");
+		}
+		if (planID == null) {
+			throw new BadRequestException("Plan ID is not set!");
+		}
+
+		Plan plan = catalog.getPlan(serviceID, planID);
+		if (plan == null) {
+			throw new BadRequestException("Unknown service or plan!");
+		}
+
+		return plan;
+	}
+
+	/**
+	 * Checks the service and plan of a last operation request, which are both
+	 * optional.
+	 */
+	private static void checkOptionalCatalogPlan(CatalogResponseBody catalog, String serviceID, String planID)
+			throws OpenServiceBrokerException {
+		if (serviceID == null) {
+			return;
+		}
+
+		if (planID == null) {
+			getCatalogService(catalog, serviceID);
+		} else {
+			getCatalogPlan(catalog, serviceID, planID);
 		}
 	}
 }
@@ -17,7 +17,9 @@ package de.fmui.osb.broker;
 
 import javax.servlet.http.HttpServletRequest;
 
+import de.fmui.osb.broker.internal.json.RawJSONValue;
 import de.fmui.osb.broker.json.JSONObject;
+import de.fmui.osb.broker.json.JSONReader;
 
 /**
  * Generic Open Service Broker request.
@@ -28,6 +30,7 @@ public abstract class OpenServiceBrokerRequest {
 	private OriginatingIdentity originatingIdentity;
 	private RequestCredentials credentials;
 	private JSONObject body;
+	private RawJSONValue parameters;
 	private HttpServletRequest request;
 
 	/**
@@ -97,6 +100,25 @@ public abstract class OpenServiceBrokerRequest {
 		this.body = body;
 	}
 
+	/**
+	 * Returns a reader for the {@code parameters} of the request body.
+	 * 
+	 * Parameters are only streamed if the broker handler implements
+	 * {@link de.fmui.osb.broker.handler.StreamingParametersHandler} and requested
+	 * it for this request. Each call returns a new reader that starts at the
+	 * beginning of the parameters.
+	 * 
+	 * @return the reader or {@code null} if the parameters haven't been streamed
+	 *         or the request body has no parameters
+	 */
+	public JSONReader getParametersReader() {
+		return parameters == null ? null : parameters.createReader();
+	}
+
+	void setParameters(RawJSONValue parameters) {
+		this.parameters = parameters;
+	}
+
 	/**
 	 * Returns the HTTP request object.
 	 * 
@@ -16,6 +16,15 @@
 package de.fmui.osb.broker;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -23,9 +32,12 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import de.fmui.osb.broker.exceptions.ServiceUnavailableException;
+import de.fmui.osb.broker.handler.Authenticator;
 import de.fmui.osb.broker.handler.ContextHandler;
 import de.fmui.osb.broker.handler.ErrorLogHandler;
 import de.fmui.osb.broker.handler.OpenServiceBrokerHandler;
+import de.fmui.osb.broker.internal.concurrent.RequestExecutors;
 
 /**
  * Base servlet for a stand-alone Service Broker.
@@ -44,6 +56,18 @@ import de.fmui.osb.broker.handler.OpenServiceBrokerHandler;
  * }
  * </code>
  * </pre>
+ * 
+ * By default, requests are processed on the container thread. If the
+ * {@value #PARAM_ASYNC} init parameter is set to {@code true} (or an executor
+ * is set with {@link #setAsyncExecutor(ExecutorService)}), requests are
+ * processed asynchronously on a bounded thread pool and the container thread is
+ * released immediately. The servlet must be declared with
+ * {@code asyncSupported=true} for this mode; otherwise requests fall back to
+ * synchronous processing.
+ * 
+ * On Java 21 and later, the {@value #PARAM_ASYNC_VIRTUAL_THREADS} init
+ * parameter starts a virtual thread for each request instead of using the
+ * thread pool. On older Java versions, this parameter is ignored.
  */
 public class OpenServiceBrokerServlet extends HttpServlet {
 
@@ -52,10 +76,28 @@ public class OpenServiceBrokerServlet extends HttpServlet {
 	public static final String PARAM_BROKER_HANDLER_CLASS = "brokerHandlerClass";
 	public static final String PARAM_ERROR_LOG_HANDLER_CLASS = "errLogHandlerClass";
 	public static final String PARAM_CONTEXT_HANDLER_CLASS = "contextHandlerClass";
+	public static final String PARAM_AUTHENTICATOR_CLASS = "authenticatorClass";
+	public static final String PARAM_AUTHENTICATOR_CACHE_TTL = "authenticatorCacheTTL";
 	public static final String PARAM_MIN_BROKER_API_VERSION = "minBrokerAPIVersion";
+	public static final String PARAM_ASYNC = "async";
+	public static final String PARAM_ASYNC_THREADS = "asyncThreads";
+	public static final String PARAM_ASYNC_QUEUE_SIZE = "asyncQueueSize";
+	public static final String PARAM_ASYNC_TIMEOUT = "asyncTimeout";
+	public static final String PARAM_ASYNC_VIRTUAL_THREADS = "asyncVirtualThreads";
+	public static final String PARAM_LAZY_PARSED_KEYS = "lazyParsedKeys";
+	public static final String PARAM_MAX_BUFFERED_RESPONSE_SIZE = "maxBufferedResponseSize";
+	public static final String PARAM_CATALOG_CACHING = "catalogCaching";
+	public static final String PARAM_COMPRESSION_THRESHOLD = "compressionThreshold";
+
+	public static final int DEFAULT_ASYNC_THREADS = 20;
+	public static final int DEFAULT_ASYNC_QUEUE_SIZE = 100;
+	public static final long DEFAULT_ASYNC_TIMEOUT = 60 * 1000;
 
 	private OpenServiceBrokerHandler handler;
 	private final OpenServiceBroker broker = new OpenServiceBroker();
+	private ExecutorService asyncExecutor;
+	private boolean ownsAsyncExecutor;
+	private long asyncTimeout = DEFAULT_ASYNC_TIMEOUT;
 
 	public OpenServiceBrokerServlet() {
 		super();
@@ -90,11 +132,100 @@ public class OpenServiceBrokerServlet extends HttpServlet {
 			broker.setContextHandler(createInstance(contextHandlerClassName, ContextHandler.class));
 		}
 
+		// get authenticator
+		String authenticatorClassName = config.getInitParameter(PARAM_AUTHENTICATOR_CLASS);
+		if (authenticatorClassName != null) {
+			Authenticator authenticator = createInstance(authenticatorClassName, Authenticator.class);
+
+			long ttl = CachingAuthenticator.DEFAULT_TTL;
+			String ttlStr = config.getInitParameter(PARAM_AUTHENTICATOR_CACHE_TTL);
+			if (ttlStr != null) {
+				try {
+					ttl = Long.parseLong(ttlStr.trim());
+				} catch (NumberFormatException e) {
+					throw new ServletException("Invalid value for '" + PARAM_AUTHENTICATOR_CACHE_TTL + "': " + ttlStr,
+							e);
+				}
+			}
+
+			// a TTL of 0 or less turns the cache off
+			if (ttl > 0) {
+				authenticator = new CachingAuthenticator(authenticator, ttl, CachingAuthenticator.DEFAULT_MAX_ENTRIES);
+			}
+			broker.setAuthenticator(authenticator);
+		}
+
 		// get min broker API Version
 		String minBrokerAPIVersion = config.getInitParameter(PARAM_MIN_BROKER_API_VERSION);
 		if (minBrokerAPIVersion != null) {
 			broker.setBrokerAPIMinVersion(minBrokerAPIVersion);
 		}
+
+		// get lazy parsed keys
+		String lazyParsedKeys = config.getInitParameter(PARAM_LAZY_PARSED_KEYS);
+		if (lazyParsedKeys != null) {
+			List<String> keys = new ArrayList<String>();
+			for (String key : lazyParsedKeys.split(",")) {
+				if (!key.trim().isEmpty()) {
+					keys.add(key.trim());
+				}
+			}
+			broker.setLazyParsedKeys(keys);
+		}
+
+		// get response buffer size
+		if (config.getInitParameter(PARAM_MAX_BUFFERED_RESPONSE_SIZE) != null) {
+			broker.setMaxBufferedResponseSize(getIntInitParameter(config, PARAM_MAX_BUFFERED_RESPONSE_SIZE,
+					broker.getMaxBufferedResponseSize()));
+		}
+
+		// get catalog cache setting
+		if ("false".equalsIgnoreCase(config.getInitParameter(PARAM_CATALOG_CACHING))) {
+			broker.setCatalogCaching(false);
+		}
+
+		// get compression threshold
+		String compressionThreshold = config.getInitParameter(PARAM_COMPRESSION_THRESHOLD);
+		if (compressionThreshold != null) {
+			try {
+				broker.setCompressionThreshold(Integer.parseInt(compressionThreshold.trim()));
+			} catch (NumberFormatException e) {
+				throw new ServletException(
+						"Invalid value for '" + PARAM_COMPRESSION_THRESHOLD + "': " + compressionThreshold, e);
+			}
+		}
+
+		// get async settings
+		if ("true".equalsIgnoreCase(config.getInitParameter(PARAM_ASYNC)) && asyncExecutor == null) {
+			if ("true".equalsIgnoreCase(config.getInitParameter(PARAM_ASYNC_VIRTUAL_THREADS))
+					&& RequestExecutors.isVirtualThreadSupported()) {
+				setAsyncExecutor(createVirtualThreadExecutor());
+			} else {
+				int threads = getIntInitParameter(config, PARAM_ASYNC_THREADS, DEFAULT_ASYNC_THREADS);
+				int queueSize = getIntInitParameter(config, PARAM_ASYNC_QUEUE_SIZE, DEFAULT_ASYNC_QUEUE_SIZE);
+
+				setAsyncExecutor(createAsyncExecutor(threads, queueSize));
+			}
+			ownsAsyncExecutor = true;
+		}
+
+		String asyncTimeoutStr = config.getInitParameter(PARAM_ASYNC_TIMEOUT);
+		if (asyncTimeoutStr != null) {
+			try {
+				setAsyncTimeout(Long.parseLong(asyncTimeoutStr.trim()));
+			} catch (NumberFormatException e) {
+				throw new ServletException("Invalid value for '" + PARAM_ASYNC_TIMEOUT + "': " + asyncTimeoutStr, e);
+			}
+		}
+	}
+
+	@Override
+	public void destroy() {
+		if (ownsAsyncExecutor && asyncExecutor != null) {
+			asyncExecutor.shutdown();
+		}
+
+		super.destroy();
 	}
 
 	protected OpenServiceBroker getOpenServiceBroker() {
@@ -109,6 +240,110 @@ public class OpenServiceBrokerServlet extends HttpServlet {
 		this.handler = handler;
 	}
 
+	/**
+	 * Returns the executor that processes asynchronous requests.
+	 * 
+	 * @return the executor or {@code null} if requests are processed
+	 *         synchronously
+	 */
+	protected ExecutorService getAsyncExecutor() {
+		return asyncExecutor;
+	}
+
+	/**
+	 * Sets the executor that processes asynchronous requests.
+	 * 
+	 * The executor should be bounded. Requests that are rejected by the executor
+	 * are answered with a 503 error response. The caller is responsible for
+	 * shutting down the executor.
+	 * 
+	 * @param asyncExecutor
+	 *            the executor or {@code null} to process requests synchronously
+	 */
+	protected void setAsyncExecutor(ExecutorService asyncExecutor) {
+		this.asyncExecutor = asyncExecutor;
+		this.ownsAsyncExecutor = false;
+	}
+
+	/**
+	 * Returns the asynchronous request timeout.
+	 * 
+	 * @return the timeout in milliseconds
+	 */
+	protected long getAsyncTimeout() {
+		return asyncTimeout;
+	}
+
+	/**
+	 * Sets the asynchronous request timeout. Requests that are not answered
+	 * within this time get a 503 error response.
+	 * 
+	 * @param asyncTimeout
+	 *            the timeout in milliseconds, 0 or less for the container default
+	 */
+	protected void setAsyncTimeout(long asyncTimeout) {
+		this.asyncTimeout = asyncTimeout;
+	}
+
+	/**
+	 * Creates a bounded executor for asynchronous requests.
+	 * 
+	 * @param threads
+	 *            the maximum number of threads
+	 * @param queueSize
+	 *            the maximum number of waiting requests
+	 * 
+	 * @return the executor
+	 */
+	protected ExecutorService createAsyncExecutor(int threads, int queueSize) {
+		final AtomicInteger threadCounter = new AtomicInteger();
+		ThreadFactory threadFactory = new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "osb-worker-" + threadCounter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+		executor.allowCoreThreadTimeOut(true);
+
+		return executor;
+	}
+
+	/**
+	 * Creates an executor that starts a virtual thread for each asynchronous
+	 * request.
+	 * 
+	 * The executor is unbounded, the number of concurrent requests is only
+	 * limited by the container. Only call this method if
+	 * {@link RequestExecutors#isVirtualThreadSupported()} returns {@code true}.
+	 * 
+	 * @return the executor
+	 */
+	protected ExecutorService createVirtualThreadExecutor() {
+		return RequestExecutors.newVirtualThreadExecutor("osb-worker-");
+	}
+
+	private int getIntInitParameter(ServletConfig config, String name, int defaultValue) throws ServletException {
+		String value = config.getInitParameter(name);
+		if (value == null) {
+			return defaultValue;
+		}
+
+		try {
+			int result = Integer.parseInt(value.trim());
+			if (result < 1) {
+				throw new ServletException("Invalid value for '" + name + "': " + value);
+			}
+			return result;
+		} catch (NumberFormatException e) {
+			throw new ServletException("Invalid value for '" + name + "': " + value, e);
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	protected <T> T createInstance(String classname, Class<T> superclass) throws ServletException {
 		// get class
@@ -135,6 +370,46 @@ public class OpenServiceBrokerServlet extends HttpServlet {
 	@Override
 	protected void service(HttpServletRequest request, HttpServletResponse response)
 			throws ServletException, IOException {
-		getOpenServiceBroker().processRequest(request, response, getOpenServiceBrokerHandler());
+		ExecutorService executor = getAsyncExecutor();
+		if (executor == null || !request.isAsyncSupported()) {
+			getOpenServiceBroker().processRequest(request, response, getOpenServiceBrokerHandler());
+		} else {
+			processAsyncRequest(request, response, executor);
+		}
+	}
+
+	/**
+	 * Processes a request on the given executor.
+	 * 
+	 * The handler runs on an executor thread. Whoever finishes first, the handler
+	 * or the timeout, sends the response and completes the {@code AsyncContext}.
+	 * The handler isn't called if the exchange has been completed before the
+	 * executor picks up the request.
+	 */
+	protected void processAsyncRequest(final HttpServletRequest request, final HttpServletResponse response,
+			ExecutorService executor) throws IOException {
+		final OpenServiceBroker osb = getOpenServiceBroker();
+		final OpenServiceBrokerHandler osbHandler = getOpenServiceBrokerHandler();
+		final AsyncExchange exchange = new AsyncExchange(osb, request, response, asyncTimeout);
+
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					if (exchange.isCompleted()) {
+						// timed out or failed while waiting in the queue
+						return;
+					}
+
+					try {
+						exchange.complete(osb.handleRequest(request, osbHandler), null);
+					} catch (Exception e) {
+						exchange.complete(null, e);
+					}
+				}
+			});
+		} catch (RejectedExecutionException ree) {
+			exchange.fail(new ServiceUnavailableException("Too many concurrent requests."));
+		}
 	}
 }
@@ -18,6 +18,7 @@ package de.fmui.osb.broker;
 import de.fmui.osb.broker.internal.io.IOUtils;
 import de.fmui.osb.broker.internal.json.JSONObjectImpl;
 import de.fmui.osb.broker.internal.json.parser.JSONParser;
+import de.fmui.osb.broker.internal.json.parser.JSONParserPool;
 import de.fmui.osb.broker.json.JSONObject;
 
 /**
@@ -85,12 +86,14 @@ public class OriginatingIdentity {
 
 		platform = parts[0].trim();
 
+		JSONParser parser = JSONParserPool.getDefault().acquire();
 		try {
 			value = IOUtils.decodeBase64UTF8String(parts[1].trim());
-			JSONParser parser = new JSONParser();
 			json = parser.parse(value, new JSONObjectImpl());
 		} catch (Exception e) {
 			throw new IllegalArgumentException("Invalid X-Broker-API-Originating-Identity header!", e);
+		} finally {
+			JSONParserPool.getDefault().release(parser);
 		}
 	}
 }
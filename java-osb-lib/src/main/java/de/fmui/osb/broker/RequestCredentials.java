@@ -23,6 +23,7 @@ import javax.servlet.http.HttpServletRequest;
 public class RequestCredentials {
 
 	private HttpServletRequest request;
+	private String principal;
 
 	/**
 	 * Constructor.
@@ -61,4 +62,18 @@ public class RequestCredentials {
 		return false;
 	}
 
+	/**
+	 * Returns the name of the principal that has been authenticated by the
+	 * {@link de.fmui.osb.broker.handler.Authenticator}.
+	 * 
+	 * @return the principal name, or {@code null} if no authenticator is set
+	 */
+	public String getPrincipal() {
+		return principal;
+	}
+
+	void setPrincipal(String principal) {
+		this.principal = principal;
+	}
+
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.catalog;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import de.fmui.osb.broker.json.JSONArray;
+import de.fmui.osb.broker.objects.Plan;
+import de.fmui.osb.broker.objects.Service;
+
+/**
+ * Hash index of the services and plans of a frozen catalog.
+ *
+ * A frozen catalog can't change, so the index never has to be invalidated and
+ * can be shared by all threads that read the catalog. Catalogs that are not
+ * frozen are searched linearly.
+ *
+ * Like with a linear search, the first service or plan wins if IDs or names
+ * are not unique.
+ */
+final class CatalogIndex {
+
+	private final Map<String, ServiceEntry> servicesByID = new HashMap<String, ServiceEntry>();
+	private final Map<String, Service> servicesByName = new HashMap<String, Service>();
+
+	private CatalogIndex() {
+	}
+
+	/**
+	 * Builds the index of the provided frozen catalog.
+	 */
+	static CatalogIndex build(CatalogResponseBody catalog) {
+		CatalogIndex index = new CatalogIndex();
+
+		JSONArray<Service> services = catalog.getServices();
+		if (services == null) {
+			return index;
+		}
+
+		for (Service service : services) {
+			ServiceEntry entry = new ServiceEntry(service);
+
+			JSONArray<Plan> plans = service.getPlans();
+			if (plans != null) {
+				for (Plan plan : plans) {
+					entry.add(plan);
+				}
+			}
+
+			String id = service.getID();
+			if (id != null && !index.servicesByID.containsKey(id)) {
+				index.servicesByID.put(id, entry);
+			}
+
+			String name = service.getName();
+			if (name != null && !index.servicesByName.containsKey(name)) {
+				index.servicesByName.put(name, service);
+			}
+		}
+
+		return index;
+	}
+
+	Service getService(String serviceID) {
+		ServiceEntry entry = servicesByID.get(serviceID);
+		return entry == null ? null : entry.service;
+	}
+
+	Service getServiceByName(String name) {
+		return servicesByName.get(name);
+	}
+
+	Plan getPlan(String serviceID, String planID) {
+		ServiceEntry entry = servicesByID.get(serviceID);
+		return entry == null ? null : entry.plansByID.get(planID);
+	}
+
+	Plan getPlanByName(String serviceID, String planName) {
+		ServiceEntry entry = servicesByID.get(serviceID);
+		return entry == null ? null : entry.plansByName.get(planName);
+	}
+
+	private static class ServiceEntry {
+		final Service service;
+		final Map<String, Plan> plansByID = new HashMap<String, Plan>();
+		final Map<String, Plan> plansByName = new HashMap<String, Plan>();
+
+		ServiceEntry(Service service) {
+			this.service = service;
+		}
+
+		void add(Plan plan) {
+			String id = plan.getID();
+			if (id != null && !plansByID.containsKey(id)) {
+				plansByID.put(id, plan);
+			}
+
+			String name = plan.getName();
+			if (name != null && !plansByName.containsKey(name)) {
+				plansByName.put(name, plan);
+			}
+		}
+	}
+}
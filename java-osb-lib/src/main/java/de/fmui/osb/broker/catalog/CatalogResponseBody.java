@@ -15,6 +15,10 @@
  */
 package de.fmui.osb.broker.catalog;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import de.fmui.osb.broker.exceptions.ValidationException;
 import de.fmui.osb.broker.json.JSONArray;
 import de.fmui.osb.broker.json.JSONObject;
@@ -30,6 +34,9 @@ public class CatalogResponseBody extends AbstractOpenServiceBrokerObject impleme
 
 	public static final String KEY_SERVICES = "services";
 
+	private transient volatile CatalogIndex index;
+	private transient boolean notCacheable;
+
 	public CatalogResponseBody() {
 	}
 
@@ -50,6 +57,11 @@ public class CatalogResponseBody extends AbstractOpenServiceBrokerObject impleme
 			throw new IllegalArgumentException("Service ID is not set!");
 		}
 
+		CatalogIndex catalogIndex = getIndex();
+		if (catalogIndex != null) {
+			return catalogIndex.getService(serviceID);
+		}
+
 		JSONArray<Service> services = getServices();
 		if (services == null) {
 			return null;
@@ -64,6 +76,55 @@ public class CatalogResponseBody extends AbstractOpenServiceBrokerObject impleme
 		return null;
 	}
 
+	/**
+	 * Returns the service with the provided name.
+	 */
+	public Service getServiceByName(String name) {
+		if (name == null) {
+			throw new IllegalArgumentException("Service name is not set!");
+		}
+
+		CatalogIndex catalogIndex = getIndex();
+		if (catalogIndex != null) {
+			return catalogIndex.getServiceByName(name);
+		}
+
+		JSONArray<Service> services = getServices();
+		if (services == null) {
+			return null;
+		}
+
+		for (Service service : services) {
+			if (name.equals(service.getName())) {
+				return service;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the services with the provided IDs.
+	 * 
+	 * @return a map from service ID to service in the order of the provided
+	 *         IDs, unknown IDs are left out
+	 */
+	public Map<String, Service> getServices(Collection<String> serviceIDs) {
+		if (serviceIDs == null) {
+			throw new IllegalArgumentException("Service IDs are not set!");
+		}
+
+		Map<String, Service> result = new LinkedHashMap<String, Service>();
+		for (String serviceID : serviceIDs) {
+			Service service = getService(serviceID);
+			if (service != null) {
+				result.put(serviceID, service);
+			}
+		}
+
+		return result;
+	}
+
 	public Plan getPlan(String serviceID, String planID) {
 		if (serviceID == null) {
 			throw new IllegalArgumentException("Service ID is not set!");
@@ -72,6 +133,11 @@ public class CatalogResponseBody extends AbstractOpenServiceBrokerObject impleme
 			throw new IllegalArgumentException("Plan ID is not set!");
 		}
 
+		CatalogIndex catalogIndex = getIndex();
+		if (catalogIndex != null) {
+			return catalogIndex.getPlan(serviceID, planID);
+		}
+
 		JSONArray<Service> services = getServices();
 		if (services == null) {
 			return null;
@@ -95,6 +161,107 @@ public class CatalogResponseBody extends AbstractOpenServiceBrokerObject impleme
 		return null;
 	}
 
+	/**
+	 * Returns the plan with the provided name of the service with the provided
+	 * ID.
+	 */
+	public Plan getPlanByName(String serviceID, String planName) {
+		if (serviceID == null) {
+			throw new IllegalArgumentException("Service ID is not set!");
+		}
+		if (planName == null) {
+			throw new IllegalArgumentException("Plan name is not set!");
+		}
+
+		CatalogIndex catalogIndex = getIndex();
+		if (catalogIndex != null) {
+			return catalogIndex.getPlanByName(serviceID, planName);
+		}
+
+		Service service = getService(serviceID);
+		if (service == null) {
+			return null;
+		}
+
+		JSONArray<Plan> plans = service.getPlans();
+		if (plans != null) {
+			for (Plan plan : plans) {
+				if (planName.equals(plan.getName())) {
+					return plan;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the plans with the provided IDs of the service with the provided
+	 * ID.
+	 * 
+	 * @return a map from plan ID to plan in the order of the provided IDs,
+	 *         unknown IDs are left out
+	 */
+	public Map<String, Plan> getPlans(String serviceID, Collection<String> planIDs) {
+		if (planIDs == null) {
+			throw new IllegalArgumentException("Plan IDs are not set!");
+		}
+
+		Map<String, Plan> result = new LinkedHashMap<String, Plan>();
+		for (String planID : planIDs) {
+			Plan plan = getPlan(serviceID, planID);
+			if (plan != null) {
+				result.put(planID, plan);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the index of the services and plans, or {@code null} if the
+	 * catalog is not frozen and has to be searched linearly.
+	 */
+	CatalogIndex getIndex() {
+		if (!isFrozen()) {
+			return null;
+		}
+
+		// concurrent first lookups may build equal indexes, any of them will do
+		CatalogIndex result = index;
+		if (result == null) {
+			result = CatalogIndex.build(this);
+			index = result;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns whether the serialized form of this catalog may be kept by the
+	 * catalog cache. Views that {@link CatalogViews} creates beyond its view
+	 * limit are sent once and not cached.
+	 */
+	public boolean isCacheable() {
+		return !notCacheable;
+	}
+
+	void markNotCacheable() {
+		notCacheable = true;
+	}
+
+	/**
+	 * Returns a shallow copy of this catalog. The copy is not frozen and has no
+	 * index.
+	 */
+	@Override
+	public Object clone() {
+		CatalogResponseBody result = (CatalogResponseBody) super.clone();
+		result.index = null;
+		result.notCacheable = false;
+		return result;
+	}
+
 	@Override
 	public void validate() throws ValidationException {
 		if (isNullOrEmpty(KEY_SERVICES)) {
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.catalog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.fmui.osb.broker.DefaultErrorLogHandler;
+import de.fmui.osb.broker.exceptions.ValidationException;
+import de.fmui.osb.broker.handler.ErrorLogHandler;
+import de.fmui.osb.broker.internal.io.CatalogCache;
+
+/**
+ * Provides the catalog from a file and reloads it when the file changes.
+ *
+ * Each version of the catalog is parsed, validated and frozen, its index is
+ * built, and it is serialized before it is published. Requests always get a
+ * complete catalog and never pay for a reload. If a new version can't be
+ * loaded, the error is logged and the previous version stays in place.
+ *
+ * <pre>
+ * catalogSource = new CatalogSource(Paths.get("/etc/broker/catalog.json"));
+ * catalogSource.startWatching();
+ * 
+ * public CatalogResponse getCatalog(CatalogRequest request) {
+ *     return CatalogResponse.builder().body(catalogSource.getCatalog()).build();
+ * }
+ * </pre>
+ */
+public class CatalogSource implements Closeable {
+
+	/**
+	 * Default time in milliseconds to wait for more changes before the file is
+	 * reloaded.
+	 */
+	public static final long DEFAULT_QUIET_PERIOD = 200;
+
+	private final Path file;
+	private final AtomicReference<CatalogResponseBody> current = new AtomicReference<CatalogResponseBody>();
+	private volatile ErrorLogHandler errorLogHandler = new DefaultErrorLogHandler();
+	private volatile long quietPeriod = DEFAULT_QUIET_PERIOD;
+	private WatchService watchService;
+	private Thread watchThread;
+
+	/**
+	 * Loads the catalog from a file.
+	 * 
+	 * @param file
+	 *            the catalog file
+	 * 
+	 * @throws IOException
+	 *             if the file can't be read or doesn't contain a valid catalog
+	 */
+	public CatalogSource(Path file) throws IOException {
+		if (file == null) {
+			throw new IllegalArgumentException("File must not be null!");
+		}
+
+		this.file = file.toAbsolutePath();
+		reload();
+	}
+
+	/**
+	 * Returns the catalog file.
+	 */
+	public Path getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the current version of the catalog. The catalog is frozen.
+	 */
+	public CatalogResponseBody getCatalog() {
+		return current.get();
+	}
+
+	/**
+	 * Sets the handler for errors that occur while the file is reloaded in the
+	 * background.
+	 */
+	public void setErrorLogHandler(ErrorLogHandler errorLogHandler) {
+		if (errorLogHandler == null) {
+			throw new IllegalArgumentException("Error log handler must not be null!");
+		}
+
+		this.errorLogHandler = errorLogHandler;
+	}
+
+	/**
+	 * Sets the time in milliseconds to wait for more changes before the file is
+	 * reloaded. Editors often write a file in several steps.
+	 */
+	public void setQuietPeriod(long quietPeriod) {
+		if (quietPeriod < 0) {
+			throw new IllegalArgumentException("Quiet period must not be negative!");
+		}
+
+		this.quietPeriod = quietPeriod;
+	}
+
+	/**
+	 * Returns the time in milliseconds to wait for more changes before the file
+	 * is reloaded.
+	 */
+	public long getQuietPeriod() {
+		return quietPeriod;
+	}
+
+	/**
+	 * Loads the file and publishes the new version of the catalog, unless it is
+	 * equal to the current version.
+	 * 
+	 * @return {@code true} if a new version has been published
+	 * 
+	 * @throws IOException
+	 *             if the file can't be read or doesn't contain a valid catalog,
+	 *             the current version stays in place
+	 */
+	public synchronized boolean reload() throws IOException {
+		CatalogResponseBody catalog = new CatalogResponseBody();
+
+		Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+		try {
+			catalog.load(reader);
+		} finally {
+			reader.close();
+		}
+
+		try {
+			catalog.validate();
+		} catch (ValidationException ve) {
+			throw new IOException("Invalid catalog: " + ve.getMessage(), ve);
+		}
+
+		catalog.freeze();
+		if (catalog.equals(current.get())) {
+			return false;
+		}
+
+		// do all the work up front, requests only see the finished catalog
+		catalog.getIndex();
+		CatalogCache.prepare(catalog);
+
+		current.set(catalog);
+
+		return true;
+	}
+
+	/**
+	 * Starts watching the file. Changes are picked up by a background thread.
+	 * 
+	 * @throws IOException
+	 *             if the directory of the file can't be watched
+	 */
+	public synchronized void startWatching() throws IOException {
+		if (watchThread != null) {
+			return;
+		}
+
+		watchService = file.getFileSystem().newWatchService();
+		try {
+			file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY);
+		} catch (IOException e) {
+			watchService.close();
+			watchService = null;
+			throw e;
+		}
+
+		final WatchService ws = watchService;
+		watchThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				watch(ws);
+			}
+		}, "osb-catalog-watcher");
+		watchThread.setDaemon(true);
+		watchThread.start();
+	}
+
+	/**
+	 * Returns whether the file is being watched.
+	 */
+	public synchronized boolean isWatching() {
+		return watchThread != null;
+	}
+
+	/**
+	 * Stops watching the file. The current version of the catalog stays
+	 * available.
+	 */
+	@Override
+	public void close() throws IOException {
+		WatchService ws;
+		synchronized (this) {
+			ws = watchService;
+			watchService = null;
+			watchThread = null;
+		}
+
+		if (ws != null) {
+			ws.close();
+		}
+	}
+
+	private void watch(WatchService ws) {
+		try {
+			while (true) {
+				if (!isChanged(ws.take())) {
+					continue;
+				}
+
+				// wait until the file has settled
+				long wait = quietPeriod;
+				while (wait > 0) {
+					WatchKey key = ws.poll(wait, TimeUnit.MILLISECONDS);
+					if (key == null) {
+						break;
+					}
+					isChanged(key);
+				}
+
+				try {
+					reload();
+				} catch (IOException e) {
+					errorLogHandler.logError("Reloading catalog %s failed: %s", file, e);
+				} catch (RuntimeException e) {
+					errorLogHandler.logError("Reloading catalog %s failed: %s", file, e);
+				}
+			}
+		} catch (ClosedWatchServiceException e) {
+			// closed
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Checks the events of a watch key for changes to the file and resets the
+	 * key.
+	 */
+	private boolean isChanged(WatchKey key) {
+		boolean changed = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+				changed = true;
+			}
+		}
+		key.reset();
+
+		return changed;
+	}
+}
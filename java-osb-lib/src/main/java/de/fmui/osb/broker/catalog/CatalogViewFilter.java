@@ -0,0 +1,54 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.catalog;
+
+import de.fmui.osb.broker.objects.Plan;
+import de.fmui.osb.broker.objects.Service;
+
+/**
+ * Decides which services and plans are part of a catalog view.
+ * 
+ * @see CatalogViews
+ */
+public interface CatalogViewFilter {
+
+	/**
+	 * Checks whether a service is part of a view.
+	 * 
+	 * @param view
+	 *            the name of the view, for example the platform
+	 * @param service
+	 *            the service
+	 * 
+	 * @return {@code true} if the service is visible
+	 */
+	boolean isServiceVisible(String view, Service service);
+
+	/**
+	 * Checks whether a plan is part of a view. A service without any visible
+	 * plans is left out.
+	 * 
+	 * @param view
+	 *            the name of the view, for example the platform
+	 * @param service
+	 *            the service of the plan
+	 * @param plan
+	 *            the plan
+	 * 
+	 * @return {@code true} if the plan is visible
+	 */
+	boolean isPlanVisible(String view, Service service, Plan plan);
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.catalog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.fmui.osb.broker.OriginatingIdentity;
+import de.fmui.osb.broker.internal.io.CatalogCache;
+import de.fmui.osb.broker.json.JSONArray;
+import de.fmui.osb.broker.objects.Plan;
+import de.fmui.osb.broker.objects.Service;
+
+/**
+ * Filtered views of a catalog, for example one per platform.
+ *
+ * A view is created once from the base catalog with a
+ * {@link CatalogViewFilter}. It is frozen, indexed and serialized, and then
+ * reused for all requests as long as the same base catalog is passed in. A
+ * different base catalog object, for example a new version from a
+ * {@link CatalogSource}, discards all views.
+ *
+ * Views are only cached for frozen base catalogs. If the base catalog is not
+ * frozen, a new view is created for every call.
+ *
+ * View names usually come from the client. Once {@link #getMaxViews()} views
+ * are cached, views with new names are created for every call and are neither
+ * frozen nor serialized ahead of time. {@code OpenServiceBroker} keeps them
+ * out of its catalog cache.
+ *
+ * <pre>
+ * views = new CatalogViews(new CatalogViewFilter() { ... });
+ * 
+ * public CatalogResponse getCatalog(CatalogRequest request) {
+ *     return CatalogResponse.builder().body(views.getCatalog(request, catalog)).build();
+ * }
+ * </pre>
+ */
+public class CatalogViews {
+
+	/**
+	 * Default maximum number of cached views.
+	 */
+	public static final int DEFAULT_MAX_VIEWS = 64;
+
+	private static class Entry {
+		final CatalogResponseBody base;
+		final ConcurrentHashMap<String, CatalogResponseBody> views =
+				new ConcurrentHashMap<String, CatalogResponseBody>();
+
+		Entry(CatalogResponseBody base) {
+			this.base = base;
+		}
+	}
+
+	private final CatalogViewFilter filter;
+	private volatile int maxViews = DEFAULT_MAX_VIEWS;
+	private volatile Entry current;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param filter
+	 *            the filter that decides which services and plans are part of a
+	 *            view
+	 */
+	public CatalogViews(CatalogViewFilter filter) {
+		if (filter == null) {
+			throw new IllegalArgumentException("Filter must not be null!");
+		}
+
+		this.filter = filter;
+	}
+
+	/**
+	 * Sets the maximum number of cached views. Views beyond this number are
+	 * created for every call and are not cached.
+	 */
+	public void setMaxViews(int maxViews) {
+		if (maxViews < 0) {
+			throw new IllegalArgumentException("Max views must not be negative!");
+		}
+
+		this.maxViews = maxViews;
+	}
+
+	/**
+	 * Returns the maximum number of cached views.
+	 */
+	public int getMaxViews() {
+		return maxViews;
+	}
+
+	/**
+	 * Returns the view of the base catalog for a catalog request.
+	 * 
+	 * @param request
+	 *            the catalog request
+	 * @param base
+	 *            the base catalog
+	 * 
+	 * @return the view, or the base catalog if the request has no view name
+	 * 
+	 * @see #getViewName(CatalogRequest)
+	 */
+	public CatalogResponseBody getCatalog(CatalogRequest request, CatalogResponseBody base) {
+		return getView(base, getViewName(request));
+	}
+
+	/**
+	 * Returns the name of the view for a catalog request. The default
+	 * implementation returns the platform of the originating identity, for
+	 * example {@code cloudfoundry} or {@code kubernetes}.
+	 * 
+	 * @param request
+	 *            the catalog request
+	 * 
+	 * @return the view name, or {@code null} if the base catalog should be sent
+	 */
+	protected String getViewName(CatalogRequest request) {
+		OriginatingIdentity identity = request.getOriginatingIdentity();
+		return identity == null ? null : identity.getPlatform();
+	}
+
+	/**
+	 * Returns a view of the base catalog.
+	 * 
+	 * @param base
+	 *            the base catalog
+	 * @param view
+	 *            the view name, {@code null} for the base catalog
+	 * 
+	 * @return the view, which is frozen if the base catalog is frozen
+	 */
+	public CatalogResponseBody getView(CatalogResponseBody base, String view) {
+		if (base == null) {
+			throw new IllegalArgumentException("Base catalog must not be null!");
+		}
+
+		if (view == null) {
+			return base;
+		}
+
+		if (!base.isFrozen()) {
+			return createView(base, view, false);
+		}
+
+		Entry entry = current;
+		if (entry == null || entry.base != base) {
+			entry = new Entry(base);
+			current = entry;
+		}
+
+		CatalogResponseBody result = entry.views.get(view);
+		if (result != null) {
+			return result;
+		}
+
+		if (entry.views.size() >= maxViews) {
+			// don't let arbitrary view names fill the caches
+			result = createView(base, view, false);
+			result.markNotCacheable();
+			return result;
+		}
+
+		// if two threads get here at the same time, both create the view and
+		// the first one wins
+		result = createView(base, view, true);
+		CatalogResponseBody existing = entry.views.putIfAbsent(view, result);
+		return existing != null ? existing : result;
+	}
+
+	/**
+	 * Discards all cached views.
+	 */
+	public void clear() {
+		current = null;
+	}
+
+	/**
+	 * Creates a view. Services and plans that are not changed by the filter are
+	 * shared with the base catalog. Views that are cached are frozen, indexed
+	 * and serialized.
+	 */
+	private CatalogResponseBody createView(CatalogResponseBody base, String view, boolean cached) {
+		CatalogResponseBody result = new CatalogResponseBody();
+		result.putAll(base);
+
+		JSONArray<Service> services = base.getServices();
+		if (services != null) {
+			List<Service> visibleServices = new ArrayList<Service>();
+			for (Service service : services) {
+				if (!filter.isServiceVisible(view, service)) {
+					continue;
+				}
+
+				JSONArray<Plan> plans = service.getPlans();
+				if (plans == null) {
+					visibleServices.add(service);
+					continue;
+				}
+
+				List<Plan> visiblePlans = new ArrayList<Plan>(plans.size());
+				for (Plan plan : plans) {
+					if (filter.isPlanVisible(view, service, plan)) {
+						visiblePlans.add(plan);
+					}
+				}
+
+				if (visiblePlans.size() == plans.size()) {
+					visibleServices.add(service);
+				} else if (!visiblePlans.isEmpty()) {
+					Service serviceView = new Service();
+					serviceView.putAll(service);
+					serviceView.setPlans(visiblePlans.toArray(new Plan[visiblePlans.size()]));
+					visibleServices.add(serviceView);
+				}
+			}
+
+			result.setServices(visibleServices.toArray(new Service[visibleServices.size()]));
+		}
+
+		// only views of frozen catalogs are cached, a view of a mutable catalog
+		// shares its objects and must not freeze them
+		if (cached) {
+			result.freeze();
+			result.getIndex();
+			CatalogCache.prepare(result);
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.catalog;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+import de.fmui.osb.broker.exceptions.ValidationException;
+import de.fmui.osb.broker.internal.io.CachedBody;
+import de.fmui.osb.broker.internal.io.CatalogCache;
+import de.fmui.osb.broker.internal.io.CompressingOutputStream;
+import de.fmui.osb.broker.internal.json.parser.JSONParseException;
+import de.fmui.osb.broker.internal.json.parser.JSONParser;
+import de.fmui.osb.broker.internal.json.parser.JSONParserPool;
+
+/**
+ * Reads and writes compiled catalogs.
+ *
+ * A compiled catalog is created at build time, usually by the
+ * {@code java-osb-maven-plugin}. It holds a validated catalog in the exact
+ * form that is sent to the platform, together with its gzip and deflate
+ * compressed variants. Reading it only parses the catalog. Validation,
+ * serialization and compression are skipped.
+ *
+ * The format is: the magic number {@code OSBC}, the format version, and the
+ * JSON, gzip and deflate bytes, each preceded by its length.
+ */
+public final class CompiledCatalog {
+
+	/**
+	 * The version of the compiled catalog format. Compiled catalogs of other
+	 * versions can't be read and have to be compiled again.
+	 */
+	public static final int FORMAT_VERSION = 1;
+
+	private static final int MAGIC = 0x4F534243; // "OSBC"
+
+	private CompiledCatalog() {
+	}
+
+	/**
+	 * Validates and compiles a catalog.
+	 * 
+	 * @param catalog
+	 *            the catalog
+	 * @param out
+	 *            the stream to write the compiled catalog to, it is not closed
+	 * 
+	 * @throws ValidationException
+	 *             if the catalog is not valid
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	public static void write(CatalogResponseBody catalog, OutputStream out) throws ValidationException, IOException {
+		catalog.validate();
+
+		byte[] bytes = CachedBody.create(catalog).getBytes();
+
+		DataOutputStream dout = new DataOutputStream(out);
+		dout.writeInt(MAGIC);
+		dout.writeInt(FORMAT_VERSION);
+		writeBytes(dout, bytes);
+		writeBytes(dout, CompressingOutputStream.compress(bytes, CompressingOutputStream.GZIP,
+				Deflater.BEST_COMPRESSION));
+		writeBytes(dout, CompressingOutputStream.compress(bytes, CompressingOutputStream.DEFLATE,
+				Deflater.BEST_COMPRESSION));
+		dout.flush();
+	}
+
+	/**
+	 * Reads a compiled catalog.
+	 * 
+	 * @param in
+	 *            the stream to read the compiled catalog from, it is not closed
+	 * 
+	 * @return the catalog, which is frozen, indexed, and already serialized
+	 * 
+	 * @throws IOException
+	 *             if reading fails or the stream doesn't contain a compiled
+	 *             catalog
+	 */
+	public static CatalogResponseBody read(InputStream in) throws IOException {
+		DataInputStream din = new DataInputStream(in);
+		if (din.readInt() != MAGIC) {
+			throw new IOException("Not a compiled catalog!");
+		}
+		int version = din.readInt();
+		if (version != FORMAT_VERSION) {
+			throw new IOException("Unsupported compiled catalog version: " + version);
+		}
+
+		byte[] bytes = readBytes(din);
+		byte[] gzipBytes = readBytes(din);
+		byte[] deflateBytes = readBytes(din);
+
+		CatalogResponseBody result = new CatalogResponseBody();
+
+		JSONParser parser = JSONParserPool.getDefault().acquire();
+		try {
+			parser.parse(bytes, bytes.length, result);
+		} catch (JSONParseException e) {
+			throw new IOException("Invalid JSON!", e);
+		} finally {
+			JSONParserPool.getDefault().release(parser);
+		}
+
+		result.freeze();
+		result.getIndex();
+		CatalogCache.prepare(result, CachedBody.create(bytes, gzipBytes, deflateBytes));
+
+		return result;
+	}
+
+	private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static byte[] readBytes(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			throw new IOException("Invalid compiled catalog!");
+		}
+
+		byte[] result = new byte[length];
+		in.readFully(result);
+
+		return result;
+	}
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.handler;
+
+import java.util.concurrent.CompletionStage;
+
+import de.fmui.osb.broker.RequestCredentials;
+import de.fmui.osb.broker.binding.BindRequest;
+import de.fmui.osb.broker.binding.BindResponse;
+import de.fmui.osb.broker.binding.BindingLastOperationRequest;
+import de.fmui.osb.broker.binding.BindingLastOperationResponse;
+import de.fmui.osb.broker.binding.FetchBindingRequest;
+import de.fmui.osb.broker.binding.FetchBindingResponse;
+import de.fmui.osb.broker.binding.UnbindRequest;
+import de.fmui.osb.broker.binding.UnbindResponse;
+import de.fmui.osb.broker.catalog.CatalogRequest;
+import de.fmui.osb.broker.catalog.CatalogResponse;
+import de.fmui.osb.broker.exceptions.OpenServiceBrokerException;
+import de.fmui.osb.broker.exceptions.UnauthorizedException;
+import de.fmui.osb.broker.instance.DeprovisionRequest;
+import de.fmui.osb.broker.instance.DeprovisionResponse;
+import de.fmui.osb.broker.instance.FetchInstanceRequest;
+import de.fmui.osb.broker.instance.FetchInstanceResponse;
+import de.fmui.osb.broker.instance.InstanceLastOperationRequest;
+import de.fmui.osb.broker.instance.InstanceLastOperationResponse;
+import de.fmui.osb.broker.instance.ProvisionRequest;
+import de.fmui.osb.broker.instance.ProvisionResponse;
+import de.fmui.osb.broker.instance.UpdateServiceInstanceRequest;
+import de.fmui.osb.broker.instance.UpdateServiceInstanceResponse;
+
+/**
+ * Asynchronous handler interface for Open Service Broker requests.
+ * 
+ * This is the non-blocking counterpart of {@link OpenServiceBrokerHandler}.
+ * Each operation returns a {@link CompletionStage} and the HTTP exchange is
+ * completed when the stage finishes. To signal an error, the stage should
+ * complete exceptionally with an {@link OpenServiceBrokerException}.
+ * 
+ * Blocking handlers can be turned into asynchronous handlers with
+ * {@link de.fmui.osb.broker.AsyncOpenServiceBrokerHandlerAdapter}.
+ */
+public interface AsyncOpenServiceBrokerHandler {
+
+	/**
+	 * Handles authentication.
+	 * 
+	 * This method should throw a {@link UnauthorizedException} if the
+	 * authentication fails. It is called synchronously before the operation
+	 * method is called.
+	 * 
+	 * @param credentials
+	 *            the credentials object
+	 * 
+	 * @throws OpenServiceBrokerException
+	 *             to indicate an issue or an invalid request
+	 */
+	void authenticate(RequestCredentials credentials) throws OpenServiceBrokerException;
+
+	/**
+	 * Handles a catalog request.
+	 * 
+	 * @param request
+	 *            the request object
+	 * 
+	 * @return a stage that provides the response object
+	 * 
+	 * @throws OpenServiceBrokerException
+	 *             to indicate an issue or an invalid request
+	 */
+	CompletionStage<CatalogResponse> getCatalog(CatalogRequest request) throws OpenServiceBrokerException;
+
+	/**
+	 * Handles a provision request.
+	 * 
+	 * @param request
+	 *            the request object
+	 * 
+	 * @return a stage that provides the response object
+	 * 
+	 * @throws OpenServiceBrokerException
+	 *             to indicate an issue or an invalid request
+	 */
+	CompletionStage<ProvisionResponse> provision(ProvisionRequest request) throws OpenServiceBrokerException;
+
+	/**
+	 * Handles a fetch instance request.
+	 * 
+	 * @param request
+	 *            the request object
+	 * 
+	 * @return a stage that provides the response object
+	 * 
+	 * @throws OpenServiceBrokerException
+	 *             to indicate an issue or an invalid request
+	 */
+	CompletionStage<FetchInstanceResponse> fetchServiceInstance(FetchInstanceRequest request)
+			throws OpenServiceBrokerException;
+
+	/**
+	 * Handles an update request.
+	 * 
+	 * @param request
+	 *            the request object
+	 * 
+	 * @return a stage that provides the response object
+	 * 
+	 * @throws OpenServiceBrokerException
+	 *             to indicate an issue or an invalid request
+	 */
+	CompletionStage<UpdateServiceInstanceResponse> update(UpdateServiceInstanceRequest request)
+			throws OpenServiceBrokerException;
+
+	/**
+	 * Handles a deprovision request.
+	 * 
+	 * @param request
+	 *            the request object
+	 * 
+	 * @return a stage that provides the response object
+	 * 
+	 * @throws OpenServiceBrokerException
+	 *             to indicate an issue or an invalid request
+	 */
+	CompletionStage<DeprovisionResponse> deprovision(DeprovisionRequest request) throws OpenServiceBrokerException;
+
+	/**
+	 * Handles an last operation request for service instances.
+	 * 
+	 * @param request
+	 *            the request object
+	 * 
+	 * @return a stage that provides the response object
+	 * 
+	 * @throws OpenServiceBrokerException
+	 *             to indicate an issue or an invalid request
+	 */
+	CompletionStage<InstanceLastOperationResponse> getLastOperationForInstance(InstanceLastOperationRequest request)
+			throws OpenServiceBrokerException;
+
+	/**
+	 * Handles a bind request.
+	 * 
+	 * @param request
+	 *            the request object
+	 * 
+	 * @return a stage that provides the response object
+	 * 
+	 * @throws OpenServiceBrokerException
+	 *             to indicate an issue or an invalid request
+	 */
+	CompletionStage<BindResponse> bind(BindRequest request) throws OpenServiceBrokerException;
+
+	/**
+	 * Handles a fetch binding request.
+	 * 
+	 * @param request
+	 *            the request object
+	 * 
+	 * @return a stage that provides the response object
+	 * 
+	 * @throws OpenServiceBrokerException
+	 *             to indicate an issue or an invalid request
+	 */
+	CompletionStage<FetchBindingResponse> fetchServiceBinding(FetchBindingRequest request)
+			throws OpenServiceBrokerException;
+
+	/**
+	 * Handles an unbind request.
+	 * 
+	 * @param request
+	 *            the request object
+	 * 
+	 * @return a stage that provides the response object
+	 * 
+	 * @throws OpenServiceBrokerException
+	 *             to indicate an issue or an invalid request
+	 */
+	CompletionStage<UnbindResponse> unbind(UnbindRequest request) throws OpenServiceBrokerException;
+
+	/**
+	 * Handles an last operation request for service bindings.
+	 * 
+	 * @param request
+	 *            the request object
+	 * 
+	 * @return a stage that provides the response object
+	 * 
+	 * @throws OpenServiceBrokerException
+	 *             to indicate an issue or an invalid request
+	 */
+	CompletionStage<BindingLastOperationResponse> getLastOperationForBinding(BindingLastOperationRequest request)
+			throws OpenServiceBrokerException;
+}
\ No newline at end of file
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.handler;
+
+import de.fmui.osb.broker.RequestCredentials;
+import de.fmui.osb.broker.exceptions.OpenServiceBrokerException;
+
+/**
+ * Verifies the credentials of a request.
+ * 
+ * An authenticator is called before the handler's
+ * {@link OpenServiceBrokerHandler#authenticate(RequestCredentials)} method.
+ * Wrap expensive authenticators, for example ones that compare salted password
+ * hashes, into a {@code CachingAuthenticator}.
+ */
+public interface Authenticator {
+
+	/**
+	 * Verifies the credentials of a request.
+	 * 
+	 * @param credentials
+	 *            the credentials
+	 * 
+	 * @return the name of the authenticated principal, never {@code null}
+	 * 
+	 * @throws OpenServiceBrokerException
+	 *             if the credentials are not valid, usually an
+	 *             {@code UnauthorizedException}
+	 */
+	String authenticate(RequestCredentials credentials) throws OpenServiceBrokerException;
+}
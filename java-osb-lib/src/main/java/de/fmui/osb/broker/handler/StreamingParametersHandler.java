@@ -0,0 +1,50 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.handler;
+
+import de.fmui.osb.broker.OpenServiceBrokerRequest;
+import de.fmui.osb.broker.json.JSONReader;
+
+/**
+ * Optional interface for broker handlers that read the {@code parameters} of
+ * selected requests with a {@link JSONReader} instead of a
+ * {@link de.fmui.osb.broker.objects.Parameters} object.
+ * 
+ * The broker handler ({@link OpenServiceBrokerHandler} or
+ * {@link AsyncOpenServiceBrokerHandler}) implements this interface in addition.
+ * If it returns {@code true} for a request, the {@code parameters} are validated
+ * but not parsed into objects, and the request body doesn't contain them.
+ * Instead, {@link OpenServiceBrokerRequest#getParametersReader()} streams
+ * through them.
+ */
+public interface StreamingParametersHandler {
+
+	/**
+	 * Decides if the {@code parameters} of a request should be streamed.
+	 * 
+	 * This method is called before the request body is parsed. The request object
+	 * provides the request type, the path parameters and the HTTP request, but not
+	 * the request body.
+	 * 
+	 * @param request
+	 *            the provision, update or bind request
+	 * 
+	 * @return {@code true} if the parameters should be streamed, {@code false} if
+	 *         they should be parsed into a
+	 *         {@link de.fmui.osb.broker.objects.Parameters} object
+	 */
+	boolean isStreamingParameters(OpenServiceBrokerRequest request);
+}
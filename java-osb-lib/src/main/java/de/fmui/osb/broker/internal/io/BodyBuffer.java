@@ -0,0 +1,118 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.internal.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A request body that has been read into pooled buffers.
+ *
+ * The body is read completely into a byte buffer, which starts small and
+ * grows while the body is read. The parser tokenizes the UTF-8 bytes
+ * directly. The buffer is returned to the pool by {@link #release()}.
+ */
+public class BodyBuffer {
+
+	private final BufferPool pool;
+	private byte[] bytes;
+	private int length;
+
+	/**
+	 * Reads a stream into a pooled buffer.
+	 *
+	 * The stream is not closed.
+	 *
+	 * @param in
+	 *            the stream
+	 * @param contentLength
+	 *            the expected number of bytes, 0 or less if unknown
+	 * @param max
+	 *            the maximum number of bytes
+	 * @param pool
+	 *            the buffer pool
+	 *
+	 * @throws IOException
+	 *             if the stream cannot be read or if it contains more than the
+	 *             maximum number of bytes
+	 */
+	public BodyBuffer(InputStream in, long contentLength, int max, BufferPool pool) throws IOException {
+		this.pool = pool;
+		// don't trust the content length with a big allocation up front
+		this.bytes = pool.getBytes(Math.min(Math.min(contentLength, max), BufferPool.DEFAULT_BUFFER_SIZE));
+		this.length = 0;
+
+		try {
+			read(in, max);
+		} catch (IOException ioe) {
+			release();
+			throw ioe;
+		} catch (RuntimeException re) {
+			release();
+			throw re;
+		}
+	}
+
+	private void read(InputStream in, int max) throws IOException {
+		int b;
+		while ((b = in.read(bytes, length, bytes.length - length)) > -1) {
+			length += b;
+			if (length > max) {
+				throw new IOException("Input limit exceeded!");
+			}
+
+			if (length == bytes.length) {
+				// the content length was unknown or wrong, check if there is more
+				int next = in.read();
+				if (next == -1) {
+					break;
+				}
+
+				byte[] newBytes = pool.getBytes((long) bytes.length * 2);
+				System.arraycopy(bytes, 0, newBytes, 0, length);
+				pool.release(bytes);
+				bytes = newBytes;
+				bytes[length++] = (byte) next;
+				if (length > max) {
+					throw new IOException("Input limit exceeded!");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the byte buffer. Only the first {@link #getLength()} bytes are
+	 * valid.
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Returns the number of bytes.
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Returns the buffer to the pool. The buffer must not be used afterwards.
+	 */
+	public void release() {
+		pool.release(bytes);
+		bytes = null;
+	}
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.internal.io;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, thread-safe pool of byte and char buffers.
+ *
+ * Buffers are organized in size classes, powers of two between the minimum and
+ * the maximum buffer size. Each size class keeps at most a fixed number of idle
+ * buffers. Requests for buffers larger than the maximum size are served with
+ * new, unpooled buffers, and buffers that don't match a size class are dropped
+ * when they are returned.
+ */
+public class BufferPool {
+
+	/** Smallest pooled buffer size. */
+	public static final int MIN_BUFFER_SIZE = 1024;
+	/** Largest pooled buffer size. */
+	public static final int MAX_BUFFER_SIZE = 64 * 1024;
+	/** Buffer size if the expected size is unknown. */
+	public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+	/** Maximum number of idle buffers per size class. */
+	public static final int DEFAULT_BUFFERS_PER_SIZE = 32;
+
+	private static final BufferPool DEFAULT = new BufferPool(DEFAULT_BUFFERS_PER_SIZE);
+
+	private final List<BlockingQueue<byte[]>> byteBuffers;
+	private final List<BlockingQueue<char[]>> charBuffers;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong returns = new AtomicLong();
+	private final AtomicLong drops = new AtomicLong();
+
+	/**
+	 * Creates a buffer pool.
+	 *
+	 * @param buffersPerSize
+	 *            the maximum number of idle buffers per size class
+	 */
+	public BufferPool(int buffersPerSize) {
+		if (buffersPerSize < 1) {
+			throw new IllegalArgumentException("Invalid number of buffers!");
+		}
+
+		int classes = sizeClass(MAX_BUFFER_SIZE) + 1;
+		byteBuffers = new ArrayList<BlockingQueue<byte[]>>(classes);
+		charBuffers = new ArrayList<BlockingQueue<char[]>>(classes);
+		for (int i = 0; i < classes; i++) {
+			byteBuffers.add(new ArrayBlockingQueue<byte[]>(buffersPerSize));
+			charBuffers.add(new ArrayBlockingQueue<char[]>(buffersPerSize));
+		}
+	}
+
+	/**
+	 * Returns the shared buffer pool.
+	 */
+	public static BufferPool getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Returns the buffer size for the expected number of bytes or chars.
+	 *
+	 * @param expectedSize
+	 *            the expected size, for example the content length of a request,
+	 *            0 or less if unknown
+	 *
+	 * @return the buffer size, a power of two
+	 */
+	public static int bufferSize(long expectedSize) {
+		if (expectedSize <= 0) {
+			return DEFAULT_BUFFER_SIZE;
+		}
+
+		if (expectedSize <= MIN_BUFFER_SIZE) {
+			return MIN_BUFFER_SIZE;
+		}
+
+		if (expectedSize > Integer.MAX_VALUE / 2) {
+			return Integer.MAX_VALUE / 2 + 1;
+		}
+
+		return Integer.highestOneBit((int) expectedSize - 1) << 1;
+	}
+
+	private static int sizeClass(int size) {
+		return Integer.numberOfTrailingZeros(size) - Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+	}
+
+	private static boolean isPooledSize(int size) {
+		return size >= MIN_BUFFER_SIZE && size <= MAX_BUFFER_SIZE && Integer.bitCount(size) == 1;
+	}
+
+	/**
+	 * Gets a byte buffer that can hold at least the expected number of bytes.
+	 *
+	 * @param expectedSize
+	 *            the expected size, 0 or less if unknown
+	 *
+	 * @return the buffer, the content is undefined
+	 */
+	public byte[] getBytes(long expectedSize) {
+		int size = bufferSize(expectedSize);
+		if (isPooledSize(size)) {
+			byte[] buffer = byteBuffers.get(sizeClass(size)).poll();
+			if (buffer != null) {
+				hits.incrementAndGet();
+				return buffer;
+			}
+		}
+
+		misses.incrementAndGet();
+		return new byte[size];
+	}
+
+	/**
+	 * Gets a char buffer that can hold at least the expected number of chars.
+	 *
+	 * @param expectedSize
+	 *            the expected size, 0 or less if unknown
+	 *
+	 * @return the buffer, the content is undefined
+	 */
+	public char[] getChars(long expectedSize) {
+		int size = bufferSize(expectedSize);
+		if (isPooledSize(size)) {
+			char[] buffer = charBuffers.get(sizeClass(size)).poll();
+			if (buffer != null) {
+				hits.incrementAndGet();
+				return buffer;
+			}
+		}
+
+		misses.incrementAndGet();
+		return new char[size];
+	}
+
+	/**
+	 * Returns a byte buffer to the pool. The buffer must not be used afterwards.
+	 *
+	 * @param buffer
+	 *            the buffer, may be {@code null}
+	 */
+	public void release(byte[] buffer) {
+		if (buffer == null) {
+			return;
+		}
+
+		if (isPooledSize(buffer.length) && byteBuffers.get(sizeClass(buffer.length)).offer(buffer)) {
+			returns.incrementAndGet();
+		} else {
+			drops.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Returns a char buffer to the pool. The buffer must not be used afterwards.
+	 *
+	 * @param buffer
+	 *            the buffer, may be {@code null}
+	 */
+	public void release(char[] buffer) {
+		if (buffer == null) {
+			return;
+		}
+
+		if (isPooledSize(buffer.length) && charBuffers.get(sizeClass(buffer.length)).offer(buffer)) {
+			returns.incrementAndGet();
+		} else {
+			drops.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Returns the number of buffer requests that have been served from the pool.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of buffer requests that required a new buffer.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the number of buffers that have been returned to the pool.
+	 */
+	public long getReturns() {
+		return returns.get();
+	}
+
+	/**
+	 * Returns the number of returned buffers that have been dropped because the
+	 * pool was full or the buffer size didn't match a size class.
+	 */
+	public long getDrops() {
+		return drops.get();
+	}
+
+	/**
+	 * Returns the number of idle buffers in the pool.
+	 */
+	public int getIdleBuffers() {
+		int result = 0;
+		for (int i = 0; i < byteBuffers.size(); i++) {
+			result += byteBuffers.get(i).size() + charBuffers.get(i).size();
+		}
+
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "BufferPool [hits=" + getHits() + ", misses=" + getMisses() + ", returns=" + getReturns() + ", drops="
+				+ getDrops() + ", idle=" + getIdleBuffers() + "]";
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.internal.io;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Deflater;
+
+import de.fmui.osb.broker.internal.json.JSONValue;
+
+/**
+ * A serialized response body that can be sent many times.
+ *
+ * Holds the UTF-8 bytes of the JSON text, strong ETags derived from these
+ * bytes, and the compressed variants, which are created with the best
+ * compression level when they are requested for the first time and then reused
+ * for all later responses. Instances are immutable and can be shared across
+ * threads.
+ *
+ * Each content coding is a different representation and has its own ETag. The
+ * ETags of the compressed variants append the coding to the ETag of the JSON
+ * text, for example {@code "<hash>-gzip"}.
+ */
+public final class CachedBody {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final byte[] bytes;
+	private final String etag;
+	private final String gzipETag;
+	private final String deflateETag;
+	private volatile byte[] gzipBytes;
+	private volatile byte[] deflateBytes;
+
+	private CachedBody(byte[] bytes) {
+		this.bytes = bytes;
+		this.etag = createETag(bytes);
+		this.gzipETag = createETag(etag, CompressingOutputStream.GZIP);
+		this.deflateETag = createETag(etag, CompressingOutputStream.DEFLATE);
+	}
+
+	/**
+	 * Serializes a JSON value.
+	 */
+	public static CachedBody create(Object value) {
+		return new CachedBody(IOUtils.toUTF8Bytes(JSONValue.toJSONString(value)));
+	}
+
+	/**
+	 * Wraps a JSON text that has been serialized and compressed before, for
+	 * example at build time. The arrays must not be modified afterwards.
+	 * 
+	 * @param bytes
+	 *            the UTF-8 bytes of the JSON text
+	 * @param gzipBytes
+	 *            the gzip compressed bytes, or {@code null} to compress them
+	 *            when needed
+	 * @param deflateBytes
+	 *            the deflate compressed bytes, or {@code null} to compress them
+	 *            when needed
+	 */
+	public static CachedBody create(byte[] bytes, byte[] gzipBytes, byte[] deflateBytes) {
+		CachedBody result = new CachedBody(bytes);
+		result.gzipBytes = gzipBytes;
+		result.deflateBytes = deflateBytes;
+
+		return result;
+	}
+
+	/**
+	 * Returns the UTF-8 bytes of the JSON text. The array must not be modified.
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Returns the strong ETag of the uncompressed body, including the quotes.
+	 */
+	public String getETag() {
+		return etag;
+	}
+
+	/**
+	 * Returns the strong ETag of a content coding, including the quotes.
+	 * 
+	 * @param coding
+	 *            {@value CompressingOutputStream#GZIP},
+	 *            {@value CompressingOutputStream#DEFLATE}, or {@code null} for
+	 *            the uncompressed body
+	 */
+	public String getETag(String coding) {
+		if (coding == null) {
+			return etag;
+		} else if (CompressingOutputStream.GZIP.equals(coding)) {
+			return gzipETag;
+		} else {
+			return deflateETag;
+		}
+	}
+
+	/**
+	 * Returns the compressed bytes. The array must not be modified.
+	 * 
+	 * @param coding
+	 *            {@value CompressingOutputStream#GZIP} or
+	 *            {@value CompressingOutputStream#DEFLATE}
+	 * 
+	 * @return the compressed bytes or {@code null} if compression doesn't make
+	 *         the body smaller
+	 */
+	public byte[] getCompressedBytes(String coding) {
+		byte[] result;
+		if (CompressingOutputStream.GZIP.equals(coding)) {
+			result = gzipBytes;
+			if (result == null) {
+				result = CompressingOutputStream.compress(bytes, coding, Deflater.BEST_COMPRESSION);
+				gzipBytes = result;
+			}
+		} else {
+			result = deflateBytes;
+			if (result == null) {
+				result = CompressingOutputStream.compress(bytes, coding, Deflater.BEST_COMPRESSION);
+				deflateBytes = result;
+			}
+		}
+
+		return result.length < bytes.length ? result : null;
+	}
+
+	/**
+	 * Checks whether the ETag of a content coding matches an
+	 * {@code If-None-Match} header.
+	 * 
+	 * @param ifNoneMatch
+	 *            the header value, may be {@code null}
+	 * @param coding
+	 *            the content coding of the response, or {@code null} for the
+	 *            uncompressed body
+	 */
+	public boolean matches(String ifNoneMatch, String coding) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+
+		String etag = getETag(coding);
+		for (String tag : ifNoneMatch.split(",")) {
+			tag = tag.trim();
+			if (tag.equals("*")) {
+				return true;
+			}
+			// If-None-Match uses the weak comparison
+			if (tag.startsWith("W/")) {
+				tag = tag.substring(2);
+			}
+			if (tag.equals(etag)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static String createETag(byte[] bytes) {
+		byte[] digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("SHA-256 not available!", e);
+		}
+
+		// 128 bits are plenty to tell versions apart
+		char[] result = new char[34];
+		result[0] = '"';
+		for (int i = 0; i < 16; i++) {
+			result[1 + i * 2] = HEX[(digest[i] >> 4) & 0xF];
+			result[2 + i * 2] = HEX[digest[i] & 0xF];
+		}
+		result[33] = '"';
+
+		return new String(result);
+	}
+
+	private static String createETag(String etag, String coding) {
+		return etag.substring(0, etag.length() - 1) + '-' + coding + '"';
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.internal.io;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import de.fmui.osb.broker.catalog.CatalogResponseBody;
+
+/**
+ * Keeps the serialized form of the last catalog that has been sent.
+ *
+ * The cache holds a private deep copy of the catalog. A catalog is served from
+ * the cache if it is equal to that copy. Because the copy shares all strings
+ * and numbers with the original, this comparison is much cheaper than
+ * serializing the catalog again. Any change to the catalog, or a different
+ * catalog object, creates a new serialized version and ETag.
+ *
+ * A frozen catalog is not copied. As long as the same frozen catalog object is
+ * sent, it is served from the cache without any comparison. A frozen catalog
+ * can also be serialized ahead of time with {@link #prepare(CatalogResponseBody)},
+ * so that not even the first request after a catalog change pays for it.
+ */
+public class CatalogCache {
+
+	private static class Entry {
+		final Object snapshot;
+		final CachedBody body;
+
+		Entry(Object snapshot, CachedBody body) {
+			this.snapshot = snapshot;
+			this.body = body;
+		}
+	}
+
+	// frozen catalogs and their serialized form, shared by all caches;
+	// the keys are weak, so an unused catalog disappears with its bytes
+	private static final Map<CatalogResponseBody, CachedBody> PREPARED = Collections
+			.synchronizedMap(new WeakHashMap<CatalogResponseBody, CachedBody>());
+
+	private volatile Entry current;
+
+	/**
+	 * Serializes and compresses a frozen catalog ahead of time.
+	 */
+	public static void prepare(CatalogResponseBody catalog) {
+		if (!catalog.isFrozen()) {
+			throw new IllegalArgumentException("Catalog is not frozen!");
+		}
+
+		CachedBody body = CachedBody.create(catalog);
+		body.getCompressedBytes(CompressingOutputStream.GZIP);
+		body.getCompressedBytes(CompressingOutputStream.DEFLATE);
+
+		prepare(catalog, body);
+	}
+
+	/**
+	 * Registers the serialized form of a frozen catalog that has been created
+	 * ahead of time. The body must be the serialization of the catalog.
+	 */
+	public static void prepare(CatalogResponseBody catalog, CachedBody body) {
+		if (!catalog.isFrozen()) {
+			throw new IllegalArgumentException("Catalog is not frozen!");
+		}
+
+		PREPARED.put(catalog, body);
+	}
+
+	/**
+	 * Returns the serialized catalog, creating it if the catalog has changed.
+	 */
+	public CachedBody get(CatalogResponseBody catalog) {
+		Entry entry = current;
+		if (entry != null && entry.snapshot == catalog) {
+			return entry.body;
+		}
+
+		if (catalog.isFrozen()) {
+			CachedBody prepared = PREPARED.get(catalog);
+			if (prepared != null) {
+				current = new Entry(catalog, prepared);
+				return prepared;
+			}
+		}
+
+		if (entry != null && entry.snapshot.equals(catalog)) {
+			return entry.body;
+		}
+
+		// if two threads get here at the same time, both serialize the
+		// catalog and the last one wins, which is harmless
+		// a frozen catalog can't change and is its own snapshot
+		Object snapshot = catalog.isFrozen() ? catalog : snapshot(catalog);
+		entry = new Entry(snapshot, CachedBody.create(snapshot));
+		current = entry;
+
+		return entry.body;
+	}
+
+	/**
+	 * Drops the cached catalog.
+	 */
+	public void clear() {
+		current = null;
+	}
+
+	/**
+	 * Creates a deep copy of a JSON value. Maps and lists are copied, all other
+	 * values are shared.
+	 */
+	static Object snapshot(Object value) {
+		if (value instanceof Map) {
+			Map<?, ?> map = (Map<?, ?>) value;
+			Map<Object, Object> result = new LinkedHashMap<Object, Object>((int) (map.size() / 0.75f) + 1);
+			for (Map.Entry<?, ?> e : map.entrySet()) {
+				result.put(e.getKey(), snapshot(e.getValue()));
+			}
+			return result;
+		} else if (value instanceof List) {
+			List<?> list = (List<?>) value;
+			List<Object> result = new ArrayList<Object>(list.size());
+			for (Object o : list) {
+				result.add(snapshot(o));
+			}
+			return result;
+		}
+
+		return value;
+	}
+}
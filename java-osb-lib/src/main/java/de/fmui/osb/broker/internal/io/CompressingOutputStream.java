@@ -0,0 +1,205 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.internal.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * An output stream that compresses in the {@code gzip} or {@code deflate}
+ * content coding, with a pooled {@link Deflater} and a pooled buffer.
+ *
+ * {@link #finish()} must be called to write the end of the compressed data and
+ * to return the deflater and the buffer to their pools. {@link #close()}
+ * finishes and closes the underlying stream.
+ */
+public class CompressingOutputStream extends OutputStream {
+
+	/** The {@code gzip} content coding. */
+	public static final String GZIP = "gzip";
+	/** The {@code deflate} content coding (zlib format). */
+	public static final String DEFLATE = "deflate";
+
+	private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+	private final OutputStream out;
+	private final boolean gzip;
+	private final DeflaterPool deflaterPool;
+	private final BufferPool bufferPool;
+	private final CRC32 crc;
+	private Deflater deflater;
+	private byte[] buffer;
+
+	/**
+	 * Creates a compressing stream.
+	 *
+	 * @param out
+	 *            the stream for the compressed data
+	 * @param coding
+	 *            {@value #GZIP} or {@value #DEFLATE}
+	 * @param level
+	 *            the compression level, see {@link Deflater}
+	 */
+	public CompressingOutputStream(OutputStream out, String coding, int level) throws IOException {
+		this(out, coding, level, DeflaterPool.getDefault(), BufferPool.getDefault());
+	}
+
+	/**
+	 * Creates a compressing stream.
+	 */
+	public CompressingOutputStream(OutputStream out, String coding, int level, DeflaterPool deflaterPool,
+			BufferPool bufferPool) throws IOException {
+		if (GZIP.equals(coding)) {
+			gzip = true;
+		} else if (DEFLATE.equals(coding)) {
+			gzip = false;
+		} else {
+			throw new IllegalArgumentException("Unsupported content coding: " + coding);
+		}
+
+		this.out = out;
+		this.deflaterPool = deflaterPool;
+		this.bufferPool = bufferPool;
+		this.crc = gzip ? new CRC32() : null;
+		this.deflater = deflaterPool.acquire(level, gzip);
+		this.buffer = bufferPool.getBytes(BufferPool.DEFAULT_BUFFER_SIZE);
+
+		if (gzip) {
+			out.write(GZIP_HEADER);
+		}
+	}
+
+	/**
+	 * Compresses a byte array.
+	 *
+	 * @param coding
+	 *            {@value #GZIP} or {@value #DEFLATE}
+	 * @param level
+	 *            the compression level, see {@link Deflater}
+	 */
+	public static byte[] compress(byte[] bytes, String coding, int level) {
+		try {
+			PooledByteArrayOutputStream out = new PooledByteArrayOutputStream(bytes.length / 4 + 64);
+			CompressingOutputStream cout = new CompressingOutputStream(out, coding, level);
+			try {
+				cout.write(bytes, 0, bytes.length);
+				cout.finish();
+				return out.toByteArray();
+			} finally {
+				cout.abort();
+				out.release();
+			}
+		} catch (IOException e) {
+			// can't happen with an in-memory stream
+			throw new RuntimeException("Cannot compress: " + e.toString(), e);
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (deflater == null) {
+			throw new IOException("Stream finished!");
+		}
+		if (len == 0) {
+			return;
+		}
+
+		if (gzip) {
+			crc.update(b, off, len);
+		}
+
+		deflater.setInput(b, off, len);
+		while (!deflater.needsInput()) {
+			deflate();
+		}
+	}
+
+	private void deflate() throws IOException {
+		int n = deflater.deflate(buffer, 0, buffer.length);
+		if (n > 0) {
+			out.write(buffer, 0, n);
+		}
+	}
+
+	/**
+	 * Writes the end of the compressed data without closing the underlying
+	 * stream, and returns the deflater and the buffer to their pools.
+	 */
+	public void finish() throws IOException {
+		if (deflater == null) {
+			return;
+		}
+
+		try {
+			deflater.finish();
+			while (!deflater.finished()) {
+				deflate();
+			}
+
+			if (gzip) {
+				writeIntLE((int) crc.getValue());
+				writeIntLE((int) deflater.getBytesRead());
+			}
+		} finally {
+			deflaterPool.release(deflater, gzip);
+			deflater = null;
+			bufferPool.release(buffer);
+			buffer = null;
+		}
+	}
+
+	/**
+	 * Returns the deflater and the buffer to their pools without writing the end
+	 * of the compressed data, for example if the response failed. Does nothing
+	 * if the stream has already been finished.
+	 */
+	public void abort() {
+		if (deflater != null) {
+			deflaterPool.release(deflater, gzip);
+			deflater = null;
+			bufferPool.release(buffer);
+			buffer = null;
+		}
+	}
+
+	private void writeIntLE(int i) throws IOException {
+		out.write(i & 0xff);
+		out.write((i >> 8) & 0xff);
+		out.write((i >> 16) & 0xff);
+		out.write((i >> 24) & 0xff);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			finish();
+		} finally {
+			out.close();
+		}
+	}
+}
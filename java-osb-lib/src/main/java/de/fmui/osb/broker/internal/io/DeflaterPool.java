@@ -0,0 +1,111 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.internal.io;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+
+/**
+ * A bounded, thread-safe pool of {@link Deflater} objects.
+ *
+ * A {@link Deflater} holds native memory, which is expensive to allocate and is
+ * only freed by {@link Deflater#end()} or the garbage collector. Released
+ * deflaters are reset and reused. Deflaters that don't fit into the pool are
+ * ended.
+ *
+ * There are separate pools for deflaters that write the zlib format
+ * ({@code deflate} content coding) and deflaters that write raw deflate data,
+ * which is wrapped into the gzip format.
+ */
+public class DeflaterPool {
+
+	/** Maximum number of idle deflaters per format in the default pool. */
+	public static final int DEFAULT_MAX_IDLE = 16;
+
+	private static final DeflaterPool DEFAULT = new DeflaterPool(DEFAULT_MAX_IDLE);
+
+	private final BlockingQueue<Deflater> zlibDeflaters;
+	private final BlockingQueue<Deflater> rawDeflaters;
+
+	/**
+	 * Creates a deflater pool.
+	 *
+	 * @param maxIdle
+	 *            the maximum number of idle deflaters per format
+	 */
+	public DeflaterPool(int maxIdle) {
+		if (maxIdle < 1) {
+			throw new IllegalArgumentException("Invalid number of deflaters!");
+		}
+
+		zlibDeflaters = new ArrayBlockingQueue<Deflater>(maxIdle);
+		rawDeflaters = new ArrayBlockingQueue<Deflater>(maxIdle);
+	}
+
+	/**
+	 * Returns the shared deflater pool.
+	 */
+	public static DeflaterPool getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Gets an idle deflater or creates a new one.
+	 *
+	 * @param level
+	 *            the compression level
+	 * @param nowrap
+	 *            {@code true} for raw deflate data, {@code false} for the zlib
+	 *            format
+	 */
+	public Deflater acquire(int level, boolean nowrap) {
+		Deflater deflater = (nowrap ? rawDeflaters : zlibDeflaters).poll();
+		if (deflater == null) {
+			return new Deflater(level, nowrap);
+		}
+
+		deflater.setLevel(level);
+		return deflater;
+	}
+
+	/**
+	 * Resets a deflater and returns it to the pool. The deflater must not be used
+	 * by the caller afterwards.
+	 *
+	 * @param deflater
+	 *            the deflater, may be {@code null}
+	 * @param nowrap
+	 *            the format the deflater has been acquired for
+	 */
+	public void release(Deflater deflater, boolean nowrap) {
+		if (deflater == null) {
+			return;
+		}
+
+		deflater.reset();
+		if (!(nowrap ? rawDeflaters : zlibDeflaters).offer(deflater)) {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Returns the number of idle deflaters in the pool.
+	 */
+	public int getIdleDeflaters() {
+		return zlibDeflaters.size() + rawDeflaters.size();
+	}
+}
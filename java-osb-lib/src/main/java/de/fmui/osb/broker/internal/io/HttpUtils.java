@@ -16,17 +16,30 @@
 package de.fmui.osb.broker.internal.io;
 
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStream;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import de.fmui.osb.broker.OpenServiceBrokerResponse;
 import de.fmui.osb.broker.exceptions.OpenServiceBrokerException;
+import de.fmui.osb.broker.internal.routing.RequestPath;
 import de.fmui.osb.broker.json.JSONObject;
 
 public class HttpUtils {
 
+	/**
+	 * Default maximum size of a response body in bytes that is sent with a
+	 * {@code Content-Length} header. Larger bodies are streamed.
+	 */
+	public static final int DEFAULT_MAX_BUFFERED_RESPONSE_SIZE = 64 * 1024;
+
+	/**
+	 * Default minimum size of a response body in bytes that is compressed.
+	 * Smaller bodies don't gain enough to justify the work.
+	 */
+	public static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+
 	/**
 	 * Sends a JSON response.
 	 */
@@ -34,9 +47,13 @@ public class HttpUtils {
 		response.setStatus(statusCode);
 		response.setContentType("application/json");
 		response.setCharacterEncoding(IOUtils.UTF8);
-		PrintWriter pw = response.getWriter();
-		pw.println(json);
-		pw.flush();
+		ResponseBodyWriter writer = new ResponseBodyWriter(response, DEFAULT_MAX_BUFFERED_RESPONSE_SIZE);
+		try {
+			writer.write(json);
+			writer.close();
+		} finally {
+			writer.abort();
+		}
 	}
 
 	/**
@@ -54,45 +71,192 @@ public class HttpUtils {
 	 */
 	public static void sendResponse(final HttpServletResponse response, OpenServiceBrokerResponse osbResponse)
 			throws IOException {
+		sendResponse(response, osbResponse, DEFAULT_MAX_BUFFERED_RESPONSE_SIZE);
+	}
+
+	/**
+	 * Sends an OSB response.
+	 * 
+	 * The body is encoded into UTF-8 bytes and sent with a
+	 * {@code Content-Length} header if it is not larger than
+	 * {@code maxBufferedSize} bytes. Larger bodies are streamed.
+	 */
+	public static void sendResponse(final HttpServletResponse response, OpenServiceBrokerResponse osbResponse,
+			int maxBufferedSize) throws IOException {
+		sendResponse(null, response, osbResponse, maxBufferedSize, -1);
+	}
+
+	/**
+	 * Sends an OSB response.
+	 * 
+	 * The body is encoded into UTF-8 bytes and sent with a
+	 * {@code Content-Length} header if it is not larger than
+	 * {@code maxBufferedSize} bytes. Larger bodies are streamed. If the client
+	 * accepts a supported content coding, bodies of at least
+	 * {@code compressionThreshold} bytes are compressed.
+	 * 
+	 * @param request
+	 *            the HTTP request object, may be {@code null} if the request
+	 *            headers are unknown
+	 * @param compressionThreshold
+	 *            the minimum body size in bytes that is compressed, a negative
+	 *            value to disable compression
+	 */
+	public static void sendResponse(final HttpServletRequest request, final HttpServletResponse response,
+			OpenServiceBrokerResponse osbResponse, int maxBufferedSize, int compressionThreshold) throws IOException {
 		response.setStatus(osbResponse.getStatusCode());
 
 		JSONObject body = osbResponse.getResponseBody();
 		if (body != null) {
+			String coding = null;
+			if (compressionThreshold >= 0) {
+				response.setHeader("Vary", "Accept-Encoding");
+				if (request != null) {
+					coding = negotiateEncoding(request.getHeader("Accept-Encoding"));
+				}
+			}
+
 			response.setContentType("application/json");
 			response.setCharacterEncoding(IOUtils.UTF8);
-			PrintWriter pw = response.getWriter();
-			body.writeJSONString(pw);
-			pw.flush();
+			ResponseBodyWriter writer = new ResponseBodyWriter(response, maxBufferedSize, coding,
+					compressionThreshold);
+			try {
+				body.writeJSONString(writer);
+				writer.close();
+			} finally {
+				writer.abort();
+			}
 		}
 	}
 
 	/**
-	 * Splits the path into its fragments.
+	 * Sends a cached response body.
+	 * 
+	 * If the client accepts a supported content coding and the body is at least
+	 * {@code compressionThreshold} bytes long, the precompressed bytes of the
+	 * body are sent. Sets the ETag header of the selected coding and answers a
+	 * matching {@code If-None-Match} header with 304 (Not Modified).
+	 * 
+	 * @param request
+	 *            the HTTP request object, may be {@code null} if the request
+	 *            headers are unknown
+	 * @param compressionThreshold
+	 *            the minimum body size in bytes that is compressed, a negative
+	 *            value to disable compression
 	 */
-	public static String[] splitPath(final HttpServletRequest request) {
-		assert request != null;
+	public static void sendCachedBody(final HttpServletRequest request, final HttpServletResponse response,
+			int statusCode, CachedBody body, int compressionThreshold) throws IOException {
+		byte[] bytes = body.getBytes();
+		String coding = null;
+		if (compressionThreshold >= 0) {
+			response.setHeader("Vary", "Accept-Encoding");
+			if (request != null && bytes.length >= compressionThreshold) {
+				String accepted = negotiateEncoding(request.getHeader("Accept-Encoding"));
+				byte[] compressed = accepted == null ? null : body.getCompressedBytes(accepted);
+				if (compressed != null) {
+					coding = accepted;
+					bytes = compressed;
+				}
+			}
+		}
 
-		int prefixLength = request.getContextPath().length() + request.getServletPath().length();
-		String p = request.getRequestURI().substring(prefixLength);
+		response.setHeader("ETag", body.getETag(coding));
+
+		if (request != null && body.matches(request.getHeader("If-None-Match"), coding)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+
+		response.setStatus(statusCode);
+		response.setContentType("application/json");
+		response.setCharacterEncoding(IOUtils.UTF8);
+		if (coding != null) {
+			response.setHeader("Content-Encoding", coding);
+		}
 
-		if (p.length() == 0) {
-			return new String[0];
+		response.setContentLength(bytes.length);
+		OutputStream out = response.getOutputStream();
+		out.write(bytes);
+		out.flush();
+	}
+
+	/**
+	 * Selects the content coding for a response from an {@code Accept-Encoding}
+	 * header.
+	 * 
+	 * @param acceptEncoding
+	 *            the header value, may be {@code null}
+	 * 
+	 * @return {@value CompressingOutputStream#GZIP},
+	 *         {@value CompressingOutputStream#DEFLATE}, or {@code null} if the
+	 *         body should not be compressed
+	 */
+	public static String negotiateEncoding(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return null;
 		}
 
-		String[] result = p.substring(1).split("/");
-		for (int i = 0; i < result.length; i++) {
-			result[i] = IOUtils.decodeURL(result[i]);
+		double gzip = -1;
+		double deflate = -1;
+		double wildcard = -1;
+
+		for (String element : acceptEncoding.split(",")) {
+			String[] params = element.split(";");
+			String name = params[0].trim();
 
-			// check for malicious characters
-			for (int j = 0; j < result[i].length(); j++) {
-				char c = result[i].charAt(j);
-				if (c == '\n' || c == '\r' || c == '\b' || c == 0) {
-					throw new RuntimeException("Invalid path!");
+			double q = 1;
+			for (int i = 1; i < params.length; i++) {
+				String param = params[i].trim();
+				if (param.startsWith("q=") || param.startsWith("Q=")) {
+					try {
+						q = Double.parseDouble(param.substring(2).trim());
+					} catch (NumberFormatException e) {
+						q = 0;
+					}
 				}
 			}
+
+			if (name.equalsIgnoreCase(CompressingOutputStream.GZIP) || name.equalsIgnoreCase("x-gzip")) {
+				gzip = q;
+			} else if (name.equalsIgnoreCase(CompressingOutputStream.DEFLATE)) {
+				deflate = q;
+			} else if (name.equals("*")) {
+				wildcard = q;
+			}
 		}
 
-		return result;
+		if (gzip < 0) {
+			gzip = wildcard;
+		}
+		if (deflate < 0) {
+			deflate = wildcard;
+		}
+
+		if (gzip > 0 && gzip >= deflate) {
+			return CompressingOutputStream.GZIP;
+		}
+		if (deflate > 0) {
+			return CompressingOutputStream.DEFLATE;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Splits the path into its fragments.
+	 */
+	public static String[] splitPath(final HttpServletRequest request) {
+		return tokenizePath(request).getSegments();
+	}
+
+	/**
+	 * Tokenizes the path without copying or decoding its fragments.
+	 */
+	public static RequestPath tokenizePath(final HttpServletRequest request) {
+		assert request != null;
+
+		int prefixLength = request.getContextPath().length() + request.getServletPath().length();
+		return new RequestPath(request.getRequestURI(), prefixLength);
 	}
 
 	/**
@@ -100,13 +264,15 @@ public class HttpUtils {
 	 */
 	public static String[] splitAuthHeader(final HttpServletRequest request) {
 		String authHeader = request.getHeader("Authorization");
-		if (authHeader != null) {
-			String[] ah = authHeader.split(" ");
-			if (ah.length > 1) {
-				return ah;
-			}
+		if (authHeader == null) {
+			return null;
 		}
 
-		return null;
+		int x = authHeader.indexOf(' ');
+		if (x < 1 || x == authHeader.length() - 1) {
+			return null;
+		}
+
+		return new String[] { authHeader.substring(0, x), authHeader.substring(x + 1).trim() };
 	}
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.internal.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A byte array output stream backed by pooled buffers.
+ *
+ * {@link #release()} must be called when the content is not needed anymore.
+ */
+public class PooledByteArrayOutputStream extends OutputStream {
+
+	private final BufferPool pool;
+	private byte[] buffer;
+	private int count;
+
+	/**
+	 * Creates a stream.
+	 *
+	 * @param expectedSize
+	 *            the expected size, 0 or less if unknown
+	 */
+	public PooledByteArrayOutputStream(long expectedSize) {
+		this(expectedSize, BufferPool.getDefault());
+	}
+
+	/**
+	 * Creates a stream.
+	 */
+	public PooledByteArrayOutputStream(long expectedSize, BufferPool pool) {
+		this.pool = pool;
+		this.buffer = pool.getBytes(expectedSize);
+		this.count = 0;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureCapacity(count + 1);
+		buffer[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureCapacity(count + len);
+		System.arraycopy(b, off, buffer, count, len);
+		count += len;
+	}
+
+	private void ensureCapacity(int capacity) throws IOException {
+		if (buffer == null) {
+			throw new IOException("Stream released!");
+		}
+
+		if (capacity > buffer.length) {
+			byte[] newBuffer = pool.getBytes(Math.max((long) buffer.length * 2, capacity));
+			System.arraycopy(buffer, 0, newBuffer, 0, count);
+			pool.release(buffer);
+			buffer = newBuffer;
+		}
+	}
+
+	/**
+	 * Returns the internal buffer. Only the first {@link #size()} bytes are
+	 * valid.
+	 */
+	public byte[] getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * Returns the number of bytes written.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Returns a copy of the content.
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(buffer, count);
+	}
+
+	/**
+	 * Writes the content to another stream.
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		out.write(buffer, 0, count);
+	}
+
+	/**
+	 * Returns the buffer to the pool. The stream must not be used afterwards.
+	 */
+	public void release() {
+		pool.release(buffer);
+		buffer = null;
+	}
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.internal.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.zip.Deflater;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Encodes a response body into UTF-8 bytes.
+ *
+ * The bytes are collected in a pooled buffer. If the body fits into the
+ * buffered size, it is sent with a {@code Content-Length} header when the
+ * writer is closed. Larger bodies are streamed to the servlet output stream in
+ * chunks of the current buffer size.
+ *
+ * If a content coding is set, buffered bodies that reach the compression
+ * threshold are compressed if that makes them smaller, and streamed bodies are
+ * always compressed.
+ *
+ * Unpaired surrogates are replaced with '?', like {@link String#getBytes}
+ * does.
+ */
+public class ResponseBodyWriter extends Writer {
+
+	/** Compression level of response bodies. */
+	public static final int COMPRESSION_LEVEL = Deflater.DEFAULT_COMPRESSION;
+
+	private final HttpServletResponse response;
+	private final int maxBufferedSize;
+	private final String coding;
+	private final int compressionThreshold;
+	private final BufferPool pool;
+
+	private byte[] buffer;
+	private int pos;
+	// position that triggers makeRoom(), never beyond maxBufferedSize while buffering
+	private int limit;
+	private char highSurrogate;
+	private OutputStream out;
+	private CompressingOutputStream compressingOut;
+	private boolean streaming;
+	private boolean closed;
+
+	/**
+	 * Creates a writer for a response body.
+	 *
+	 * @param response
+	 *            the HTTP response object, status and content type must already
+	 *            be set
+	 * @param maxBufferedSize
+	 *            the maximum body size in bytes that is sent with a
+	 *            {@code Content-Length} header, 0 or less to always stream
+	 */
+	public ResponseBodyWriter(HttpServletResponse response, int maxBufferedSize) {
+		this(response, maxBufferedSize, null, 0, BufferPool.getDefault());
+	}
+
+	/**
+	 * Creates a writer for a response body.
+	 * 
+	 * @param response
+	 *            the HTTP response object, status and content type must already
+	 *            be set
+	 * @param maxBufferedSize
+	 *            the maximum body size in bytes that is sent with a
+	 *            {@code Content-Length} header, 0 or less to always stream
+	 * @param coding
+	 *            the content coding ({@value CompressingOutputStream#GZIP} or
+	 *            {@value CompressingOutputStream#DEFLATE}), or {@code null} to
+	 *            send the body uncompressed
+	 * @param compressionThreshold
+	 *            the minimum size in bytes of a buffered body that is compressed
+	 */
+	public ResponseBodyWriter(HttpServletResponse response, int maxBufferedSize, String coding,
+			int compressionThreshold) {
+		this(response, maxBufferedSize, coding, compressionThreshold, BufferPool.getDefault());
+	}
+
+	/**
+	 * Creates a writer for a response body.
+	 */
+	public ResponseBodyWriter(HttpServletResponse response, int maxBufferedSize, String coding,
+			int compressionThreshold, BufferPool pool) {
+		this.response = response;
+		this.maxBufferedSize = maxBufferedSize;
+		this.coding = coding;
+		this.compressionThreshold = compressionThreshold;
+		this.pool = pool;
+		this.buffer = pool.getBytes(Math.min(BufferPool.DEFAULT_BUFFER_SIZE, Math.max(maxBufferedSize, 1)));
+		this.pos = 0;
+		this.limit = Math.min(buffer.length, Math.max(maxBufferedSize, 0));
+	}
+
+	/**
+	 * Returns whether the body is streamed, i.e. the buffered size has been
+	 * exceeded.
+	 */
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		ensureOpen();
+		encode((char) c);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		ensureOpen();
+		int end = off + len;
+		for (int i = off; i < end; i++) {
+			char c = cbuf[i];
+			if (c < 0x80 && highSurrogate == 0) {
+				if (pos == limit) {
+					makeRoom(1);
+				}
+				buffer[pos++] = (byte) c;
+			} else {
+				encode(c);
+			}
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		ensureOpen();
+		int end = off + len;
+		for (int i = off; i < end; i++) {
+			char c = str.charAt(i);
+			if (c < 0x80 && highSurrogate == 0) {
+				if (pos == limit) {
+					makeRoom(1);
+				}
+				buffer[pos++] = (byte) c;
+			} else {
+				encode(c);
+			}
+		}
+	}
+
+	private void encode(char c) throws IOException {
+		if (highSurrogate != 0) {
+			char high = highSurrogate;
+			highSurrogate = 0;
+			if (Character.isLowSurrogate(c)) {
+				int cp = Character.toCodePoint(high, c);
+				makeRoom(4);
+				buffer[pos++] = (byte) (0xF0 | (cp >> 18));
+				buffer[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				buffer[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				buffer[pos++] = (byte) (0x80 | (cp & 0x3F));
+				return;
+			}
+			makeRoom(1);
+			buffer[pos++] = '?';
+		}
+
+		if (c < 0x80) {
+			makeRoom(1);
+			buffer[pos++] = (byte) c;
+		} else if (c < 0x800) {
+			makeRoom(2);
+			buffer[pos++] = (byte) (0xC0 | (c >> 6));
+			buffer[pos++] = (byte) (0x80 | (c & 0x3F));
+		} else if (Character.isHighSurrogate(c)) {
+			highSurrogate = c;
+		} else if (Character.isLowSurrogate(c)) {
+			makeRoom(1);
+			buffer[pos++] = '?';
+		} else {
+			makeRoom(3);
+			buffer[pos++] = (byte) (0xE0 | (c >> 12));
+			buffer[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+			buffer[pos++] = (byte) (0x80 | (c & 0x3F));
+		}
+	}
+
+	/**
+	 * Makes sure that the buffer has room for the given number of bytes, either
+	 * by growing it or by streaming its content. The body is streamed as soon as
+	 * it would exceed the buffered size, even if the pooled buffer is larger.
+	 */
+	private void makeRoom(int n) throws IOException {
+		if (pos + n <= limit) {
+			return;
+		}
+
+		if (!streaming && pos + n <= maxBufferedSize) {
+			byte[] newBuffer = pool.getBytes(Math.min((long) buffer.length * 2, maxBufferedSize));
+			System.arraycopy(buffer, 0, newBuffer, 0, pos);
+			pool.release(buffer);
+			buffer = newBuffer;
+			limit = Math.min(buffer.length, maxBufferedSize);
+			if (pos + n <= limit) {
+				return;
+			}
+		}
+
+		if (!streaming) {
+			streaming = true;
+			limit = buffer.length;
+			out = response.getOutputStream();
+			if (coding != null) {
+				response.setHeader("Content-Encoding", coding);
+				compressingOut = new CompressingOutputStream(out, coding, COMPRESSION_LEVEL);
+			}
+			if (pos + n <= limit) {
+				return;
+			}
+		}
+		write(buffer, pos);
+		pos = 0;
+	}
+
+	private void write(byte[] b, int len) throws IOException {
+		if (compressingOut != null) {
+			compressingOut.write(b, 0, len);
+		} else {
+			out.write(b, 0, len);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		// the body is sent when the writer is closed
+	}
+
+	/**
+	 * Sends the rest of the body and returns the buffer to the pool.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+
+		try {
+			if (highSurrogate != 0) {
+				highSurrogate = 0;
+				makeRoom(1);
+				buffer[pos++] = '?';
+			}
+
+			if (streaming) {
+				write(buffer, pos);
+				if (compressingOut != null) {
+					compressingOut.finish();
+				}
+			} else if (coding != null && pos >= compressionThreshold) {
+				sendCompressed();
+			} else {
+				response.setContentLength(pos);
+				out = response.getOutputStream();
+				out.write(buffer, 0, pos);
+			}
+			out.flush();
+		} finally {
+			closed = true;
+			pool.release(buffer);
+			buffer = null;
+			if (compressingOut != null) {
+				compressingOut.abort();
+			}
+		}
+	}
+
+	private void sendCompressed() throws IOException {
+		PooledByteArrayOutputStream compressed = new PooledByteArrayOutputStream(pos / 2);
+		try {
+			CompressingOutputStream cout = new CompressingOutputStream(compressed, coding, COMPRESSION_LEVEL);
+			try {
+				cout.write(buffer, 0, pos);
+				cout.finish();
+			} finally {
+				cout.abort();
+			}
+
+			out = response.getOutputStream();
+			if (compressed.size() < pos) {
+				response.setHeader("Content-Encoding", coding);
+				response.setContentLength(compressed.size());
+				compressed.writeTo(out);
+			} else {
+				response.setContentLength(pos);
+				out.write(buffer, 0, pos);
+			}
+		} finally {
+			compressed.release();
+		}
+	}
+
+	/**
+	 * Returns the buffer to the pool without sending the rest of the body, for
+	 * example if the serialization failed. Does nothing if the writer has
+	 * already been closed.
+	 */
+	public void abort() {
+		if (!closed) {
+			closed = true;
+			pool.release(buffer);
+			buffer = null;
+			if (compressingOut != null) {
+				compressingOut.abort();
+			}
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed) {
+			throw new IOException("Writer closed!");
+		}
+	}
+}
@@ -0,0 +1,590 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.internal.json;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * A compact, insertion-ordered map.
+ *
+ * Keys and values are kept in two parallel arrays in insertion order, so there
+ * are no entry objects and iteration follows the arrays. Small maps, which are
+ * the vast majority of JSON objects, are searched linearly. Larger maps add an
+ * open-addressing hash table with linear probing that holds the positions of
+ * the entries. If the keys collide so badly that a probe sequence gets longer
+ * than {@link #MAX_PROBE_LENGTH}, the map switches to a {@link HashMap} index,
+ * which bounds the lookup costs for comparable keys such as strings.
+ *
+ * Removing an entry shifts the following entries and is O(n). This map is not
+ * thread-safe.
+ *
+ * A map can be frozen. A frozen map rejects all modifications with an
+ * {@link UnsupportedOperationException} and caches its hash code.
+ *
+ * @param <K>
+ *            the key type
+ * @param <V>
+ *            the value type
+ */
+public class CompactMap<K, V> extends AbstractMap<K, V> implements Cloneable, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Maps up to this size are searched linearly. */
+	static final int LINEAR_SEARCH_MAX = 8;
+
+	/** Longer probe sequences switch the map to a {@link HashMap} index. */
+	static final int MAX_PROBE_LENGTH = 32;
+
+	private static final int DEFAULT_CAPACITY = 4;
+	private static final Object[] EMPTY = {};
+
+	private Object[] keys;
+	private Object[] values;
+	private int size;
+	private boolean frozen;
+
+	/** positions + 1 of the entries, 0 for free slots, {@code null} for small maps */
+	private transient int[] index;
+	/** positions of the entries if the keys collide too often, or {@code null} */
+	private transient Map<Object, Integer> hashIndex;
+	private transient int modCount;
+	private transient Set<Map.Entry<K, V>> entrySet;
+	private transient int hash;
+
+	/**
+	 * Creates an empty map.
+	 */
+	public CompactMap() {
+		keys = EMPTY;
+		values = EMPTY;
+	}
+
+	/**
+	 * Creates an empty map with the given capacity.
+	 */
+	public CompactMap(int initialCapacity) {
+		if (initialCapacity < 0) {
+			throw new IllegalArgumentException("Illegal capacity: " + initialCapacity);
+		}
+
+		keys = initialCapacity == 0 ? EMPTY : new Object[initialCapacity];
+		values = initialCapacity == 0 ? EMPTY : new Object[initialCapacity];
+	}
+
+	/**
+	 * Creates a map with the entries of another map, in the iteration order of
+	 * that map.
+	 * 
+	 * @throws NullPointerException
+	 *             if the specified map is {@code null}
+	 */
+	public CompactMap(Map<? extends K, ? extends V> m) {
+		this(m.size());
+		for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+			putValue(e.getKey(), e.getValue());
+		}
+	}
+
+	private static int hash(Object key) {
+		if (key == null) {
+			return 0;
+		}
+
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	private static boolean eq(Object o1, Object o2) {
+		return o1 == o2 || (o1 != null && o1.equals(o2));
+	}
+
+	/**
+	 * Returns the position of a key, or -1 if the key is not in the map.
+	 */
+	final int indexOf(Object key) {
+		if (hashIndex != null) {
+			Integer i = hashIndex.get(key);
+			return i == null ? -1 : i.intValue();
+		}
+
+		if (index == null) {
+			for (int i = 0; i < size; i++) {
+				if (eq(key, keys[i])) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		int mask = index.length - 1;
+		int slot = hash(key) & mask;
+		while (true) {
+			int e = index[slot];
+			if (e == 0) {
+				return -1;
+			}
+			if (eq(key, keys[e - 1])) {
+				return e - 1;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * Returns the key at a position.
+	 */
+	@SuppressWarnings("unchecked")
+	final K keyAt(int i) {
+		return (K) keys[i];
+	}
+
+	/**
+	 * Returns the value at a position.
+	 */
+	@SuppressWarnings("unchecked")
+	final V valueAt(int i) {
+		return (V) values[i];
+	}
+
+	/**
+	 * Replaces the value at a position, even if the map is frozen.
+	 */
+	final void setValueAt(int i, V value) {
+		values[i] = value;
+	}
+
+	/**
+	 * Makes this map read-only. The values are not touched.
+	 */
+	final void markFrozen() {
+		frozen = true;
+	}
+
+	/**
+	 * Returns whether this map is frozen.
+	 * 
+	 * @return {@code true} if this map is read-only
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	final void checkMutable() {
+		if (frozen) {
+			throw new UnsupportedOperationException("Object is frozen!");
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return indexOf(key) >= 0;
+	}
+
+	@Override
+	public boolean containsValue(Object value) {
+		for (int i = 0; i < size; i++) {
+			if (eq(value, values[i])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(Object key) {
+		int i = indexOf(key);
+		return i < 0 ? null : (V) values[i];
+	}
+
+	@Override
+	public V put(K key, V value) {
+		return putValue(key, value);
+	}
+
+	/**
+	 * Sets a value without going through {@link #put(Object, Object)}.
+	 */
+	@SuppressWarnings("unchecked")
+	final V putValue(K key, V value) {
+		checkMutable();
+
+		int i = indexOf(key);
+		if (i >= 0) {
+			V old = (V) values[i];
+			values[i] = value;
+			return old;
+		}
+
+		if (size == keys.length) {
+			grow();
+		}
+
+		keys[size] = key;
+		values[size] = value;
+		size++;
+		modCount++;
+
+		if (hashIndex != null) {
+			hashIndex.put(key, Integer.valueOf(size - 1));
+		} else if (index != null) {
+			if (size * 2 > index.length) {
+				rebuildIndex();
+			} else {
+				insertIntoIndex(size - 1);
+			}
+		} else if (size > LINEAR_SEARCH_MAX) {
+			rebuildIndex();
+		}
+
+		return null;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V remove(Object key) {
+		int i = indexOf(key);
+		if (i < 0) {
+			return null;
+		}
+
+		V old = (V) values[i];
+		removeAt(i);
+		return old;
+	}
+
+	final void removeAt(int i) {
+		checkMutable();
+
+		int moved = size - i - 1;
+		if (moved > 0) {
+			System.arraycopy(keys, i + 1, keys, i, moved);
+			System.arraycopy(values, i + 1, values, i, moved);
+		}
+		size--;
+		keys[size] = null;
+		values[size] = null;
+		modCount++;
+
+		if (index != null || hashIndex != null) {
+			if (size > LINEAR_SEARCH_MAX) {
+				rebuildIndex();
+			} else {
+				index = null;
+				hashIndex = null;
+			}
+		}
+	}
+
+	@Override
+	public void clear() {
+		checkMutable();
+
+		if (size > 0) {
+			Arrays.fill(keys, 0, size, null);
+			Arrays.fill(values, 0, size, null);
+			size = 0;
+			modCount++;
+		}
+		index = null;
+		hashIndex = null;
+	}
+
+	@Override
+	public void forEach(BiConsumer<? super K, ? super V> action) {
+		int expectedModCount = modCount;
+		for (int i = 0; i < size; i++) {
+			action.accept(keyAt(i), valueAt(i));
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+		}
+	}
+
+	/**
+	 * Returns the hash code, which is computed only once for a frozen map.
+	 */
+	@Override
+	public int hashCode() {
+		if (!frozen) {
+			return super.hashCode();
+		}
+
+		int h = hash;
+		if (h == 0) {
+			h = super.hashCode();
+			hash = h;
+		}
+		return h;
+	}
+
+	private void grow() {
+		int newCapacity = keys.length == 0 ? DEFAULT_CAPACITY : keys.length + (keys.length >> 1) + 1;
+		keys = Arrays.copyOf(keys, newCapacity);
+		values = Arrays.copyOf(values, newCapacity);
+	}
+
+	private void rebuildIndex() {
+		if (hashIndex != null) {
+			buildHashIndex();
+			return;
+		}
+
+		int capacity = Integer.highestOneBit(Math.max(size, LINEAR_SEARCH_MAX) * 4 - 1);
+		index = new int[capacity];
+		for (int i = 0; i < size && index != null; i++) {
+			insertIntoIndex(i);
+		}
+	}
+
+	/**
+	 * Adds a position to the hash table, or replaces the hash table with a
+	 * {@link HashMap} index if the probe sequence gets too long.
+	 */
+	private void insertIntoIndex(int i) {
+		int mask = index.length - 1;
+		int slot = hash(keys[i]) & mask;
+		int probes = 0;
+		while (index[slot] != 0) {
+			if (++probes > MAX_PROBE_LENGTH) {
+				buildHashIndex();
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		index[slot] = i + 1;
+	}
+
+	private void buildHashIndex() {
+		index = null;
+		hashIndex = new HashMap<Object, Integer>(size * 2);
+		for (int i = 0; i < size; i++) {
+			hashIndex.put(keys[i], Integer.valueOf(i));
+		}
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		Set<Map.Entry<K, V>> es = entrySet;
+		if (es == null) {
+			es = new EntrySet();
+			entrySet = es;
+		}
+		return es;
+	}
+
+	/**
+	 * Returns a shallow copy of this map. The copy is not frozen, but frozen
+	 * values stay frozen.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public Object clone() {
+		CompactMap<K, V> result;
+		try {
+			result = (CompactMap<K, V>) super.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new InternalError(e);
+		}
+
+		result.keys = keys.clone();
+		result.values = values.clone();
+		result.index = index == null ? null : index.clone();
+		result.hashIndex = hashIndex == null ? null : new HashMap<Object, Integer>(hashIndex);
+		result.modCount = 0;
+		result.entrySet = null;
+		result.frozen = false;
+		result.hash = 0;
+
+		return result;
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (size > LINEAR_SEARCH_MAX) {
+			rebuildIndex();
+		}
+	}
+
+	private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+		@Override
+		public Iterator<Map.Entry<K, V>> iterator() {
+			return new EntryIterator();
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if (!(o instanceof Map.Entry)) {
+				return false;
+			}
+
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			int i = indexOf(e.getKey());
+			return i >= 0 && eq(values[i], e.getValue());
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			if (!contains(o)) {
+				return false;
+			}
+
+			removeAt(indexOf(((Map.Entry<?, ?>) o).getKey()));
+			return true;
+		}
+
+		@Override
+		public void clear() {
+			CompactMap.this.clear();
+		}
+	}
+
+	private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+		private int next = 0;
+		private int last = -1;
+		private int expectedModCount = modCount;
+
+		@Override
+		public boolean hasNext() {
+			return next < size;
+		}
+
+		@Override
+		public Map.Entry<K, V> next() {
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (next >= size) {
+				throw new NoSuchElementException();
+			}
+
+			last = next++;
+			return new Entry(last, expectedModCount);
+		}
+
+		@Override
+		public void remove() {
+			if (last < 0) {
+				throw new IllegalStateException();
+			}
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+
+			removeAt(last);
+			next = last;
+			last = -1;
+			expectedModCount = modCount;
+		}
+	}
+
+	/**
+	 * An entry that reads and writes through to the map, as long as the map is
+	 * not structurally modified.
+	 */
+	private final class Entry implements Map.Entry<K, V> {
+		private final int pos;
+		private final K key;
+		private final int entryModCount;
+
+		Entry(int pos, int entryModCount) {
+			this.pos = pos;
+			this.key = keyAt(pos);
+			this.entryModCount = entryModCount;
+		}
+
+		@Override
+		public K getKey() {
+			return key;
+		}
+
+		@Override
+		public V getValue() {
+			if (modCount != entryModCount) {
+				return get(key);
+			}
+			return valueAt(pos);
+		}
+
+		@Override
+		public V setValue(V value) {
+			checkMutable();
+
+			if (modCount != entryModCount) {
+				int i = indexOf(key);
+				if (i < 0) {
+					throw new IllegalStateException("Entry has been removed!");
+				}
+				V old = valueAt(i);
+				values[i] = value;
+				return old;
+			}
+
+			V old = valueAt(pos);
+			values[pos] = value;
+			return old;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry)) {
+				return false;
+			}
+
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			return eq(key, e.getKey()) && eq(getValue(), e.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			V value = getValue();
+			return (key == null ? 0 : key.hashCode()) ^ (value == null ? 0 : value.hashCode());
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + getValue();
+		}
+	}
+}
@@ -18,17 +18,34 @@ package de.fmui.osb.broker.internal.json;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 import de.fmui.osb.broker.json.JSONArray;
 
 /**
  * A JSON array. JSONObject supports java.util.List interface.
+ * 
+ * An array can be frozen. A frozen array rejects all modifications with an
+ * {@link UnsupportedOperationException} and caches its hash code.
+ * 
+ * The array remembers the element class it has been checked against by
+ * {@link #checkElementClass(Class)}. Adding or replacing elements clears it.
  */
 public class JSONArrayImpl<T> extends ArrayList<T> implements JSONArray<T> {
 	private static final long serialVersionUID = 1L;
 
 	private final Class<T> clazz;
+	private boolean frozen;
+	private transient int hash;
+	/** the class all elements have been checked against, or {@code null} */
+	private transient Class<?> checkedClass;
+	/** {@code true} if a sub-list view exists, which can replace elements unnoticed */
+	private transient boolean hasViews;
 
 	public JSONArrayImpl(Class<T> clazz) {
 		super();
@@ -44,37 +61,213 @@ public class JSONArrayImpl<T> extends ArrayList<T> implements JSONArray<T> {
 	}
 
 	/**
-	 * Encode a list into JSON text and write it to out. If this list is also a
-	 * JSONStreamAware or a JSONAware, JSONStreamAware and JSONAware specific
-	 * behaviours will be ignored at this top level.
+	 * Makes this array and all objects and arrays it contains read-only.
 	 * 
-	 * @param list
-	 * @param out
+	 * @see JSONObjectImpl#freeze()
 	 */
-	public static void writeJSONString(List<?> list, Writer out) throws IOException {
-		if (list == null) {
-			out.write("null");
+	@SuppressWarnings("unchecked")
+	public void freeze() {
+		if (frozen) {
 			return;
 		}
 
-		boolean first = true;
-
-		out.write('[');
-		for (Object value : list) {
-			if (first) {
-				first = false;
-			} else {
-				out.write(',');
+		frozen = true;
+		for (int i = 0; i < size(); i++) {
+			T value = get(i);
+			Object frozenValue = JSONObjectImpl.freezeValue(value);
+			if (frozenValue != value) {
+				super.set(i, (T) frozenValue);
+				checkedClass = null;
 			}
+		}
+	}
+
+	/**
+	 * Returns whether this array is frozen.
+	 * 
+	 * @return {@code true} if this array is read-only
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	/**
+	 * Checks that all elements are {@code null} or instances of the given class.
+	 * 
+	 * The result is remembered until elements are added or replaced, so that
+	 * repeated checks against the same class or one of its superclasses cost
+	 * nothing.
+	 * 
+	 * @throws IllegalStateException
+	 *             if an element has a different class
+	 */
+	public void checkElementClass(Class<?> elementClass) {
+		Class<?> checked = checkedClass;
+		if (checked != null && elementClass.isAssignableFrom(checked)) {
+			return;
+		}
 
-			if (value == null) {
-				out.write("null");
-				continue;
+		for (Object element : this) {
+			if (element != null && !elementClass.isInstance(element)) {
+				throw new IllegalStateException("Invalid Element: " + element.getClass().getSimpleName());
 			}
+		}
 
-			JSONValue.writeJSONString(value, out);
+		if (!hasViews) {
+			checkedClass = elementClass;
 		}
-		out.write(']');
+	}
+
+	private void checkMutable() {
+		if (frozen) {
+			throw new UnsupportedOperationException("Array is frozen!");
+		}
+	}
+
+	/**
+	 * Called before elements are added or replaced.
+	 */
+	private void elementsChanging() {
+		checkMutable();
+		checkedClass = null;
+	}
+
+	@Override
+	public boolean add(T e) {
+		elementsChanging();
+		return super.add(e);
+	}
+
+	@Override
+	public void add(int index, T element) {
+		elementsChanging();
+		super.add(index, element);
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends T> c) {
+		elementsChanging();
+		return super.addAll(c);
+	}
+
+	@Override
+	public boolean addAll(int index, Collection<? extends T> c) {
+		elementsChanging();
+		return super.addAll(index, c);
+	}
+
+	@Override
+	public T set(int index, T element) {
+		elementsChanging();
+		return super.set(index, element);
+	}
+
+	@Override
+	public T remove(int index) {
+		checkMutable();
+		return super.remove(index);
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		checkMutable();
+		return super.remove(o);
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		checkMutable();
+		return super.removeAll(c);
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		checkMutable();
+		return super.retainAll(c);
+	}
+
+	@Override
+	public boolean removeIf(Predicate<? super T> filter) {
+		checkMutable();
+		return super.removeIf(filter);
+	}
+
+	@Override
+	public void replaceAll(UnaryOperator<T> operator) {
+		elementsChanging();
+		super.replaceAll(operator);
+	}
+
+	@Override
+	public void sort(Comparator<? super T> c) {
+		checkMutable();
+		super.sort(c);
+	}
+
+	@Override
+	public void clear() {
+		checkMutable();
+		super.clear();
+	}
+
+	@Override
+	protected void removeRange(int fromIndex, int toIndex) {
+		checkMutable();
+		super.removeRange(fromIndex, toIndex);
+	}
+
+	@Override
+	public List<T> subList(int fromIndex, int toIndex) {
+		if (frozen) {
+			return Collections.unmodifiableList(super.subList(fromIndex, toIndex));
+		}
+
+		hasViews = true;
+		checkedClass = null;
+		return super.subList(fromIndex, toIndex);
+	}
+
+	/**
+	 * Returns the hash code, which is computed only once for a frozen array.
+	 */
+	@Override
+	public int hashCode() {
+		if (!frozen) {
+			return super.hashCode();
+		}
+
+		int h = hash;
+		if (h == 0) {
+			h = super.hashCode();
+			hash = h;
+		}
+		return h;
+	}
+
+	/**
+	 * Returns a shallow copy of this array. The copy is not frozen, but frozen
+	 * elements stay frozen.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public Object clone() {
+		JSONArrayImpl<T> result = (JSONArrayImpl<T>) super.clone();
+		result.frozen = false;
+		result.hash = 0;
+		result.hasViews = false;
+		return result;
+	}
+
+	/**
+	 * Encode a list into JSON text and write it to out. If this list is also a
+	 * JSONStreamAware or a JSONAware, JSONStreamAware and JSONAware specific
+	 * behaviours will be ignored at this top level.
+	 * 
+	 * @param list
+	 * @param out
+	 */
+	public static void writeJSONString(List<?> list, Writer out) throws IOException {
+		JSONSerializer.writeList(list, out);
 	}
 
 	public void writeJSONString(Writer out) throws IOException {
@@ -99,28 +292,7 @@ public class JSONArrayImpl<T> extends ArrayList<T> implements JSONArray<T> {
 	}
 
 	public static void addJSONString(List<?> list, StringBuilder sb) {
-		if (list == null) {
-			sb.append("null");
-			return;
-		}
-
-		boolean first = true;
-
-		sb.append('[');
-		for (Object value : list) {
-			if (first) {
-				first = false;
-			} else {
-				sb.append(',');
-			}
-
-			if (value == null) {
-				sb.append("null");
-				continue;
-			}
-			sb.append(JSONValue.toJSONString(value));
-		}
-		sb.append(']');
+		JSONSerializer.writeList(list, sb);
 	}
 
 	public String toJSONString() {
@@ -17,12 +17,12 @@ package de.fmui.osb.broker.internal.json;
 
 import java.io.IOException;
 import java.io.Writer;
-import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import de.fmui.osb.broker.json.JSONObject;
 
-public class JSONObjectImpl extends LinkedHashMap<String, Object> implements JSONObject {
+public class JSONObjectImpl extends CompactMap<String, Object> implements JSONObject {
 
 	private static final long serialVersionUID = 1;
 
@@ -55,42 +55,93 @@ public class JSONObjectImpl extends LinkedHashMap<String, Object> implements JSO
 	}
 
 	/**
-	 * Encode a map into JSON text and write it to out. If this map is also a
-	 * JSONAware or JSONStreamAware, JSONAware or JSONStreamAware specific
-	 * behaviours will be ignored at this top level.
+	 * Returns the value of a key. A lazy {@link RawJSONValue} is parsed and
+	 * replaced by the resulting object on first access.
+	 */
+	@Override
+	public Object get(Object key) {
+		Object value = super.get(key);
+		if (value instanceof RawJSONValue && ((RawJSONValue) value).isLazy()) {
+			value = ((RawJSONValue) value).parseObject();
+			super.put((String) key, value);
+		}
+
+		return value;
+	}
+
+	/**
+	 * Makes this object and all objects and arrays it contains read-only.
 	 * 
-	 * @see JSONValue#writeJSONString(Object, Writer)
+	 * Lazy values are parsed, and maps and lists that are not JSON objects or
+	 * arrays are replaced by frozen copies. Afterwards, every modification of the
+	 * tree throws an {@link UnsupportedOperationException}.
 	 * 
-	 * @param map
-	 * @param out
+	 * A frozen tree never changes. Once it has been published safely, for
+	 * example through a {@code volatile} or {@code final} field or an
+	 * {@code AtomicReference}, it can be read by any number of threads without
+	 * copying and without locking. Frozen objects cache their hash codes, and
+	 * the catalog cache of {@code OpenServiceBroker} recognizes a frozen catalog
+	 * without comparing it.
+	 * 
+	 * Calling this method on a frozen object does nothing.
 	 */
-	public static void writeJSONString(Map<String, Object> map, Writer out) throws IOException {
-		if (map == null) {
-			out.write("null");
+	public void freeze() {
+		if (isFrozen()) {
 			return;
 		}
 
-		boolean first = true;
-
-		out.write('{');
-		for (Map.Entry<String, Object> entry : map.entrySet()) {
-			if (first) {
-				first = false;
-			} else {
-				out.write(',');
+		markFrozen();
+		for (int i = 0; i < size(); i++) {
+			Object value = valueAt(i);
+			Object frozenValue = freezeValue(value);
+			if (frozenValue != value) {
+				setValueAt(i, frozenValue);
 			}
+		}
+	}
 
-			out.write('\"');
-			if (entry.getKey() == null) {
-				out.write("null");
-			} else {
-				out.write(escape(entry.getKey()));
+	/**
+	 * Freezes a JSON value.
+	 * 
+	 * @return the value or its frozen replacement
+	 */
+	@SuppressWarnings("unchecked")
+	static Object freezeValue(Object value) {
+		if (value instanceof JSONObjectImpl) {
+			((JSONObjectImpl) value).freeze();
+		} else if (value instanceof JSONArrayImpl) {
+			((JSONArrayImpl<?>) value).freeze();
+		} else if (value instanceof RawJSONValue) {
+			RawJSONValue raw = (RawJSONValue) value;
+			if (raw.isLazy()) {
+				return freezeValue(raw.parseObject());
 			}
-			out.write('\"');
-			out.write(':');
-			JSONValue.writeJSONString(entry.getValue(), out);
+		} else if (value instanceof Map) {
+			JSONObjectImpl copy = new JSONObjectImpl((Map<String, Object>) value);
+			copy.freeze();
+			return copy;
+		} else if (value instanceof List) {
+			JSONArrayImpl<Object> copy = new JSONArrayImpl<Object>(Object.class);
+			copy.addAll((List<?>) value);
+			copy.freeze();
+			return copy;
 		}
-		out.write('}');
+
+		return value;
+	}
+
+	/**
+	 * Encode a map into JSON text and write it to out. If this map is also a
+	 * JSONAware or JSONStreamAware, JSONAware or JSONStreamAware specific
+	 * behaviours will be ignored at this top level.
+	 * 
+	 * @see JSONValue#writeJSONString(Object, Writer)
+	 * 
+	 * @param map
+	 * @param out
+	 */
+	public static void writeJSONString(Map<String, Object> map, Writer out) throws IOException {
+		JSONSerializer.writeMap(map, out);
 	}
 
 	public void writeJSONString(Writer out) throws IOException {
@@ -117,24 +168,7 @@ public class JSONObjectImpl extends LinkedHashMap<String, Object> implements JSO
 	}
 
 	public static void addJSONString(Map<String, Object> map, StringBuilder sb) {
-		if (map == null) {
-			sb.append("null");
-			return;
-		}
-
-		boolean first = true;
-
-		sb.append('{');
-		for (Map.Entry<String, Object> entry : map.entrySet()) {
-			if (first) {
-				first = false;
-			} else {
-				sb.append(',');
-			}
-
-			addJSONString(entry.getKey(), entry.getValue(), sb);
-		}
-		sb.append('}');
+		JSONSerializer.writeMap(map, sb);
 	}
 
 	public String toJSONString() {
@@ -151,7 +185,7 @@ public class JSONObjectImpl extends LinkedHashMap<String, Object> implements JSO
 
 		sb.append('\"').append(':');
 
-		sb.append(JSONValue.toJSONString(value));
+		JSONSerializer.writeValue(value, sb);
 	}
 
 	@Override
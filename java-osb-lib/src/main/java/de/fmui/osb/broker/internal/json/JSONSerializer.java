@@ -0,0 +1,480 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.internal.json;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import de.fmui.osb.broker.internal.io.BufferPool;
+import de.fmui.osb.broker.json.JSONAware;
+import de.fmui.osb.broker.json.JSONStreamAware;
+
+/**
+ * Single-pass JSON serializer.
+ * 
+ * The whole tree is written into one pooled char buffer, which is flushed into
+ * the target {@link Writer} or {@link StringBuilder} when it is full. No
+ * intermediate strings are created for nested objects, arrays or escaped
+ * strings.
+ */
+public final class JSONSerializer {
+
+	private static final int BUFFER_SIZE = BufferPool.DEFAULT_BUFFER_SIZE;
+
+	/** the longest output of a single char: \\uXXXX */
+	private static final int MAX_CHAR_LENGTH = 6;
+
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	/**
+	 * Escape sequences of the chars U+0000 through U+009F, {@code null} if the
+	 * char doesn't need escaping.
+	 */
+	private static final char[][] ESCAPES = new char[0xA0][];
+
+	/**
+	 * Escape sequences of the chars U+2000 through U+20FF.
+	 * 
+	 * Reference: http://www.unicode.org/versions/Unicode5.1.0/
+	 */
+	private static final char[][] UNICODE_ESCAPES = new char[0x100][];
+
+	static {
+		for (int ch = 0; ch <= 0x1F; ch++) {
+			ESCAPES[ch] = unicodeEscape(ch);
+		}
+		for (int ch = 0x7F; ch <= 0x9F; ch++) {
+			ESCAPES[ch] = unicodeEscape(ch);
+		}
+		ESCAPES['"'] = new char[] { '\\', '"' };
+		ESCAPES['\\'] = new char[] { '\\', '\\' };
+		ESCAPES['\b'] = new char[] { '\\', 'b' };
+		ESCAPES['\f'] = new char[] { '\\', 'f' };
+		ESCAPES['\n'] = new char[] { '\\', 'n' };
+		ESCAPES['\r'] = new char[] { '\\', 'r' };
+		ESCAPES['\t'] = new char[] { '\\', 't' };
+		ESCAPES['/'] = new char[] { '\\', '/' };
+
+		for (int i = 0; i < UNICODE_ESCAPES.length; i++) {
+			UNICODE_ESCAPES[i] = unicodeEscape(0x2000 + i);
+		}
+	}
+
+	/**
+	 * Whether the JSON text of a {@link JSONObjectImpl} or {@link JSONArrayImpl}
+	 * subclass is the plain map or list serialization, so that the serializer
+	 * doesn't have to call its {@code writeJSONString} or {@code toJSONString}
+	 * method.
+	 */
+	private static final ClassValue<Boolean> PLAIN_SERIALIZATION = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			try {
+				Class<?> writeClass = type.getMethod("writeJSONString", Writer.class).getDeclaringClass();
+				Class<?> toClass = type.getMethod("toJSONString").getDeclaringClass();
+				return isBaseClass(writeClass) && isBaseClass(toClass);
+			} catch (NoSuchMethodException e) {
+				return Boolean.FALSE;
+			}
+		}
+
+		private boolean isBaseClass(Class<?> clazz) {
+			return clazz == JSONObjectImpl.class || clazz == JSONArrayImpl.class;
+		}
+	};
+
+	private final Writer writer;
+	private final StringBuilder builder;
+	private char[] buffer;
+	private int pos;
+
+	private JSONSerializer(Writer writer, StringBuilder builder) {
+		this.writer = writer;
+		this.builder = builder;
+		this.buffer = BufferPool.getDefault().getChars(BUFFER_SIZE);
+		this.pos = 0;
+	}
+
+	/**
+	 * Writes a value as JSON text.
+	 * 
+	 * @see JSONValue#writeJSONString(Object, Writer)
+	 */
+	public static void writeValue(Object value, Writer out) throws IOException {
+		JSONSerializer serializer = new JSONSerializer(out, null);
+		try {
+			serializer.value(value);
+			serializer.flush();
+		} finally {
+			serializer.release();
+		}
+	}
+
+	/**
+	 * Appends a value as JSON text.
+	 * 
+	 * @see JSONValue#toJSONString(Object)
+	 */
+	public static void writeValue(Object value, StringBuilder sb) {
+		JSONSerializer serializer = new JSONSerializer(null, sb);
+		try {
+			serializer.value(value);
+			serializer.flush();
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot serialize JSON: " + e.toString(), e);
+		} finally {
+			serializer.release();
+		}
+	}
+
+	/**
+	 * Writes a map as JSON object, ignoring {@link JSONAware} and
+	 * {@link JSONStreamAware} at the top level.
+	 */
+	public static void writeMap(Map<String, ?> map, Writer out) throws IOException {
+		JSONSerializer serializer = new JSONSerializer(out, null);
+		try {
+			serializer.map(map);
+			serializer.flush();
+		} finally {
+			serializer.release();
+		}
+	}
+
+	/**
+	 * Appends a map as JSON object, ignoring {@link JSONAware} and
+	 * {@link JSONStreamAware} at the top level.
+	 */
+	public static void writeMap(Map<String, ?> map, StringBuilder sb) {
+		JSONSerializer serializer = new JSONSerializer(null, sb);
+		try {
+			serializer.map(map);
+			serializer.flush();
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot serialize JSON: " + e.toString(), e);
+		} finally {
+			serializer.release();
+		}
+	}
+
+	/**
+	 * Writes a list as JSON array, ignoring {@link JSONAware} and
+	 * {@link JSONStreamAware} at the top level.
+	 */
+	public static void writeList(List<?> list, Writer out) throws IOException {
+		JSONSerializer serializer = new JSONSerializer(out, null);
+		try {
+			serializer.list(list);
+			serializer.flush();
+		} finally {
+			serializer.release();
+		}
+	}
+
+	/**
+	 * Appends a list as JSON array, ignoring {@link JSONAware} and
+	 * {@link JSONStreamAware} at the top level.
+	 */
+	public static void writeList(List<?> list, StringBuilder sb) {
+		JSONSerializer serializer = new JSONSerializer(null, sb);
+		try {
+			serializer.list(list);
+			serializer.flush();
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot serialize JSON: " + e.toString(), e);
+		} finally {
+			serializer.release();
+		}
+	}
+
+	/**
+	 * Appends the escaped string, without quotes.
+	 * 
+	 * @see JSONValue#escape(String)
+	 */
+	public static void escape(String s, StringBuilder sb) {
+		final int n = s.length();
+		int start = 0;
+		for (int i = 0; i < n; i++) {
+			char[] esc = escapeSequence(s.charAt(i));
+			if (esc != null) {
+				sb.append(s, start, i);
+				sb.append(esc);
+				start = i + 1;
+			}
+		}
+
+		if (start == 0) {
+			sb.append(s);
+		} else {
+			sb.append(s, start, n);
+		}
+	}
+
+	/**
+	 * Returns the escape sequence of a char or {@code null} if the char doesn't
+	 * need escaping.
+	 */
+	private static char[] escapeSequence(char ch) {
+		if (ch < ESCAPES.length) {
+			return ESCAPES[ch];
+		}
+		if ((ch >> 8) == 0x20) {
+			return UNICODE_ESCAPES[ch & 0xFF];
+		}
+		return null;
+	}
+
+	private static char[] unicodeEscape(int ch) {
+		return new char[] { '\\', 'u', HEX[(ch >> 12) & 0xF], HEX[(ch >> 8) & 0xF], HEX[(ch >> 4) & 0xF],
+				HEX[ch & 0xF] };
+	}
+
+	@SuppressWarnings("unchecked")
+	private void value(Object value) throws IOException {
+		if (value == null) {
+			write("null");
+			return;
+		}
+
+		if (value instanceof String) {
+			string((String) value);
+			return;
+		}
+
+		if (value instanceof Double) {
+			if (((Double) value).isInfinite() || ((Double) value).isNaN()) {
+				write("null");
+			} else {
+				write(value.toString());
+			}
+			return;
+		}
+
+		if (value instanceof Float) {
+			if (((Float) value).isInfinite() || ((Float) value).isNaN()) {
+				write("null");
+			} else {
+				write(value.toString());
+			}
+			return;
+		}
+
+		if (value instanceof BigDecimal) {
+			write(((BigDecimal) value).toPlainString());
+			return;
+		}
+
+		if (value instanceof Number) {
+			write(value.toString());
+			return;
+		}
+
+		if (value instanceof Boolean) {
+			write(((Boolean) value).booleanValue() ? "true" : "false");
+			return;
+		}
+
+		if (value instanceof JSONObjectImpl && PLAIN_SERIALIZATION.get(value.getClass())) {
+			map((Map<String, Object>) value);
+			return;
+		}
+
+		if (value instanceof JSONArrayImpl && PLAIN_SERIALIZATION.get(value.getClass())) {
+			list((List<Object>) value);
+			return;
+		}
+
+		if (value instanceof JSONStreamAware) {
+			if (writer != null) {
+				flush();
+				((JSONStreamAware) value).writeJSONString(writer);
+			} else if (value instanceof JSONAware) {
+				write(((JSONAware) value).toJSONString());
+			} else {
+				StringWriter sw = new StringWriter();
+				((JSONStreamAware) value).writeJSONString(sw);
+				write(sw.toString());
+			}
+			return;
+		}
+
+		if (value instanceof JSONAware) {
+			write(((JSONAware) value).toJSONString());
+			return;
+		}
+
+		if (value instanceof Map) {
+			map((Map<String, Object>) value);
+			return;
+		}
+
+		if (value instanceof List) {
+			list((List<Object>) value);
+			return;
+		}
+
+		write(value.toString());
+	}
+
+	private void map(Map<String, ?> map) throws IOException {
+		if (map == null) {
+			write("null");
+			return;
+		}
+
+		write('{');
+		if (map instanceof CompactMap) {
+			// walk the arrays, no entry objects
+			CompactMap<String, ?> compactMap = (CompactMap<String, ?>) map;
+			int size = compactMap.size();
+			for (int i = 0; i < size; i++) {
+				if (i > 0) {
+					write(',');
+				}
+				key(compactMap.keyAt(i));
+				value(compactMap.valueAt(i));
+			}
+		} else {
+			boolean first = true;
+			for (Map.Entry<String, ?> entry : map.entrySet()) {
+				if (first) {
+					first = false;
+				} else {
+					write(',');
+				}
+				key(entry.getKey());
+				value(entry.getValue());
+			}
+		}
+		write('}');
+	}
+
+	private void key(String key) throws IOException {
+		if (key == null) {
+			write("\"null\"");
+		} else {
+			string(key);
+		}
+		write(':');
+	}
+
+	private void list(List<?> list) throws IOException {
+		if (list == null) {
+			write("null");
+			return;
+		}
+
+		boolean first = true;
+
+		write('[');
+		for (Object value : list) {
+			if (first) {
+				first = false;
+			} else {
+				write(',');
+			}
+
+			value(value);
+		}
+		write(']');
+	}
+
+	private void string(String s) throws IOException {
+		write('\"');
+		escape(s);
+		write('\"');
+	}
+
+	/**
+	 * Escape quotes, \, /, \r, \n, \b, \f, \t and other control characters (U+0000
+	 * through U+001F).
+	 * 
+	 * Runs of chars that don't need escaping are copied in one piece.
+	 */
+	private void escape(String s) throws IOException {
+		final int n = s.length();
+		int start = 0;
+		for (int i = 0; i < n; i++) {
+			char[] esc = escapeSequence(s.charAt(i));
+			if (esc != null) {
+				if (i > start) {
+					write(s, start, i);
+				}
+				if (buffer.length - pos < MAX_CHAR_LENGTH) {
+					flushBuffer();
+				}
+				System.arraycopy(esc, 0, buffer, pos, esc.length);
+				pos += esc.length;
+				start = i + 1;
+			}
+		}
+
+		if (start == 0) {
+			write(s);
+		} else if (start < n) {
+			write(s, start, n);
+		}
+	}
+
+	private void write(char c) throws IOException {
+		if (pos == buffer.length) {
+			flushBuffer();
+		}
+		buffer[pos++] = c;
+	}
+
+	private void write(String s) throws IOException {
+		write(s, 0, s.length());
+	}
+
+	private void write(String s, int offset, int end) throws IOException {
+		while (offset < end) {
+			if (pos == buffer.length) {
+				flushBuffer();
+			}
+
+			int chunk = Math.min(end - offset, buffer.length - pos);
+			s.getChars(offset, offset + chunk, buffer, pos);
+			pos += chunk;
+			offset += chunk;
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		if (pos > 0) {
+			if (writer != null) {
+				writer.write(buffer, 0, pos);
+			} else {
+				builder.append(buffer, 0, pos);
+			}
+			pos = 0;
+		}
+	}
+
+	private void flush() throws IOException {
+		flushBuffer();
+	}
+
+	private void release() {
+		BufferPool.getDefault().release(buffer);
+		buffer = null;
+	}
+}
@@ -17,17 +17,12 @@ package de.fmui.osb.broker.internal.json;
 
 import java.io.IOException;
 import java.io.Reader;
-import java.io.StringReader;
 import java.io.Writer;
-import java.math.BigDecimal;
-import java.util.List;
-import java.util.Map;
 
 import de.fmui.osb.broker.internal.json.parser.JSONParseException;
 import de.fmui.osb.broker.internal.json.parser.JSONParser;
-import de.fmui.osb.broker.json.JSONAware;
+import de.fmui.osb.broker.internal.json.parser.JSONParserPool;
 import de.fmui.osb.broker.json.JSONObject;
-import de.fmui.osb.broker.json.JSONStreamAware;
 
 public final class JSONValue {
 
@@ -45,30 +40,34 @@ public final class JSONValue {
 	 */
 	public static <T> T parse(Reader in, T root) {
 		try {
-			JSONParser parser = new JSONParser();
-			return parser.parse(in, root);
+			return parseWithException(in, root);
 		} catch (Exception e) {
 			return null;
 		}
 	}
 
 	public static <T> T parse(String s, T root) {
-		StringReader in = new StringReader(s);
-		return parse(in, root);
+		try {
+			return parseWithException(s, root);
+		} catch (Exception e) {
+			return null;
+		}
 	}
 
 	public static JSONObject parseObject(Reader in) {
 		try {
-			JSONParser parser = new JSONParser();
-			return parser.parse(in, new JSONObjectImpl());
+			return parseWithException(in, new JSONObjectImpl());
 		} catch (Exception e) {
 			return null;
 		}
 	}
 
 	public static JSONObject parseObject(String s) {
-		StringReader in = new StringReader(s);
-		return parseObject(in);
+		try {
+			return parseWithException(s, new JSONObjectImpl());
+		} catch (Exception e) {
+			return null;
+		}
 	}
 
 	/**
@@ -79,13 +78,21 @@ public final class JSONValue {
 	 *         java.lang.Number, java.lang.Boolean, null
 	 */
 	public static <T> T parseWithException(Reader in, T root) throws IOException, JSONParseException {
-		JSONParser parser = new JSONParser();
-		return parser.parse(in, root);
+		JSONParser parser = JSONParserPool.getDefault().acquire();
+		try {
+			return parser.parse(in, root);
+		} finally {
+			JSONParserPool.getDefault().release(parser);
+		}
 	}
 
 	public static <T> T parseWithException(String s, T root) throws JSONParseException {
-		JSONParser parser = new JSONParser();
-		return parser.parse(s, root);
+		JSONParser parser = JSONParserPool.getDefault().acquire();
+		try {
+			return parser.parse(s, root);
+		} finally {
+			JSONParserPool.getDefault().release(parser);
+		}
 	}
 
 	/**
@@ -102,74 +109,8 @@ public final class JSONValue {
 	 * @param value
 	 * @param out
 	 */
-	@SuppressWarnings("unchecked")
 	public static void writeJSONString(Object value, Writer out) throws IOException {
-		if (value == null) {
-			out.write("null");
-			return;
-		}
-
-		if (value instanceof String) {
-			out.write('\"');
-			out.write(escape((String) value));
-			out.write('\"');
-			return;
-		}
-
-		if (value instanceof Double) {
-			if (((Double) value).isInfinite() || ((Double) value).isNaN()) {
-				out.write("null");
-			} else {
-				out.write(value.toString());
-			}
-			return;
-		}
-
-		if (value instanceof Float) {
-			if (((Float) value).isInfinite() || ((Float) value).isNaN()) {
-				out.write("null");
-			} else {
-				out.write(value.toString());
-			}
-			return;
-		}
-
-		if (value instanceof BigDecimal) {
-			out.write(((BigDecimal) value).toPlainString());
-			return;
-		}
-
-		if (value instanceof Number) {
-			out.write(value.toString());
-			return;
-		}
-
-		if (value instanceof Boolean) {
-			out.write(value.toString());
-			return;
-		}
-
-		if (value instanceof JSONStreamAware) {
-			((JSONStreamAware) value).writeJSONString(out);
-			return;
-		}
-
-		if (value instanceof JSONAware) {
-			out.write(((JSONAware) value).toJSONString());
-			return;
-		}
-
-		if (value instanceof Map) {
-			JSONObjectImpl.writeJSONString((Map<String, Object>) value, out);
-			return;
-		}
-
-		if (value instanceof List) {
-			JSONArrayImpl.writeJSONString((List<Object>) value, out);
-			return;
-		}
-
-		out.write(value.toString());
+		JSONSerializer.writeValue(value, out);
 	}
 
 	/**
@@ -197,69 +138,8 @@ public final class JSONValue {
 	 * 
 	 * @see #toJSONString(Object)
 	 */
-	@SuppressWarnings("unchecked")
 	public static void addJSONString(Object value, StringBuilder sb) {
-		if (value == null) {
-			sb.append("null");
-			return;
-		}
-
-		if (value instanceof String) {
-			sb.append('\"');
-			escape((String) value, sb);
-			sb.append('\"');
-			return;
-		}
-
-		if (value instanceof Double) {
-			if (((Double) value).isInfinite() || ((Double) value).isNaN()) {
-				sb.append("null");
-			} else {
-				sb.append(value.toString());
-			}
-			return;
-		}
-
-		if (value instanceof Float) {
-			if (((Float) value).isInfinite() || ((Float) value).isNaN()) {
-				sb.append("null");
-			} else {
-				sb.append(value.toString());
-			}
-			return;
-		}
-
-		if (value instanceof BigDecimal) {
-			sb.append(((BigDecimal) value).toPlainString());
-			return;
-		}
-
-		if (value instanceof Number) {
-			sb.append(value.toString());
-			return;
-		}
-
-		if (value instanceof Boolean) {
-			sb.append(value.toString());
-			return;
-		}
-
-		if (value instanceof JSONAware) {
-			sb.append(((JSONAware) value).toJSONString());
-			return;
-		}
-
-		if (value instanceof Map) {
-			JSONObjectImpl.addJSONString((Map<String, Object>) value, sb);
-			return;
-		}
-
-		if (value instanceof List) {
-			JSONArrayImpl.addJSONString((List<Object>) value, sb);
-			return;
-		}
-
-		sb.append(value.toString());
+		JSONSerializer.writeValue(value, sb);
 	}
 
 	/**
@@ -285,48 +165,6 @@ public final class JSONValue {
 	 * @param sb
 	 */
 	static void escape(String s, StringBuilder sb) {
-		final int n = s.length();
-		for (int i = 0; i < n; i++) {
-			char ch = s.charAt(i);
-			switch (ch) {
-			case '"':
-				sb.append("\\\"");
-				break;
-			case '\\':
-				sb.append("\\\\");
-				break;
-			case '\b':
-				sb.append("\\b");
-				break;
-			case '\f':
-				sb.append("\\f");
-				break;
-			case '\n':
-				sb.append("\\n");
-				break;
-			case '\r':
-				sb.append("\\r");
-				break;
-			case '\t':
-				sb.append("\\t");
-				break;
-			case '/':
-				sb.append("\\/");
-				break;
-			default:
-				// Reference: http://www.unicode.org/versions/Unicode5.1.0/
-				if ((ch >= '\u0000' && ch <= '\u001F') || (ch >= '\u007F' && ch <= '\u009F')
-						|| (ch >= '\u2000' && ch <= '\u20FF')) {
-					String ss = Integer.toHexString(ch);
-					sb.append("\\u");
-					for (int k = 0; k < 4 - ss.length(); k++) {
-						sb.append('0');
-					}
-					sb.append(ss.toUpperCase());
-				} else {
-					sb.append(ch);
-				}
-			}
-		} // for
+		JSONSerializer.escape(s, sb);
 	}
 }
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.internal.json;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import de.fmui.osb.broker.exceptions.BadRequestException;
+import de.fmui.osb.broker.internal.json.parser.JSONParseException;
+import de.fmui.osb.broker.internal.json.parser.JSONParser;
+import de.fmui.osb.broker.internal.json.parser.JSONParserPool;
+import de.fmui.osb.broker.internal.json.parser.JSONPullParser;
+import de.fmui.osb.broker.json.JSONAware;
+import de.fmui.osb.broker.json.JSONObject;
+import de.fmui.osb.broker.json.JSONReader;
+import de.fmui.osb.broker.json.JSONReader.Event;
+import de.fmui.osb.broker.json.JSONStreamAware;
+
+/**
+ * A JSON value that has been validated but not parsed. It refers to a slice of
+ * the UTF-8 encoded JSON text it was found in.
+ * 
+ * A lazy value is a JSON object that is parsed when it is accessed for the
+ * first time through {@link JSONObjectImpl#get(Object)}.
+ */
+public class RawJSONValue implements JSONAware, JSONStreamAware {
+
+	private final byte[] buffer;
+	private final int offset;
+	private final int length;
+	private final Class<?> objectClass;
+
+	/**
+	 * Creates a raw value.
+	 */
+	public RawJSONValue(byte[] buffer, int offset, int length) {
+		this(buffer, offset, length, null);
+	}
+
+	/**
+	 * Creates a raw value.
+	 * 
+	 * @param objectClass
+	 *            the class of the object the value is parsed into, or
+	 *            {@code null} if the value is not lazy
+	 */
+	public RawJSONValue(byte[] buffer, int offset, int length, Class<?> objectClass) {
+		this.buffer = buffer;
+		this.offset = offset;
+		this.length = length;
+		this.objectClass = objectClass;
+	}
+
+	public byte[] getBuffer() {
+		return buffer;
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Returns the number of bytes of the JSON text.
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Returns the class of the object the value is parsed into.
+	 * 
+	 * @return the class or {@code null} if the value is not lazy
+	 */
+	public Class<?> getObjectClass() {
+		return objectClass;
+	}
+
+	/**
+	 * Returns whether this value is parsed on first access.
+	 */
+	public boolean isLazy() {
+		return objectClass != null;
+	}
+
+	/**
+	 * Parses a lazy value.
+	 * 
+	 * The value has been validated when it was found, including all parser
+	 * limits, so parsing it again doesn't fail.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the value is not lazy
+	 */
+	public JSONObject parseObject() {
+		if (objectClass == null) {
+			throw new IllegalStateException("Value is not lazy!");
+		}
+
+		JSONParser parser = JSONParserPool.getDefault().acquire();
+		try {
+			return parser.parse(this);
+		} catch (JSONParseException e) {
+			throw new IllegalStateException("Invalid JSON!", e);
+		} finally {
+			JSONParserPool.getDefault().release(parser);
+		}
+	}
+
+	/**
+	 * Creates a new pull parser that reads this value.
+	 */
+	public JSONReader createReader() {
+		return new JSONPullParser(buffer, offset, length);
+	}
+
+	/**
+	 * Returns the JSON text as it was found in the input.
+	 */
+	public String getText() {
+		return new String(buffer, offset, length, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public String toJSONString() {
+		StringWriter sw = new StringWriter(length);
+		try {
+			writeJSONString(sw);
+		} catch (IOException e) {
+			// a StringWriter doesn't throw IOExceptions
+			throw new IllegalStateException(e);
+		}
+		return sw.toString();
+	}
+
+	/**
+	 * Writes the value in the same form as the parsed value would be written.
+	 */
+	@Override
+	public void writeJSONString(Writer out) throws IOException {
+		if (objectClass != null) {
+			JSONValue.writeJSONString(parseObject(), out);
+			return;
+		}
+
+		JSONReader reader = createReader();
+		boolean comma = false;
+		try {
+			while (reader.hasNext()) {
+				Event event = reader.next();
+				if (comma && event != Event.END_OBJECT && event != Event.END_ARRAY) {
+					out.write(',');
+				}
+
+				switch (event) {
+				case START_OBJECT:
+					out.write('{');
+					comma = false;
+					break;
+				case START_ARRAY:
+					out.write('[');
+					comma = false;
+					break;
+				case END_OBJECT:
+					out.write('}');
+					comma = true;
+					break;
+				case END_ARRAY:
+					out.write(']');
+					comma = true;
+					break;
+				case KEY:
+					JSONValue.writeJSONString(reader.getString(), out);
+					out.write(':');
+					comma = false;
+					break;
+				case VALUE_STRING:
+					JSONValue.writeJSONString(reader.getString(), out);
+					comma = true;
+					break;
+				case VALUE_NUMBER:
+					JSONValue.writeJSONString(reader.getNumber(), out);
+					comma = true;
+					break;
+				case VALUE_TRUE:
+					out.write("true");
+					comma = true;
+					break;
+				case VALUE_FALSE:
+					out.write("false");
+					comma = true;
+					break;
+				case VALUE_NULL:
+					out.write("null");
+					comma = true;
+					break;
+				}
+			}
+		} catch (BadRequestException e) {
+			// the value has been validated when it was found
+			throw new IllegalStateException("Invalid JSON!", e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return toJSONString();
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.internal.json.parser;
+
+import java.io.IOException;
+
+/**
+ * A JSON tokenizer.
+ */
+interface JSONLexer {
+
+	/**
+	 * Returns the next token.
+	 * 
+	 * @return the next token or {@code null} at the end of the input
+	 */
+	Yytoken yylex() throws IOException, JSONParseException;
+
+	/**
+	 * Returns the position of the beginning of the current token.
+	 */
+	int getPosition();
+
+	/**
+	 * Releases the input and all memory that has been acquired while scanning a
+	 * large input.
+	 */
+	void yyclear();
+}
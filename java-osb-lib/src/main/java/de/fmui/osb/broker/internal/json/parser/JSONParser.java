@@ -17,18 +17,17 @@ package de.fmui.osb.broker.internal.json.parser;
 
 import java.io.IOException;
 import java.io.Reader;
-import java.io.StringReader;
 import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.Map;
+import java.util.Set;
 
 import de.fmui.osb.broker.internal.Constraints;
 import de.fmui.osb.broker.internal.json.JSONArrayImpl;
 import de.fmui.osb.broker.internal.json.JSONObjectImpl;
+import de.fmui.osb.broker.internal.json.RawJSONValue;
 import de.fmui.osb.broker.json.JSONArray;
 import de.fmui.osb.broker.json.JSONObject;
-import de.fmui.osb.broker.objects.KeyMapping;
-import de.fmui.osb.broker.objects.KeyMappings;
 
 /**
  * Parser for JSON text. Please note that JSONParser is NOT thread-safe.
@@ -44,9 +43,17 @@ public class JSONParser {
 	public static final int S_END = 6;
 	public static final int S_IN_ERROR = -1;
 
-	private Yylex lexer = new Yylex((Reader) null);
+	private Yylex lexer = new Yylex();
+	private UTF8Lexer utf8Lexer;
+	private JSONPullParser utf8Skipper;
+	private Set<String> rawKeys;
+	private Set<String> lazyKeys;
+	private boolean hasRawValues;
+	private JSONLexer currentLexer = lexer;
 	private Yytoken token = null;
 	private int status = S_INIT;
+	private final Deque<Integer> statusStack = new ArrayDeque<Integer>();
+	private final Deque<Object> valueStack = new ArrayDeque<Object>();
 
 	private int peekStatus(Deque<Integer> statusStack) {
 		if (statusStack.isEmpty()) {
@@ -64,6 +71,11 @@ public class JSONParser {
 	public void reset() {
 		token = null;
 		status = S_INIT;
+		statusStack.clear();
+		valueStack.clear();
+		rawKeys = null;
+		lazyKeys = null;
+		hasRawValues = false;
 	}
 
 	/**
@@ -74,6 +86,22 @@ public class JSONParser {
 	 */
 	public void reset(Reader in) {
 		lexer.yyreset(in);
+		currentLexer = lexer;
+		reset();
+	}
+
+	/**
+	 * Resets the parser and releases the input and all references to parsed
+	 * objects, so that the parser can be reused.
+	 * 
+	 * @see JSONParserPool
+	 */
+	public void clear() {
+		lexer.yyclear();
+		if (utf8Lexer != null) {
+			utf8Lexer.yyclear();
+		}
+		currentLexer = lexer;
 		reset();
 	}
 
@@ -81,13 +109,42 @@ public class JSONParser {
 	 * @return The position of the beginning of the current token.
 	 */
 	public int getPosition() {
-		return lexer.getPosition();
+		return currentLexer.getPosition();
 	}
 
 	public <T> T parse(String s, T root) throws JSONParseException {
-		StringReader in = new StringReader(s);
+		char[] chars = s.toCharArray();
+		return parse(chars, chars.length, root);
+	}
+
+	/**
+	 * Parse JSON text into java object from the input source.
+	 * 
+	 * @param in
+	 * @return Instance of the following: JSONObject, JSONArray, java.lang.String,
+	 *         java.lang.Number, java.lang.Boolean, null
+	 */
+	public <T> T parse(Reader in, T root) throws IOException, JSONParseException {
+		reset(in);
+		return parse(root);
+	}
+
+	/**
+	 * Parse JSON text into java object from a char buffer.
+	 * 
+	 * The buffer is used in place and may be modified by the parser.
+	 * 
+	 * @param buffer
+	 *            the buffer that contains the complete JSON text
+	 * @param length
+	 *            the number of chars in the buffer
+	 */
+	private <T> T parse(char[] buffer, int length, T root) throws JSONParseException {
+		lexer.yyreset(buffer, length);
+		currentLexer = lexer;
+		reset();
 		try {
-			return parse(in, root);
+			return parse(root);
 		} catch (IOException ie) {
 			/*
 			 * Actually it will never happen.
@@ -97,17 +154,114 @@ public class JSONParser {
 	}
 
 	/**
-	 * Parse JSON text into java object from the input source.
+	 * Parse UTF-8 encoded JSON text into java object from a byte buffer.
 	 * 
-	 * @param in
-	 * @return Instance of the following: JSONObject, JSONArray, java.lang.String,
-	 *         java.lang.Number, java.lang.Boolean, null
+	 * The bytes are tokenized directly, without decoding them into chars first.
+	 * Error positions are byte offsets.
+	 * 
+	 * @param buffer
+	 *            the buffer that contains the complete JSON text
+	 * @param length
+	 *            the number of bytes in the buffer
+	 */
+	public <T> T parse(byte[] buffer, int length, T root) throws JSONParseException {
+		return parse(buffer, length, root, null);
+	}
+
+	/**
+	 * Parse UTF-8 encoded JSON text into java object from a byte buffer, but
+	 * don't parse the values of the given keys of the root object.
+	 * 
+	 * The values of these keys are validated and stored as {@link RawJSONValue}
+	 * objects, which refer to the buffer. The buffer must not be reused as long
+	 * as these objects are in use.
+	 * 
+	 * @param buffer
+	 *            the buffer that contains the complete JSON text
+	 * @param length
+	 *            the number of bytes in the buffer
+	 * @param rawKeys
+	 *            the keys of the root object whose values should not be parsed,
+	 *            may be {@code null}
+	 */
+	public <T> T parse(byte[] buffer, int length, T root, Set<String> rawKeys) throws JSONParseException {
+		return parse(buffer, length, root, rawKeys, null);
+	}
+
+	/**
+	 * Parse UTF-8 encoded JSON text into java object from a byte buffer, but
+	 * don't parse the values of the given keys of the root object.
+	 * 
+	 * Values of raw keys are stored as {@link RawJSONValue} objects. Object values
+	 * of lazy keys are stored as lazy {@link RawJSONValue} objects, which are
+	 * parsed on first access. Both refer to the buffer. The buffer must not be
+	 * reused as long as these objects are in use, see {@link #hasRawValues()}.
+	 * 
+	 * @param buffer
+	 *            the buffer that contains the complete JSON text
+	 * @param length
+	 *            the number of bytes in the buffer
+	 * @param rawKeys
+	 *            the keys of the root object whose values should not be parsed,
+	 *            may be {@code null}
+	 * @param lazyKeys
+	 *            the keys of the root object whose object values should be parsed
+	 *            on first access, may be {@code null}
+	 */
+	public <T> T parse(byte[] buffer, int length, T root, Set<String> rawKeys, Set<String> lazyKeys)
+			throws JSONParseException {
+		if (utf8Lexer == null) {
+			utf8Lexer = new UTF8Lexer();
+		}
+		utf8Lexer.reset(buffer, length);
+		currentLexer = utf8Lexer;
+		reset();
+		this.rawKeys = rawKeys;
+		this.lazyKeys = lazyKeys;
+		try {
+			return parse(root);
+		} catch (IOException ie) {
+			/*
+			 * Actually it will never happen.
+			 */
+			throw new JSONParseException(-1, JSONParseException.ErrorType.ERROR_UNEXPECTED_EXCEPTION, ie);
+		}
+	}
+
+	/**
+	 * Parses a lazy value into a new object of its class.
+	 * 
+	 * @see RawJSONValue#parseObject()
+	 */
+	public JSONObject parse(RawJSONValue value) throws JSONParseException {
+		JSONObject root = KeyMappingTable.newObject(value.getObjectClass());
+
+		if (utf8Lexer == null) {
+			utf8Lexer = new UTF8Lexer();
+		}
+		utf8Lexer.reset(value.getBuffer(), value.getOffset(), value.getLength());
+		currentLexer = utf8Lexer;
+		reset();
+		try {
+			return parse(root);
+		} catch (IOException ie) {
+			/*
+			 * Actually it will never happen.
+			 */
+			throw new JSONParseException(-1, JSONParseException.ErrorType.ERROR_UNEXPECTED_EXCEPTION, ie);
+		}
+	}
+
+	/**
+	 * Returns whether the last parsed object contains {@link RawJSONValue} objects
+	 * that refer to the input buffer.
 	 */
+	public boolean hasRawValues() {
+		return hasRawValues;
+	}
+
 	@SuppressWarnings("unchecked")
-	public <T> T parse(Reader in, T root) throws IOException, JSONParseException {
-		reset(in);
-		Deque<Integer> statusStack = new ArrayDeque<Integer>();
-		Deque<Object> valueStack = new ArrayDeque<Object>();
+	private <T> T parse(T root) throws IOException, JSONParseException {
 
 		try {
 			do {
@@ -177,6 +331,18 @@ public class JSONParser {
 					break;
 
 				case S_PASSED_PAIR_KEY:
+					if (isRawValue()) {
+						statusStack.removeFirst();
+						String key = (String) valueStack.removeFirst();
+						Map<String, Object> parent = (Map<String, Object>) valueStack.getFirst();
+						if (parent.size() + 1 > Constraints.MAX_OBJECT_SIZE) {
+							throw new JSONParseException(JSONParseException.ErrorType.ERROR_JSON_TOO_BIG);
+						}
+						parent.put(key, readRawValue(parent.getClass(), key));
+						status = peekStatus(statusStack);
+						break;
+					}
+
 					switch (token.type) {
 					case Yytoken.TYPE_COLON:
 						break;
@@ -297,22 +463,67 @@ public class JSONParser {
 	}
 
 	private void nextToken() throws JSONParseException, IOException {
-		token = lexer.yylex();
+		token = currentLexer.yylex();
 		if (token == null) {
 			token = new Yytoken(Yytoken.TYPE_EOF, null);
 		}
 	}
 
+	/**
+	 * Checks if the current token starts the value of a raw key of the root
+	 * object.
+	 */
+	private boolean isRawValue() {
+		if ((rawKeys == null && lazyKeys == null) || valueStack.size() != 2 || currentLexer != utf8Lexer) {
+			return false;
+		}
+
+		if (rawKeys != null && (token.type == Yytoken.TYPE_VALUE || token.type == Yytoken.TYPE_LEFT_BRACE
+				|| token.type == Yytoken.TYPE_LEFT_SQUARE) && rawKeys.contains(valueStack.getFirst())) {
+			return true;
+		}
+
+		// only objects are parsed lazily
+		return lazyKeys != null && token.type == Yytoken.TYPE_LEFT_BRACE && lazyKeys.contains(valueStack.getFirst());
+	}
+
+	/**
+	 * Validates the value that starts with the current token without building
+	 * it.
+	 */
+	private RawJSONValue readRawValue(Class<?> parent, String key) throws JSONParseException {
+		boolean lazy = rawKeys == null || !rawKeys.contains(key);
+
+		int start = utf8Lexer.getPosition();
+		if (token.type != Yytoken.TYPE_VALUE) {
+			if (utf8Skipper == null) {
+				// the root object takes one level
+				utf8Skipper = new JSONPullParser(utf8Lexer, Constraints.MAX_DEPTH - 1, false);
+			}
+			// lazy values are checked against all limits, so that parsing them later
+			// cannot fail
+			utf8Skipper.skipValue(token, lazy);
+		}
+
+		hasRawValues = true;
+
+		Class<?> objectClass = null;
+		if (lazy) {
+			objectClass = getMappingClass(parent, key);
+			if (objectClass == null) {
+				objectClass = JSONObjectImpl.class;
+			}
+		}
+
+		return new RawJSONValue(utf8Lexer.getBuffer(), start, utf8Lexer.getEndPosition() - start, objectClass);
+	}
+
 	private JSONObject createObjectContainer(Class<?> parent, String key) {
 		Class<?> clazz = getMappingClass(parent, key);
 		if (clazz == null) {
 			return new JSONObjectImpl();
 		} else {
-			try {
-				return clazz.asSubclass(JSONObject.class).getDeclaredConstructor().newInstance();
-			} catch (Exception e) {
-				throw new RuntimeException("Cannot create object '" + clazz.getSimpleName() + "': " + e.toString(), e);
-			}
+			return KeyMappingTable.newObject(clazz);
 		}
 	}
 
@@ -320,12 +531,7 @@ public class JSONParser {
 		if (!JSONObject.class.isAssignableFrom(array.getArrayClass())) {
 			return new JSONObjectImpl();
 		} else {
-			try {
-				return array.getArrayClass().asSubclass(JSONObject.class).getDeclaredConstructor().newInstance();
-			} catch (Exception e) {
-				throw new RuntimeException(
-						"Cannot create object '" + array.getArrayClass().getSimpleName() + "': " + e.toString(), e);
-			}
+			return KeyMappingTable.newObject(array.getArrayClass());
 		}
 	}
 
@@ -340,37 +546,10 @@ public class JSONParser {
 	}
 
 	private Class<?> getMappingClass(Class<?> parent, String key) {
-		if (parent != null) {
-			// multiple annotations
-			KeyMappings keyMappings = parent.getAnnotation(KeyMappings.class);
-			if (keyMappings != null) {
-				for (KeyMapping km : keyMappings.value()) {
-					if (km.jsonKey().equals(key)) {
-						try {
-							return km.osbClass();
-						} catch (Exception e) {
-							throw new RuntimeException(
-									"Cannot create object '" + km.osbClass().getSimpleName() + "': " + e.toString(), e);
-						}
-					}
-				}
-			}
-
-			// single annotation
-			KeyMapping keyMapping = parent.getAnnotation(KeyMapping.class);
-			if (keyMapping != null) {
-				if (keyMapping.jsonKey().equals(key)) {
-					try {
-						return keyMapping.osbClass();
-					} catch (Exception e) {
-						throw new RuntimeException(
-								"Cannot create object '" + keyMapping.osbClass().getSimpleName() + "': " + e.toString(),
-								e);
-					}
-				}
-			}
+		if (parent == null || parent == JSONObjectImpl.class) {
+			return null;
 		}
 
-		return null;
+		return KeyMappingTable.get(parent).getMappingClass(key);
 	}
 }
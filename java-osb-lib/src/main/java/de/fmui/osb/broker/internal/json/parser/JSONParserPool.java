@@ -0,0 +1,103 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.internal.json.parser;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded, thread-safe pool of {@link JSONParser} objects.
+ *
+ * A parser that has been acquired is owned by the caller until it is released.
+ * Released parsers are cleared, so they don't keep references to the parsed
+ * input or to large internal buffers.
+ *
+ * <pre>
+ * <code>
+ * JSONParser parser = JSONParserPool.getDefault().acquire();
+ * try {
+ *     parser.parse(json, root);
+ * } finally {
+ *     JSONParserPool.getDefault().release(parser);
+ * }
+ * </code>
+ * </pre>
+ */
+public class JSONParserPool {
+
+	/** Maximum number of idle parsers in the default pool. */
+	public static final int DEFAULT_MAX_IDLE = 64;
+
+	private static final JSONParserPool DEFAULT = new JSONParserPool(DEFAULT_MAX_IDLE);
+
+	private final BlockingQueue<JSONParser> parsers;
+
+	/**
+	 * Creates a parser pool.
+	 *
+	 * @param maxIdle
+	 *            the maximum number of idle parsers
+	 */
+	public JSONParserPool(int maxIdle) {
+		if (maxIdle < 1) {
+			throw new IllegalArgumentException("Invalid number of parsers!");
+		}
+
+		parsers = new ArrayBlockingQueue<JSONParser>(maxIdle);
+	}
+
+	/**
+	 * Returns the shared parser pool.
+	 */
+	public static JSONParserPool getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Gets an idle parser or creates a new one.
+	 */
+	public JSONParser acquire() {
+		JSONParser parser = parsers.poll();
+		if (parser == null) {
+			parser = new JSONParser();
+		}
+
+		return parser;
+	}
+
+	/**
+	 * Clears a parser and returns it to the pool. The parser must not be used by
+	 * the caller afterwards.
+	 *
+	 * @param parser
+	 *            the parser, may be {@code null}
+	 */
+	public void release(JSONParser parser) {
+		if (parser == null) {
+			return;
+		}
+
+		parser.clear();
+		parsers.offer(parser);
+	}
+
+	/**
+	 * Returns the number of idle parsers in the pool.
+	 */
+	public int getIdleParsers() {
+		return parsers.size();
+	}
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.internal.json.parser;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import de.fmui.osb.broker.exceptions.BadRequestException;
+import de.fmui.osb.broker.internal.Constraints;
+import de.fmui.osb.broker.json.JSONReader;
+
+/**
+ * Pull parser for UTF-8 encoded JSON text. It accepts the same JSON text as
+ * {@link JSONParser}, but reports events instead of building objects. Please
+ * note that JSONPullParser is NOT thread-safe.
+ */
+public class JSONPullParser implements JSONReader {
+
+	private static final Yytoken EOF = new Yytoken(Yytoken.TYPE_EOF, null);
+
+	private final JSONLexer lexer;
+	private final int maxDepth;
+	private final boolean checkEnd;
+	private boolean checkSizes;
+	private int[] statusStack = new int[16];
+	private int[] sizeStack = new int[16];
+	private int depth;
+	private int status;
+	private Yytoken pending;
+	private Event event;
+	private Object value;
+
+	/**
+	 * Creates a pull parser for a JSON value in a byte buffer.
+	 * 
+	 * @param buffer
+	 *            the buffer that contains the JSON value
+	 * @param offset
+	 *            the position of the first byte of the JSON value
+	 * @param length
+	 *            the number of bytes of the JSON value
+	 */
+	public JSONPullParser(byte[] buffer, int offset, int length) {
+		this(createLexer(buffer, offset, length), Constraints.MAX_DEPTH, true);
+	}
+
+	/**
+	 * Creates a pull parser on top of a lexer.
+	 * 
+	 * @param checkEnd
+	 *            whether the end of the input must follow the JSON value
+	 */
+	JSONPullParser(JSONLexer lexer, int maxDepth, boolean checkEnd) {
+		this.lexer = lexer;
+		this.maxDepth = maxDepth;
+		this.checkEnd = checkEnd;
+		reset();
+	}
+
+	private static UTF8Lexer createLexer(byte[] buffer, int offset, int length) {
+		UTF8Lexer lexer = new UTF8Lexer();
+		lexer.reset(buffer, offset, length);
+		return lexer;
+	}
+
+	/**
+	 * Resets the parser state without resetting the lexer.
+	 */
+	void reset() {
+		depth = 0;
+		status = JSONParser.S_INIT;
+		pending = null;
+		event = null;
+		value = null;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return status != JSONParser.S_END;
+	}
+
+	@Override
+	public Event next() throws BadRequestException {
+		if (status == JSONParser.S_END) {
+			throw new NoSuchElementException();
+		}
+
+		try {
+			return advance();
+		} catch (JSONParseException jpe) {
+			status = JSONParser.S_END;
+			throw new BadRequestException("Invalid JSON!", jpe);
+		}
+	}
+
+	@Override
+	public String getString() {
+		if (event != Event.KEY && event != Event.VALUE_STRING) {
+			throw new IllegalStateException("Current event is " + event + "!");
+		}
+
+		return (String) value;
+	}
+
+	@Override
+	public Number getNumber() {
+		if (event != Event.VALUE_NUMBER) {
+			throw new IllegalStateException("Current event is " + event + "!");
+		}
+
+		return (Number) value;
+	}
+
+	@Override
+	public void skipValue() throws BadRequestException {
+		if (event == Event.KEY) {
+			next();
+		}
+
+		if (event == Event.START_OBJECT || event == Event.START_ARRAY) {
+			int target = depth - 1;
+			try {
+				while (depth > target) {
+					advance();
+				}
+			} catch (JSONParseException jpe) {
+				status = JSONParser.S_END;
+				throw new BadRequestException("Invalid JSON!", jpe);
+			}
+		}
+	}
+
+	/**
+	 * Skips a complete JSON value.
+	 * 
+	 * @param first
+	 *            the first token of the value, which has already been read from
+	 *            the lexer
+	 * @param checkSizes
+	 *            whether the object and array size limits of {@link JSONParser}
+	 *            should be enforced
+	 */
+	void skipValue(Yytoken first, boolean checkSizes) throws JSONParseException {
+		reset();
+		this.checkSizes = checkSizes;
+		pending = first;
+		try {
+			do {
+				advance();
+			} while (status != JSONParser.S_END);
+		} finally {
+			this.checkSizes = false;
+		}
+	}
+
+	private Event advance() throws JSONParseException {
+		while (true) {
+			Yytoken token = nextToken();
+			switch (status) {
+			case JSONParser.S_INIT:
+				switch (token.type) {
+				case Yytoken.TYPE_VALUE:
+					return endRoot(valueEvent(token));
+				case Yytoken.TYPE_LEFT_BRACE:
+					return push(JSONParser.S_IN_OBJECT, Event.START_OBJECT);
+				case Yytoken.TYPE_LEFT_SQUARE:
+					return push(JSONParser.S_IN_ARRAY, Event.START_ARRAY);
+				default:
+					throw unexpectedToken(token);
+				}
+
+			case JSONParser.S_IN_OBJECT:
+				switch (token.type) {
+				case Yytoken.TYPE_COMMA:
+					continue;
+				case Yytoken.TYPE_VALUE:
+					if (!(token.value instanceof String)) {
+						throw unexpectedToken(token);
+					}
+					countElement(Constraints.MAX_OBJECT_SIZE);
+					status = JSONParser.S_PASSED_PAIR_KEY;
+					statusStack[depth - 1] = status;
+					return setEvent(Event.KEY, token.value);
+				case Yytoken.TYPE_RIGHT_BRACE:
+					return pop(Event.END_OBJECT);
+				default:
+					throw unexpectedToken(token);
+				}
+
+			case JSONParser.S_PASSED_PAIR_KEY:
+				switch (token.type) {
+				case Yytoken.TYPE_COLON:
+					continue;
+				case Yytoken.TYPE_VALUE:
+					status = JSONParser.S_IN_OBJECT;
+					statusStack[depth - 1] = status;
+					return valueEvent(token);
+				case Yytoken.TYPE_LEFT_BRACE:
+					statusStack[depth - 1] = JSONParser.S_IN_OBJECT;
+					return push(JSONParser.S_IN_OBJECT, Event.START_OBJECT);
+				case Yytoken.TYPE_LEFT_SQUARE:
+					statusStack[depth - 1] = JSONParser.S_IN_OBJECT;
+					return push(JSONParser.S_IN_ARRAY, Event.START_ARRAY);
+				default:
+					throw unexpectedToken(token);
+				}
+
+			case JSONParser.S_IN_ARRAY:
+				switch (token.type) {
+				case Yytoken.TYPE_COMMA:
+					continue;
+				case Yytoken.TYPE_VALUE:
+					countElement(Constraints.MAX_ARRAY_SIZE);
+					return valueEvent(token);
+				case Yytoken.TYPE_RIGHT_SQUARE:
+					return pop(Event.END_ARRAY);
+				case Yytoken.TYPE_LEFT_BRACE:
+					countElement(Constraints.MAX_ARRAY_SIZE);
+					return push(JSONParser.S_IN_OBJECT, Event.START_OBJECT);
+				case Yytoken.TYPE_LEFT_SQUARE:
+					countElement(Constraints.MAX_ARRAY_SIZE);
+					return push(JSONParser.S_IN_ARRAY, Event.START_ARRAY);
+				default:
+					throw unexpectedToken(token);
+				}
+
+			default:
+				throw unexpectedToken(token);
+			}
+		}
+	}
+
+	private Yytoken nextToken() throws JSONParseException {
+		Yytoken token = pending;
+		if (token != null) {
+			pending = null;
+			return token;
+		}
+
+		try {
+			token = lexer.yylex();
+		} catch (IOException ie) {
+			// byte lexers don't do I/O
+			throw new JSONParseException(-1, JSONParseException.ErrorType.ERROR_UNEXPECTED_EXCEPTION, ie);
+		}
+
+		return token == null ? EOF : token;
+	}
+
+	private Event push(int newStatus, Event newEvent) throws JSONParseException {
+		if (depth + 1 > maxDepth) {
+			throw new JSONParseException(JSONParseException.ErrorType.ERROR_JSON_TOO_BIG);
+		}
+
+		if (depth == statusStack.length) {
+			statusStack = Arrays.copyOf(statusStack, depth * 2);
+			sizeStack = Arrays.copyOf(sizeStack, depth * 2);
+		}
+
+		sizeStack[depth] = 0;
+		statusStack[depth++] = newStatus;
+		status = newStatus;
+		return setEvent(newEvent, null);
+	}
+
+	/**
+	 * Counts a field or an element of the current container.
+	 */
+	private void countElement(int maxSize) throws JSONParseException {
+		if (checkSizes && ++sizeStack[depth - 1] > maxSize) {
+			throw new JSONParseException(JSONParseException.ErrorType.ERROR_JSON_TOO_BIG);
+		}
+	}
+
+	private Event pop(Event newEvent) throws JSONParseException {
+		setEvent(newEvent, null);
+
+		depth--;
+		if (depth == 0) {
+			return endRoot(newEvent);
+		}
+
+		status = statusStack[depth - 1];
+		return newEvent;
+	}
+
+	private Event endRoot(Event newEvent) throws JSONParseException {
+		status = JSONParser.S_END;
+		if (checkEnd) {
+			Yytoken token = nextToken();
+			if (token.type != Yytoken.TYPE_EOF) {
+				throw unexpectedToken(token);
+			}
+		}
+
+		return newEvent;
+	}
+
+	private Event valueEvent(Yytoken token) {
+		Object tokenValue = token.value;
+		if (tokenValue == null) {
+			return setEvent(Event.VALUE_NULL, null);
+		} else if (tokenValue instanceof String) {
+			return setEvent(Event.VALUE_STRING, tokenValue);
+		} else if (tokenValue instanceof Boolean) {
+			return setEvent(((Boolean) tokenValue).booleanValue() ? Event.VALUE_TRUE : Event.VALUE_FALSE, null);
+		} else {
+			return setEvent(Event.VALUE_NUMBER, tokenValue);
+		}
+	}
+
+	private Event setEvent(Event newEvent, Object newValue) {
+		event = newEvent;
+		value = newValue;
+		return newEvent;
+	}
+
+	private JSONParseException unexpectedToken(Yytoken token) {
+		return new JSONParseException(lexer.getPosition(), JSONParseException.ErrorType.ERROR_UNEXPECTED_TOKEN, token);
+	}
+}
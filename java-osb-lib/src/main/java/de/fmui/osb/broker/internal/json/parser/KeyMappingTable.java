@@ -0,0 +1,147 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.internal.json.parser;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import de.fmui.osb.broker.json.JSONObject;
+import de.fmui.osb.broker.objects.KeyMapping;
+import de.fmui.osb.broker.objects.KeyMappings;
+
+/**
+ * The {@link KeyMapping} annotations of a class, resolved once per class.
+ *
+ * Tables and object factories are cached in {@link ClassValue}s, so that
+ * parsing doesn't look up annotations or constructors reflectively after the
+ * first object of a class has been parsed.
+ */
+final class KeyMappingTable {
+
+	private static final ClassValue<KeyMappingTable> TABLES = new ClassValue<KeyMappingTable>() {
+		@Override
+		protected KeyMappingTable computeValue(Class<?> type) {
+			return new KeyMappingTable(type);
+		}
+	};
+
+	private static final ClassValue<ObjectFactory> FACTORIES = new ClassValue<ObjectFactory>() {
+		@Override
+		protected ObjectFactory computeValue(Class<?> type) {
+			return new ObjectFactory(type);
+		}
+	};
+
+	private final Map<String, Class<?>> mappings;
+
+	private KeyMappingTable(Class<?> clazz) {
+		Map<String, Class<?>> map = new HashMap<String, Class<?>>();
+
+		// multiple annotations, the first mapping of a key wins
+		KeyMappings keyMappings = clazz.getAnnotation(KeyMappings.class);
+		if (keyMappings != null) {
+			for (KeyMapping km : keyMappings.value()) {
+				if (!map.containsKey(km.jsonKey())) {
+					map.put(km.jsonKey(), km.osbClass());
+				}
+			}
+		}
+
+		// single annotation
+		KeyMapping keyMapping = clazz.getAnnotation(KeyMapping.class);
+		if (keyMapping != null && !map.containsKey(keyMapping.jsonKey())) {
+			map.put(keyMapping.jsonKey(), keyMapping.osbClass());
+		}
+
+		mappings = map.isEmpty() ? Collections.<String, Class<?>> emptyMap() : map;
+	}
+
+	/**
+	 * Returns the mapping table of a class.
+	 */
+	static KeyMappingTable get(Class<?> clazz) {
+		return TABLES.get(clazz);
+	}
+
+	/**
+	 * Returns the class that is mapped to the given JSON key.
+	 *
+	 * @return the class or {@code null} if the key is not mapped
+	 */
+	Class<?> getMappingClass(String key) {
+		return mappings.get(key);
+	}
+
+	/**
+	 * Creates a new object of the given class with its default constructor.
+	 *
+	 * @throws RuntimeException
+	 *             if the class isn't a {@link JSONObject} or the object cannot be
+	 *             created
+	 */
+	static JSONObject newObject(Class<?> clazz) {
+		return FACTORIES.get(clazz).newObject();
+	}
+
+	/**
+	 * Creates objects of a class through a method handle of its default
+	 * constructor.
+	 */
+	private static final class ObjectFactory {
+		private static final MethodType FACTORY_TYPE = MethodType.methodType(JSONObject.class);
+
+		private final Class<?> clazz;
+		private final MethodHandle constructor;
+		private final Exception error;
+
+		ObjectFactory(Class<?> clazz) {
+			MethodHandle handle = null;
+			Exception exception = null;
+			try {
+				handle = MethodHandles.lookup()
+						.unreflectConstructor(clazz.asSubclass(JSONObject.class).getDeclaredConstructor())
+						.asType(FACTORY_TYPE);
+			} catch (Exception e) {
+				exception = e;
+			}
+
+			this.clazz = clazz;
+			this.constructor = handle;
+			this.error = exception;
+		}
+
+		JSONObject newObject() {
+			if (error != null) {
+				throw new RuntimeException("Cannot create object '" + clazz.getSimpleName() + "': " + error.toString(),
+						error);
+			}
+
+			try {
+				return (JSONObject) constructor.invokeExact();
+			} catch (RuntimeException e) {
+				throw new RuntimeException("Cannot create object '" + clazz.getSimpleName() + "': " + e.toString(), e);
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new RuntimeException("Cannot create object '" + clazz.getSimpleName() + "': " + t.toString(), t);
+			}
+		}
+	}
+}
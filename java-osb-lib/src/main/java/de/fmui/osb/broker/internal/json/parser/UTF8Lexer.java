@@ -0,0 +1,448 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.internal.json.parser;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tokenizer for UTF-8 encoded JSON text.
+ *
+ * This tokenizer accepts the same language as {@link Yylex} and produces the
+ * same tokens, but scans the bytes directly. Strings are decoded from the bytes
+ * with a fast path for strings that only contain ASCII characters and no
+ * escapes. Positions are byte offsets.
+ */
+class UTF8Lexer implements JSONLexer {
+
+	/** the maximum length of a string */
+	private static final int MAX_STRING_LENGTH = 100 * 1024;
+
+	/** initial size of the string buffer */
+	private static final int CBUF_INITIAL_SIZE = 256;
+
+	/** larger string buffers are not kept when the lexer is cleared */
+	private static final int CBUF_MAX_RETAINED_SIZE = 4096;
+
+	/** numbers with up to 18 digits always fit into a long */
+	private static final int MAX_FAST_DIGITS = 18;
+
+	private static final Yytoken LEFT_BRACE = new Yytoken(Yytoken.TYPE_LEFT_BRACE, null);
+	private static final Yytoken RIGHT_BRACE = new Yytoken(Yytoken.TYPE_RIGHT_BRACE, null);
+	private static final Yytoken LEFT_SQUARE = new Yytoken(Yytoken.TYPE_LEFT_SQUARE, null);
+	private static final Yytoken RIGHT_SQUARE = new Yytoken(Yytoken.TYPE_RIGHT_SQUARE, null);
+	private static final Yytoken COMMA = new Yytoken(Yytoken.TYPE_COMMA, null);
+	private static final Yytoken COLON = new Yytoken(Yytoken.TYPE_COLON, null);
+
+	private byte[] buffer;
+	private int end;
+	private int pos;
+	private int tokenStart;
+
+	private char[] cbuf = new char[CBUF_INITIAL_SIZE];
+	private int clen;
+
+	/**
+	 * Resets the lexer to scan the given bytes.
+	 *
+	 * @param buffer
+	 *            the UTF-8 encoded input
+	 * @param length
+	 *            the number of bytes in the buffer
+	 */
+	void reset(byte[] buffer, int length) {
+		reset(buffer, 0, length);
+	}
+
+	/**
+	 * Resets the lexer to scan a part of the given bytes.
+	 *
+	 * @param buffer
+	 *            the UTF-8 encoded input
+	 * @param offset
+	 *            the position of the first byte
+	 * @param length
+	 *            the number of bytes to scan
+	 */
+	void reset(byte[] buffer, int offset, int length) {
+		this.buffer = buffer;
+		this.end = offset + length;
+		this.pos = offset;
+		this.tokenStart = offset;
+	}
+
+	@Override
+	public int getPosition() {
+		return tokenStart;
+	}
+
+	/**
+	 * Returns the position of the first byte after the current token.
+	 */
+	int getEndPosition() {
+		return pos;
+	}
+
+	/**
+	 * Returns the input buffer.
+	 */
+	byte[] getBuffer() {
+		return buffer;
+	}
+
+	@Override
+	public void yyclear() {
+		buffer = null;
+		end = 0;
+		pos = 0;
+		tokenStart = 0;
+
+		if (cbuf.length > CBUF_MAX_RETAINED_SIZE) {
+			cbuf = new char[CBUF_INITIAL_SIZE];
+		}
+	}
+
+	@Override
+	public Yytoken yylex() throws JSONParseException {
+		// skip white spaces
+		while (pos < end) {
+			byte b = buffer[pos];
+			if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+				break;
+			}
+			pos++;
+		}
+
+		tokenStart = pos;
+		if (pos == end) {
+			return null;
+		}
+
+		byte b = buffer[pos];
+		switch (b) {
+		case '{':
+			pos++;
+			return LEFT_BRACE;
+		case '}':
+			pos++;
+			return RIGHT_BRACE;
+		case '[':
+			pos++;
+			return LEFT_SQUARE;
+		case ']':
+			pos++;
+			return RIGHT_SQUARE;
+		case ',':
+			pos++;
+			return COMMA;
+		case ':':
+			pos++;
+			return COLON;
+		case '"':
+			pos++;
+			String value = readString();
+			if (value == null) {
+				return null;
+			}
+			return new Yytoken(Yytoken.TYPE_VALUE, value);
+		case 't':
+			readLiteral("true");
+			return new Yytoken(Yytoken.TYPE_VALUE, Boolean.TRUE);
+		case 'f':
+			readLiteral("false");
+			return new Yytoken(Yytoken.TYPE_VALUE, Boolean.FALSE);
+		case 'n':
+			readLiteral("null");
+			return new Yytoken(Yytoken.TYPE_VALUE, null);
+		default:
+			if (b == '-' || isDigit(b)) {
+				return new Yytoken(Yytoken.TYPE_VALUE, readNumber());
+			}
+			throw unexpectedChar(pos);
+		}
+	}
+
+	private void readLiteral(String literal) throws JSONParseException {
+		int length = literal.length();
+		if (end - pos < length) {
+			throw unexpectedChar(pos);
+		}
+
+		for (int i = 1; i < length; i++) {
+			if (buffer[pos + i] != literal.charAt(i)) {
+				throw unexpectedChar(pos);
+			}
+		}
+
+		pos += length;
+	}
+
+	private Object readNumber() throws JSONParseException {
+		int start = pos;
+		int i = pos;
+
+		if (buffer[i] == '-') {
+			i++;
+		}
+
+		int digitsStart = i;
+		i = skipDigits(i);
+		if (i == digitsStart) {
+			// a lonely minus
+			throw unexpectedChar(start);
+		}
+		int digitsEnd = i;
+
+		// the fraction and the exponent are only part of the number if they are
+		// complete, otherwise the number ends before them
+		boolean isDecimal = false;
+		if (i + 1 < end && buffer[i] == '.' && isDigit(buffer[i + 1])) {
+			i = skipDigits(i + 1);
+			isDecimal = true;
+		}
+
+		if (i + 1 < end && (buffer[i] == 'e' || buffer[i] == 'E')) {
+			int e = i + 1;
+			if (buffer[e] == '-' || buffer[e] == '+') {
+				e++;
+			}
+			if (e < end && isDigit(buffer[e])) {
+				i = skipDigits(e);
+				isDecimal = true;
+			}
+		}
+
+		pos = i;
+
+		if (isDecimal) {
+			return new BigDecimal(new String(buffer, start, i - start, StandardCharsets.ISO_8859_1));
+		}
+
+		if (digitsEnd - digitsStart <= MAX_FAST_DIGITS) {
+			long value = 0;
+			for (int d = digitsStart; d < digitsEnd; d++) {
+				value = value * 10 + (buffer[d] - '0');
+			}
+			return Long.valueOf(buffer[start] == '-' ? -value : value);
+		}
+
+		try {
+			return new BigInteger(new String(buffer, start, i - start, StandardCharsets.ISO_8859_1))
+					.longValueExact();
+		} catch (Exception e) {
+			throw new JSONParseException(start, JSONParseException.ErrorType.ERROR_NUMBER_TOO_BIG, e);
+		}
+	}
+
+	private int skipDigits(int i) {
+		while (i < end && isDigit(buffer[i])) {
+			i++;
+		}
+		return i;
+	}
+
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+
+	/**
+	 * Reads a string.
+	 * 
+	 * @return the string or {@code null} if the string is not terminated
+	 */
+	private String readString() throws JSONParseException {
+		int start = pos;
+
+		// fast path: ASCII characters only, no escapes
+		int i = start;
+		while (i < end) {
+			byte b = buffer[i];
+			if (b == '"') {
+				if (i - start > MAX_STRING_LENGTH) {
+					throw new JSONParseException(JSONParseException.ErrorType.ERROR_STRING_TOO_LONG);
+				}
+				pos = i + 1;
+				return new String(buffer, start, i - start, StandardCharsets.ISO_8859_1);
+			}
+			if (b == '\\' || b < 0) {
+				break;
+			}
+			i++;
+		}
+
+		// slow path: escapes and non-ASCII characters
+		clen = 0;
+		for (int k = start; k < i; k++) {
+			appendChar((char) buffer[k]);
+		}
+
+		while (i < end) {
+			byte b = buffer[i];
+			if (b == '"') {
+				pos = i + 1;
+				return new String(cbuf, 0, clen);
+			} else if (b == '\\') {
+				i = readEscape(i);
+			} else if (b >= 0) {
+				appendChar((char) b);
+				i++;
+			} else {
+				i = readNonASCII(i);
+			}
+		}
+
+		// as in Yylex, an unterminated string is treated as the end of the input
+		pos = end;
+		tokenStart = end;
+		return null;
+	}
+
+	/**
+	 * Reads an escape sequence. As in {@link Yylex}, a backslash that doesn't
+	 * start a valid escape sequence is kept as it is.
+	 */
+	private int readEscape(int i) throws JSONParseException {
+		if (i + 1 < end) {
+			switch (buffer[i + 1]) {
+			case '"':
+				appendChar('"');
+				return i + 2;
+			case '\\':
+				appendChar('\\');
+				return i + 2;
+			case '/':
+				appendChar('/');
+				return i + 2;
+			case 'b':
+				appendChar('\b');
+				return i + 2;
+			case 'f':
+				appendChar('\f');
+				return i + 2;
+			case 'n':
+				appendChar('\n');
+				return i + 2;
+			case 'r':
+				appendChar('\r');
+				return i + 2;
+			case 't':
+				appendChar('\t');
+				return i + 2;
+			case 'u':
+				if (i + 5 < end) {
+					int ch = 0;
+					for (int k = i + 2; k < i + 6; k++) {
+						int digit = Character.digit(buffer[k], 16);
+						if (digit < 0) {
+							ch = -1;
+							break;
+						}
+						ch = (ch << 4) | digit;
+					}
+
+					if (ch >= 0) {
+						appendChar((char) ch);
+						return i + 6;
+					}
+				}
+				break;
+			default:
+			}
+		}
+
+		appendChar('\\');
+		return i + 1;
+	}
+
+	/**
+	 * Decodes a run of non-ASCII bytes. Well-formed sequences are decoded here,
+	 * runs with malformed sequences are decoded by the JDK, which replaces them
+	 * the same way the decoding reader does.
+	 */
+	private int readNonASCII(int start) throws JSONParseException {
+		int runEnd = start;
+		while (runEnd < end && buffer[runEnd] < 0) {
+			runEnd++;
+		}
+
+		int mark = clen;
+		int i = start;
+		while (i < runEnd) {
+			int b1 = buffer[i] & 0xff;
+			if (b1 >= 0xc2 && b1 <= 0xdf && i + 1 < runEnd && isContinuation(buffer[i + 1])) {
+				appendChar((char) (((b1 & 0x1f) << 6) | (buffer[i + 1] & 0x3f)));
+				i += 2;
+			} else if (b1 >= 0xe0 && b1 <= 0xef && i + 2 < runEnd && isContinuation(buffer[i + 1])
+					&& isContinuation(buffer[i + 2])) {
+				int b2 = buffer[i + 1] & 0xff;
+				if ((b1 == 0xe0 && b2 < 0xa0) || (b1 == 0xed && b2 > 0x9f)) {
+					break; // overlong or surrogate
+				}
+				appendChar((char) (((b1 & 0x0f) << 12) | ((b2 & 0x3f) << 6) | (buffer[i + 2] & 0x3f)));
+				i += 3;
+			} else if (b1 >= 0xf0 && b1 <= 0xf4 && i + 3 < runEnd && isContinuation(buffer[i + 1])
+					&& isContinuation(buffer[i + 2]) && isContinuation(buffer[i + 3])) {
+				int b2 = buffer[i + 1] & 0xff;
+				if ((b1 == 0xf0 && b2 < 0x90) || (b1 == 0xf4 && b2 > 0x8f)) {
+					break; // overlong or out of range
+				}
+				int cp = ((b1 & 0x07) << 18) | ((b2 & 0x3f) << 12) | ((buffer[i + 2] & 0x3f) << 6)
+						| (buffer[i + 3] & 0x3f);
+				appendChar(Character.highSurrogate(cp));
+				appendChar(Character.lowSurrogate(cp));
+				i += 4;
+			} else {
+				break; // malformed
+			}
+		}
+
+		if (i < runEnd) {
+			// malformed input, let the JDK decode and replace the whole run
+			clen = mark;
+			String decoded = new String(buffer, start, runEnd - start, StandardCharsets.UTF_8);
+			for (int k = 0; k < decoded.length(); k++) {
+				appendChar(decoded.charAt(k));
+			}
+		}
+
+		return runEnd;
+	}
+
+	private static boolean isContinuation(byte b) {
+		return (b & 0xc0) == 0x80;
+	}
+
+	private void appendChar(char c) throws JSONParseException {
+		if (clen == cbuf.length) {
+			if (clen >= MAX_STRING_LENGTH) {
+				throw new JSONParseException(JSONParseException.ErrorType.ERROR_STRING_TOO_LONG);
+			}
+
+			char[] newBuffer = new char[Math.min(cbuf.length * 2, MAX_STRING_LENGTH)];
+			System.arraycopy(cbuf, 0, newBuffer, 0, clen);
+			cbuf = newBuffer;
+		}
+
+		cbuf[clen++] = c;
+	}
+
+	private JSONParseException unexpectedChar(int position) {
+		int b = buffer[position] & 0xff;
+		Character c = Character.valueOf(b < 0x80 ? (char) b : '\uFFFD');
+		return new JSONParseException(position, JSONParseException.ErrorType.ERROR_UNEXPECTED_CHAR, c);
+	}
+}
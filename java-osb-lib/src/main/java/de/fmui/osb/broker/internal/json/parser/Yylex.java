@@ -18,7 +18,7 @@ package de.fmui.osb.broker.internal.json.parser;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 
-class Yylex {
+class Yylex implements JSONLexer {
 
 	/** This character denotes the end of file */
 	public static final int YYEOF = -1;
@@ -29,6 +29,12 @@ class Yylex {
 	/** the maximum length of a string */
 	private static final int MAX_STRING_LENGTH = 100 * 1024;
 
+	/** initial capacity of the string builder */
+	private static final int SB_INITIAL_CAPACITY = 128;
+
+	/** larger string builders are not kept when the scanner is cleared */
+	private static final int SB_MAX_RETAINED_CAPACITY = 4096;
+
 	/** lexical states */
 	public static final int YYINITIAL = 0;
 	public static final int STRING_BEGIN = 2;
@@ -188,7 +194,13 @@ class Yylex {
 	 * this buffer contains the current text to be matched and is the source of the
 	 * yytext() string
 	 */
-	private char[] zzBuffer = new char[ZZ_BUFFERSIZE];
+	private char[] zzBuffer;
+
+	/** the scanner's own buffer for reading from zzReader */
+	private char[] zzReaderBuffer;
+
+	/** true if zzBuffer is an external buffer that holds the complete input */
+	private boolean zzExternalBuffer;
 
 	/** the textposition at the last accepting state */
 	private int zzMarkedPos;
@@ -211,9 +223,10 @@ class Yylex {
 	private boolean zzAtEOF;
 
 	/* user code: */
-	private StringBuilder sb = new StringBuilder(128);
+	private StringBuilder sb = new StringBuilder(SB_INITIAL_CAPACITY);
 
-	int getPosition() {
+	@Override
+	public int getPosition() {
 		return yychar;
 	}
 
@@ -226,6 +239,15 @@ class Yylex {
 	 */
 	Yylex(java.io.Reader in) {
 		this.zzReader = in;
+		this.zzReaderBuffer = new char[ZZ_BUFFERSIZE];
+		this.zzBuffer = zzReaderBuffer;
+	}
+
+	/**
+	 * Creates a new scanner without input. The input buffer is allocated when
+	 * the scanner is reset with a reader.
+	 */
+	Yylex() {
 	}
 
 	/**
@@ -259,6 +281,11 @@ class Yylex {
 	 */
 	private boolean zzRefill() throws java.io.IOException {
 
+		/* an external buffer contains the complete input */
+		if (zzExternalBuffer) {
+			return true;
+		}
+
 		/* first: make room (if you can) */
 		if (zzStartRead > 0) {
 			System.arraycopy(zzBuffer, zzStartRead, zzBuffer, 0, zzEndRead - zzStartRead);
@@ -276,6 +303,7 @@ class Yylex {
 			char[] newBuffer = new char[zzCurrentPos * 2];
 			System.arraycopy(zzBuffer, 0, newBuffer, 0, zzBuffer.length);
 			zzBuffer = newBuffer;
+			zzReaderBuffer = newBuffer;
 		}
 
 		/* finally: fill the buffer with new input */
@@ -325,9 +353,62 @@ class Yylex {
 	 *            the new input stream
 	 */
 	public final void yyreset(java.io.Reader reader) {
+		if (zzReaderBuffer == null) {
+			zzReaderBuffer = new char[ZZ_BUFFERSIZE];
+		}
+
+		zzBuffer = zzReaderBuffer;
+		zzExternalBuffer = false;
 		zzReader = reader;
+		reset(0);
+	}
+
+	/**
+	 * Resets the scanner to read from a buffer that contains the complete input.
+	 * 
+	 * The buffer is used in place and may be modified. It must not be used by the
+	 * caller until the scanner is reset again.
+	 * 
+	 * @param buffer
+	 *            the input buffer
+	 * @param length
+	 *            the number of chars in the buffer
+	 */
+	public final void yyreset(char[] buffer, int length) {
+		zzBuffer = buffer;
+		zzExternalBuffer = true;
+		zzReader = null;
+		reset(length);
+	}
+
+	/**
+	 * Releases the input and all memory that has been acquired while scanning a
+	 * large input, so that the scanner can be kept for later use. Does not close
+	 * the reader.
+	 */
+	@Override
+	public final void yyclear() {
+		zzReader = null;
+		zzBuffer = null;
+		zzExternalBuffer = false;
+
+		// a buffer that has been blown up by a long token is not kept
+		if (zzReaderBuffer != null && zzReaderBuffer.length > ZZ_BUFFERSIZE) {
+			zzReaderBuffer = null;
+		}
+
+		if (sb.capacity() > SB_MAX_RETAINED_CAPACITY) {
+			sb = new StringBuilder(SB_INITIAL_CAPACITY);
+		} else {
+			sb.setLength(0);
+		}
+
+		reset(0);
+	}
+
+	private void reset(int endRead) {
 		zzAtEOF = false;
-		zzEndRead = 0;
+		zzEndRead = endRead;
 		zzStartRead = 0;
 		zzCurrentPos = 0;
 		zzMarkedPos = 0;
@@ -452,6 +533,7 @@ class Yylex {
 	 * @exception java.io.IOException
 	 *                if any I/O-Error occurs
 	 */
+	@Override
 	public Yytoken yylex() throws java.io.IOException, JSONParseException {
 		int zzInput;
 		int zzAction;
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.internal.routing;
+
+import de.fmui.osb.broker.internal.io.IOUtils;
+
+/**
+ * Tokenized request path.
+ *
+ * The path is not copied. Only the start and end offsets of the segments in
+ * the request URI are recorded. Literal segments are compared in place and a
+ * segment is only URL decoded when its value is requested.
+ */
+public class RequestPath {
+
+	private static final int INITIAL_SEGMENTS = 8;
+
+	private final String uri;
+	private int[] offsets; // start and end offset of each segment
+	private int count;
+	private final String[] segments; // decoded segments, if already known
+
+	/**
+	 * Tokenizes the part of the URI that starts at the given offset.
+	 *
+	 * The character at the start offset is skipped, empty segments at the end of
+	 * the path are dropped.
+	 *
+	 * @param uri
+	 *            the request URI
+	 * @param start
+	 *            the offset of the path in the URI
+	 */
+	public RequestPath(String uri, int start) {
+		this.uri = uri;
+		this.offsets = new int[INITIAL_SEGMENTS * 2];
+		this.count = 0;
+		this.segments = null;
+
+		tokenize(start);
+	}
+
+	/**
+	 * Creates a path from already decoded segments.
+	 *
+	 * @param segments
+	 *            the decoded segments
+	 */
+	public RequestPath(String[] segments) {
+		this.uri = null;
+		this.offsets = null;
+		this.count = segments.length;
+		this.segments = segments;
+	}
+
+	private void tokenize(int start) {
+		int length = uri.length();
+		if (start >= length) {
+			return;
+		}
+
+		int segmentStart = start + 1;
+		int lastNonEmpty = 0;
+		for (int i = segmentStart; i <= length; i++) {
+			char c = i < length ? uri.charAt(i) : '/';
+			if (c == '/') {
+				addSegment(segmentStart, i);
+				if (i > segmentStart) {
+					lastNonEmpty = count;
+				}
+				segmentStart = i + 1;
+			} else {
+				checkChar(c, i);
+			}
+		}
+
+		// String.split() semantics: trailing empty segments are removed, but a
+		// path without a separator is kept as it is
+		if (count > 1) {
+			count = lastNonEmpty;
+		}
+	}
+
+	private void checkChar(char c, int index) {
+		// check for malicious characters, also in their URL encoded form
+		if (c == '\n' || c == '\r' || c == '\b' || c == 0) {
+			throw new RuntimeException("Invalid path!");
+		}
+
+		if (c == '%' && index + 2 < uri.length() && uri.charAt(index + 1) == '0') {
+			switch (uri.charAt(index + 2)) {
+			case '0':
+			case '8':
+			case 'a':
+			case 'A':
+			case 'd':
+			case 'D':
+				throw new RuntimeException("Invalid path!");
+			default:
+			}
+		}
+	}
+
+	private void addSegment(int start, int end) {
+		if (count * 2 == offsets.length) {
+			int[] newOffsets = new int[offsets.length * 2];
+			System.arraycopy(offsets, 0, newOffsets, 0, offsets.length);
+			offsets = newOffsets;
+		}
+
+		offsets[count * 2] = start;
+		offsets[count * 2 + 1] = end;
+		count++;
+	}
+
+	/**
+	 * Returns the number of segments.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Checks if a segment equals the given literal without decoding the segment,
+	 * unless it contains URL encoded characters.
+	 */
+	public boolean segmentEquals(int index, String literal) {
+		if (segments != null) {
+			return literal.equals(segments[index]);
+		}
+
+		int start = offsets[index * 2];
+		int length = offsets[index * 2 + 1] - start;
+
+		if (length == literal.length() && uri.regionMatches(start, literal, 0, length)) {
+			return true;
+		}
+
+		if (containsEscape(start, start + length)) {
+			return literal.equals(getSegment(index));
+		}
+
+		return false;
+	}
+
+	private boolean containsEscape(int start, int end) {
+		for (int i = start; i < end; i++) {
+			char c = uri.charAt(i);
+			if (c == '%' || c == '+') {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns a decoded segment.
+	 */
+	public String getSegment(int index) {
+		if (index < 0 || index >= count) {
+			throw new IllegalArgumentException("Invalid position!");
+		}
+
+		if (segments != null) {
+			return segments[index];
+		}
+
+		int start = offsets[index * 2];
+		int end = offsets[index * 2 + 1];
+
+		if (containsEscape(start, end)) {
+			return IOUtils.decodeURL(uri.substring(start, end));
+		}
+
+		return uri.substring(start, end);
+	}
+
+	/**
+	 * Returns all decoded segments.
+	 */
+	public String[] getSegments() {
+		String[] result = new String[count];
+		for (int i = 0; i < count; i++) {
+			result[i] = getSegment(i);
+		}
+
+		return result;
+	}
+}
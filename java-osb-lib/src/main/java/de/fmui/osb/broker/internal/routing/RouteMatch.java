@@ -0,0 +1,57 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.internal.routing;
+
+/**
+ * Result of a route lookup.
+ */
+public class RouteMatch {
+
+	private final Operation operation;
+	private final RequestPath path;
+	private final int instanceIndex;
+	private final int bindingIndex;
+
+	public RouteMatch(Operation operation, RequestPath path, int instanceIndex, int bindingIndex) {
+		this.operation = operation;
+		this.path = path;
+		this.instanceIndex = instanceIndex;
+		this.bindingIndex = bindingIndex;
+	}
+
+	/**
+	 * Returns the matched operation.
+	 */
+	public Operation getOperation() {
+		return operation;
+	}
+
+	/**
+	 * Returns the decoded instance ID path segment or {@code null} if the route
+	 * has no instance ID.
+	 */
+	public String getInstanceID() {
+		return instanceIndex < 0 ? null : path.getSegment(instanceIndex);
+	}
+
+	/**
+	 * Returns the decoded binding ID path segment or {@code null} if the route has
+	 * no binding ID.
+	 */
+	public String getBindingID() {
+		return bindingIndex < 0 ? null : path.getSegment(bindingIndex);
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.internal.routing;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Precompiled table of Open Service Broker routes.
+ *
+ * Routes are indexed by HTTP method and by the number of path segments of the
+ * route pattern. A route matches the last segments of a request path, which
+ * allows the broker to be mounted under an arbitrary path prefix. The OSB v2
+ * routes are mutually exclusive, so the first matching route is the only one.
+ */
+public class RouteTable {
+
+	/** Placeholder for the instance ID in a route pattern. */
+	public static final String INSTANCE_ID = "{instance_id}";
+	/** Placeholder for the binding ID in a route pattern. */
+	public static final String BINDING_ID = "{binding_id}";
+
+	/** The Open Service Broker API v2 routes. */
+	public static final RouteTable OSB_V2 = new RouteTable() //
+			.add("GET", "v2/catalog", Operation.CATALOG) //
+			.add("PUT", "v2/service_instances/" + INSTANCE_ID, Operation.PROVISION) //
+			.add("GET", "v2/service_instances/" + INSTANCE_ID, Operation.FETCH_INSTANCE) //
+			.add("PATCH", "v2/service_instances/" + INSTANCE_ID, Operation.UPDATE) //
+			.add("DELETE", "v2/service_instances/" + INSTANCE_ID, Operation.DEPROVISION) //
+			.add("GET", "v2/service_instances/" + INSTANCE_ID + "/last_operation",
+					Operation.INSTANCE_LAST_OPERATION) //
+			.add("PUT", "v2/service_instances/" + INSTANCE_ID + "/service_bindings/" + BINDING_ID, Operation.BIND) //
+			.add("GET", "v2/service_instances/" + INSTANCE_ID + "/service_bindings/" + BINDING_ID,
+					Operation.FETCH_BINDING) //
+			.add("DELETE", "v2/service_instances/" + INSTANCE_ID + "/service_bindings/" + BINDING_ID,
+					Operation.UNBIND) //
+			.add("GET", "v2/service_instances/" + INSTANCE_ID + "/service_bindings/" + BINDING_ID + "/last_operation",
+					Operation.BINDING_LAST_OPERATION);
+
+	private final Map<String, Route[]> routes = new HashMap<String, Route[]>();
+
+	/**
+	 * Adds a route.
+	 *
+	 * @param method
+	 *            the HTTP method
+	 * @param pattern
+	 *            the path pattern, segments separated by '/'
+	 * @param operation
+	 *            the operation this route maps to
+	 *
+	 * @return this route table
+	 */
+	public RouteTable add(String method, String pattern, Operation operation) {
+		Route route = new Route(pattern.split("/"), operation);
+		int length = route.segments.length;
+
+		Route[] methodRoutes = routes.get(method);
+		if (methodRoutes == null) {
+			methodRoutes = new Route[length + 1];
+		} else if (methodRoutes.length <= length) {
+			Route[] newRoutes = new Route[length + 1];
+			System.arraycopy(methodRoutes, 0, newRoutes, 0, methodRoutes.length);
+			methodRoutes = newRoutes;
+		}
+
+		if (methodRoutes[length] != null) {
+			throw new IllegalArgumentException("Route already defined: " + method + " " + pattern);
+		}
+
+		methodRoutes[length] = route;
+		routes.put(method, methodRoutes);
+
+		return this;
+	}
+
+	/**
+	 * Finds the route for the given method and path.
+	 *
+	 * @param method
+	 *            the HTTP method
+	 * @param path
+	 *            the decoded path segments
+	 *
+	 * @return the match or {@code null} if no route matches
+	 */
+	public RouteMatch match(String method, String[] path) {
+		return match(method, new RequestPath(path));
+	}
+
+	/**
+	 * Finds the route for the given method and path.
+	 *
+	 * @param method
+	 *            the HTTP method
+	 * @param path
+	 *            the tokenized path
+	 *
+	 * @return the match or {@code null} if no route matches
+	 */
+	public RouteMatch match(String method, RequestPath path) {
+		Route[] methodRoutes = routes.get(method);
+		if (methodRoutes == null) {
+			return null;
+		}
+
+		// the exact segment count is tried first, shorter routes only match if
+		// the broker is mounted under a path prefix
+		for (int length = Math.min(path.size(), methodRoutes.length - 1); length > 0; length--) {
+			Route route = methodRoutes[length];
+			if (route != null && route.matches(path)) {
+				return route.createMatch(path);
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Checks if the given method and path map to the given operation.
+	 */
+	public boolean matches(Operation operation, String method, String[] path) {
+		RouteMatch match = match(method, path);
+		return match != null && match.getOperation() == operation;
+	}
+
+	/**
+	 * A compiled route.
+	 */
+	static class Route {
+		final String[] segments; // literal segments, null for placeholders
+		final Operation operation;
+		final int instanceIndex;
+		final int bindingIndex;
+
+		Route(String[] pattern, Operation operation) {
+			this.segments = new String[pattern.length];
+			this.operation = operation;
+
+			int instance = -1;
+			int binding = -1;
+			for (int i = 0; i < pattern.length; i++) {
+				if (INSTANCE_ID.equals(pattern[i])) {
+					instance = i;
+				} else if (BINDING_ID.equals(pattern[i])) {
+					binding = i;
+				} else {
+					segments[i] = pattern[i];
+				}
+			}
+
+			this.instanceIndex = instance;
+			this.bindingIndex = binding;
+		}
+
+		boolean matches(RequestPath path) {
+			int offset = path.size() - segments.length;
+			if (offset < 0) {
+				return false;
+			}
+
+			// the first literal is the most selective one, so compare from left to
+			// right
+			for (int i = 0; i < segments.length; i++) {
+				if (segments[i] != null && !path.segmentEquals(offset + i, segments[i])) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		RouteMatch createMatch(RequestPath path) {
+			int offset = path.size() - segments.length;
+			return new RouteMatch(operation, path, //
+					instanceIndex < 0 ? -1 : offset + instanceIndex, //
+					bindingIndex < 0 ? -1 : offset + bindingIndex);
+		}
+	}
+}
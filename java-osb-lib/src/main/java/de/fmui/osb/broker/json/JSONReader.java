@@ -0,0 +1,121 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.json;
+
+import java.util.NoSuchElementException;
+
+import de.fmui.osb.broker.exceptions.BadRequestException;
+
+/**
+ * Pull parser that reads JSON text event by event, without building
+ * {@link JSONObject} and {@link JSONArray} objects.
+ * 
+ * <pre>
+ * JSONReader reader = request.getParametersReader();
+ * while (reader.hasNext()) {
+ * 	switch (reader.next()) {
+ * 	case KEY:
+ * 		String key = reader.getString();
+ * 		...
+ * 	}
+ * }
+ * </pre>
+ * 
+ * A JSONReader is NOT thread-safe.
+ */
+public interface JSONReader {
+
+	/**
+	 * Parser events.
+	 */
+	enum Event {
+		/** Start of an object. */
+		START_OBJECT,
+		/** End of an object. */
+		END_OBJECT,
+		/** Start of an array. */
+		START_ARRAY,
+		/** End of an array. */
+		END_ARRAY,
+		/** Key of an object field. */
+		KEY,
+		/** String value. */
+		VALUE_STRING,
+		/** Number value. */
+		VALUE_NUMBER,
+		/** {@code true} value. */
+		VALUE_TRUE,
+		/** {@code false} value. */
+		VALUE_FALSE,
+		/** {@code null} value. */
+		VALUE_NULL
+	}
+
+	/**
+	 * Returns whether there are more events.
+	 * 
+	 * @return {@code true} if there are more events, {@code false} if the JSON
+	 *         value has been read completely
+	 */
+	boolean hasNext();
+
+	/**
+	 * Reads the next event.
+	 * 
+	 * @return the next event
+	 * 
+	 * @throws BadRequestException
+	 *             if the JSON text is invalid or too deeply nested
+	 * @throws NoSuchElementException
+	 *             if there are no more events
+	 */
+	Event next() throws BadRequestException;
+
+	/**
+	 * Returns the key or the string value of the current event.
+	 * 
+	 * @return the key if the current event is {@link Event#KEY}, the string value
+	 *         if the current event is {@link Event#VALUE_STRING}
+	 * 
+	 * @throws IllegalStateException
+	 *             if the current event is neither {@link Event#KEY} nor
+	 *             {@link Event#VALUE_STRING}
+	 */
+	String getString();
+
+	/**
+	 * Returns the number value of the current event.
+	 * 
+	 * @return the number, either a {@link Long} or a {@link java.math.BigDecimal}
+	 * 
+	 * @throws IllegalStateException
+	 *             if the current event is not {@link Event#VALUE_NUMBER}
+	 */
+	Number getNumber();
+
+	/**
+	 * Skips a value without reading its content.
+	 * 
+	 * If the current event is {@link Event#START_OBJECT} or
+	 * {@link Event#START_ARRAY}, the reader moves to the matching end event. If
+	 * the current event is {@link Event#KEY}, the value of the field is skipped.
+	 * Otherwise, nothing happens.
+	 * 
+	 * @throws BadRequestException
+	 *             if the JSON text is invalid or too deeply nested
+	 */
+	void skipValue() throws BadRequestException;
+}
@@ -25,6 +25,7 @@ import de.fmui.osb.broker.internal.json.JSONArrayImpl;
 import de.fmui.osb.broker.internal.json.JSONObjectImpl;
 import de.fmui.osb.broker.internal.json.parser.JSONParseException;
 import de.fmui.osb.broker.internal.json.parser.JSONParser;
+import de.fmui.osb.broker.internal.json.parser.JSONParserPool;
 import de.fmui.osb.broker.json.JSONArray;
 import de.fmui.osb.broker.json.JSONObject;
 
@@ -197,6 +198,11 @@ public abstract class AbstractOpenServiceBrokerObject extends JSONObjectImpl imp
 			return null;
 		}
 
+		if (obj instanceof JSONArrayImpl) {
+			((JSONArrayImpl<?>) obj).checkElementClass(clazz);
+			return (JSONArray<T>) obj;
+		}
+
 		if (obj instanceof JSONArray) {
 			for (Object element : (JSONArray<Object>) obj) {
 				if (element != null && !clazz.isInstance(element)) {
@@ -377,11 +383,13 @@ public abstract class AbstractOpenServiceBrokerObject extends JSONObjectImpl imp
 			throw new IllegalArgumentException("Reader must not be null!");
 		}
 
-		JSONParser parser = new JSONParser();
+		JSONParser parser = JSONParserPool.getDefault().acquire();
 		try {
 			parser.parse(in, this);
 		} catch (JSONParseException e) {
 			throw new IOException("Invalid JSON!", e);
+		} finally {
+			JSONParserPool.getDefault().release(parser);
 		}
 	}
 
@@ -399,11 +407,13 @@ public abstract class AbstractOpenServiceBrokerObject extends JSONObjectImpl imp
 			throw new IllegalArgumentException("String must not be null or empty!");
 		}
 
-		JSONParser parser = new JSONParser();
+		JSONParser parser = JSONParserPool.getDefault().acquire();
 		try {
 			parser.parse(json, this);
 		} catch (JSONParseException e) {
 			throw new IOException("Invalid JSON!", e);
+		} finally {
+			JSONParserPool.getDefault().release(parser);
 		}
 	}
 }
@@ -30,6 +30,7 @@ public class Plan extends AbstractOpenServiceBrokerObject implements JSONObject
 	public final static String KEY_METADATA = "metadata";
 	public final static String KEY_FREE = "free";
 	public final static String KEY_BINDABLE = "bindable";
+	public final static String KEY_PLAN_UPDATEABLE = "plan_updateable";
 	public final static String KEY_SCHEMAS = "schemas";
 
 	public String getName() {
@@ -80,6 +81,14 @@ public class Plan extends AbstractOpenServiceBrokerObject implements JSONObject
 		put(KEY_BINDABLE, bindable);
 	}
 
+	public Boolean getPlanUpdateable() {
+		return getBoolean(KEY_PLAN_UPDATEABLE);
+	}
+
+	public void setPlanUpdateable(boolean updateable) {
+		put(KEY_PLAN_UPDATEABLE, updateable);
+	}
+
 	public Schemas getSchemas() {
 		return get(KEY_SCHEMAS, Schemas.class);
 	}
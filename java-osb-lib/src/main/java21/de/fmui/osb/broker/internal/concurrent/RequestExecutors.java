@@ -0,0 +1,44 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.internal.concurrent;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Factory for executors that run request handlers.
+ *
+ * This is the Java 21 implementation, which supports virtual threads.
+ */
+public final class RequestExecutors {
+
+	private RequestExecutors() {
+	}
+
+	/**
+	 * Returns whether this JVM supports virtual threads.
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return true;
+	}
+
+	/**
+	 * Creates an executor that starts a new virtual thread for each request.
+	 */
+	public static ExecutorService newVirtualThreadExecutor(String namePrefix) {
+		return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 1).factory());
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.StringWriter;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+import de.fmui.osb.broker.catalog.CatalogRequest;
+import de.fmui.osb.broker.catalog.CatalogResponse;
+import de.fmui.osb.broker.catalog.CatalogResponseBody;
+import de.fmui.osb.broker.exceptions.ConflictException;
+import de.fmui.osb.broker.exceptions.OpenServiceBrokerException;
+import de.fmui.osb.broker.handler.AsyncOpenServiceBrokerHandler;
+import de.fmui.osb.broker.helpers.AbstractTestHandler;
+import de.fmui.osb.broker.helpers.JSONHelper;
+import de.fmui.osb.broker.helpers.MockFactory;
+import de.fmui.osb.broker.json.JSONObject;
+
+public class AsyncHandlerTest {
+
+	@Test
+	public void testBlockingFallback() throws Exception {
+		OpenServiceBroker broker = new OpenServiceBroker();
+
+		HttpServletRequest request = MockFactory.createHttpServletRequest("GET", "/v2/catalog");
+		StringWriter stringWriter = new StringWriter();
+		HttpServletResponse response = MockFactory.createHttpServletResponse(stringWriter);
+
+		broker.processRequest(request, response, new AsyncOpenServiceBrokerHandlerAdapter(new CatalogHandler()));
+
+		assertEquals(200, response.getStatus());
+		JSONObject responseBody = JSONHelper.parse(stringWriter.toString());
+		assertNotNull(responseBody);
+	}
+
+	@Test
+	public void testAsyncRequest() throws Exception {
+		OpenServiceBroker broker = new OpenServiceBroker();
+		broker.setAsyncTimeout(5000);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+
+		HttpServletRequest request = MockFactory.createHttpServletRequest("GET", "/v2/catalog");
+		StringWriter stringWriter = new StringWriter();
+		HttpServletResponse response = MockFactory.createHttpServletResponse(stringWriter);
+		AsyncContext asyncContext = createAsyncContext(request);
+
+		broker.processRequest(request, response,
+				new AsyncOpenServiceBrokerHandlerAdapter(new CatalogHandler(), executor));
+
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+		verify(asyncContext, times(1)).setTimeout(5000);
+		verify(asyncContext, times(1)).complete();
+		assertEquals(200, response.getStatus());
+	}
+
+	@Test
+	public void testFailedStage() throws Exception {
+		OpenServiceBroker broker = new OpenServiceBroker();
+
+		HttpServletRequest request = MockFactory.createHttpServletRequest("GET", "/v2/catalog");
+		StringWriter stringWriter = new StringWriter();
+		HttpServletResponse response = MockFactory.createHttpServletResponse(stringWriter);
+		AsyncContext asyncContext = createAsyncContext(request);
+
+		AsyncOpenServiceBrokerHandler handler = new AsyncOpenServiceBrokerHandlerAdapter(new CatalogHandler()) {
+			@Override
+			public CompletionStage<CatalogResponse> getCatalog(CatalogRequest request)
+					throws OpenServiceBrokerException {
+				CompletableFuture<CatalogResponse> result = new CompletableFuture<CatalogResponse>();
+				result.completeExceptionally(new ConflictException("conflict"));
+				return result;
+			}
+		};
+
+		broker.processRequest(request, response, handler);
+
+		verify(asyncContext, times(1)).complete();
+		assertEquals(409, response.getStatus());
+
+		JSONObject responseBody = JSONHelper.parse(stringWriter.toString());
+		assertEquals("conflict", responseBody.get("description"));
+	}
+
+	@Test
+	public void testMissingResponse() throws Exception {
+		OpenServiceBroker broker = new OpenServiceBroker();
+
+		HttpServletRequest request = MockFactory.createHttpServletRequest("GET", "/v2/catalog");
+		StringWriter stringWriter = new StringWriter();
+		HttpServletResponse response = MockFactory.createHttpServletResponse(stringWriter);
+
+		AsyncOpenServiceBrokerHandler handler = new AsyncOpenServiceBrokerHandlerAdapter(new CatalogHandler()) {
+			@Override
+			public CompletionStage<CatalogResponse> getCatalog(CatalogRequest request)
+					throws OpenServiceBrokerException {
+				return CompletableFuture.completedFuture(null);
+			}
+		};
+
+		broker.processRequest(request, response, handler);
+
+		assertEquals(500, response.getStatus());
+	}
+
+	private AsyncContext createAsyncContext(HttpServletRequest request) {
+		AsyncContext asyncContext = mock(AsyncContext.class);
+		when(request.isAsyncSupported()).thenReturn(true);
+		when(request.startAsync(any(), any())).thenReturn(asyncContext);
+
+		return asyncContext;
+	}
+
+	static class CatalogHandler extends AbstractTestHandler {
+		@Override
+		public CatalogResponse getCatalog(CatalogRequest request) throws OpenServiceBrokerException {
+			return CatalogResponse.builder().ok().body(new CatalogResponseBody()).build();
+		}
+	}
+}
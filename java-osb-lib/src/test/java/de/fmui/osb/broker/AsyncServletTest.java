@@ -0,0 +1,236 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.StringWriter;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletConfig;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import de.fmui.osb.broker.catalog.CatalogRequest;
+import de.fmui.osb.broker.catalog.CatalogResponse;
+import de.fmui.osb.broker.catalog.CatalogResponseBody;
+import de.fmui.osb.broker.exceptions.OpenServiceBrokerException;
+import de.fmui.osb.broker.helpers.AbstractTestHandler;
+import de.fmui.osb.broker.helpers.JSONHelper;
+import de.fmui.osb.broker.helpers.MockFactory;
+import de.fmui.osb.broker.internal.concurrent.RequestExecutors;
+import de.fmui.osb.broker.json.JSONObject;
+
+public class AsyncServletTest {
+
+	@Test
+	public void testAsyncRequest() throws Exception {
+		TestServlet servlet = new TestServlet(new CountDownLatch(0));
+		servlet.setAsyncExecutor(servlet.createAsyncExecutor(1, 1));
+
+		HttpServletRequest request = MockFactory.createHttpServletRequest("GET", "/v2/catalog");
+		StringWriter stringWriter = new StringWriter();
+		HttpServletResponse response = MockFactory.createHttpServletResponse(stringWriter);
+		AsyncContext asyncContext = createAsyncContext(request, response);
+
+		servlet.service(request, response);
+
+		servlet.getAsyncExecutor().shutdown();
+		assertTrue(servlet.getAsyncExecutor().awaitTermination(10, TimeUnit.SECONDS));
+
+		verify(asyncContext, times(1)).complete();
+		assertEquals(200, response.getStatus());
+	}
+
+	@Test
+	public void testRejectedRequest() throws Exception {
+		TestServlet servlet = new TestServlet(new CountDownLatch(0));
+		ExecutorService executor = servlet.createAsyncExecutor(1, 1);
+		executor.shutdown();
+		servlet.setAsyncExecutor(executor);
+
+		HttpServletRequest request = MockFactory.createHttpServletRequest("GET", "/v2/catalog");
+		StringWriter stringWriter = new StringWriter();
+		HttpServletResponse response = MockFactory.createHttpServletResponse(stringWriter);
+		AsyncContext asyncContext = createAsyncContext(request, response);
+
+		servlet.service(request, response);
+
+		verify(asyncContext, times(1)).complete();
+		assertEquals(503, response.getStatus());
+
+		JSONObject responseBody = JSONHelper.parse(stringWriter.toString());
+		assertEquals("ServiceUnavailable", responseBody.get("error"));
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		CountDownLatch latch = new CountDownLatch(1);
+		TestServlet servlet = new TestServlet(latch);
+		servlet.setAsyncExecutor(servlet.createAsyncExecutor(1, 1));
+
+		HttpServletRequest request = MockFactory.createHttpServletRequest("GET", "/v2/catalog");
+		StringWriter stringWriter = new StringWriter();
+		HttpServletResponse response = MockFactory.createHttpServletResponse(stringWriter);
+		AsyncContext asyncContext = createAsyncContext(request, response);
+
+		servlet.service(request, response);
+
+		// fire the timeout while the handler is still blocked
+		ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass(AsyncListener.class);
+		verify(asyncContext).addListener(listener.capture());
+		listener.getValue().onTimeout(null);
+
+		// let the handler finish, it must not overwrite the response
+		latch.countDown();
+		servlet.getAsyncExecutor().shutdown();
+		assertTrue(servlet.getAsyncExecutor().awaitTermination(10, TimeUnit.SECONDS));
+
+		verify(asyncContext, times(1)).complete();
+		assertEquals(503, response.getStatus());
+
+		JSONObject responseBody = JSONHelper.parse(stringWriter.toString());
+		assertEquals("ServiceUnavailable", responseBody.get("error"));
+	}
+
+	@Test
+	public void testCompletedWhileQueued() throws Exception {
+		CountDownLatch latch = new CountDownLatch(1);
+		TestServlet servlet = new TestServlet(latch);
+		servlet.setAsyncExecutor(servlet.createAsyncExecutor(1, 2));
+
+		// the first request blocks the only thread
+		HttpServletRequest request1 = MockFactory.createHttpServletRequest("GET", "/v2/catalog");
+		HttpServletResponse response1 = MockFactory.createHttpServletResponse(new StringWriter());
+		createAsyncContext(request1, response1);
+		servlet.service(request1, response1);
+
+		// the second request times out and the third fails while they are queued
+		HttpServletRequest request2 = MockFactory.createHttpServletRequest("GET", "/v2/catalog");
+		StringWriter stringWriter2 = new StringWriter();
+		HttpServletResponse response2 = MockFactory.createHttpServletResponse(stringWriter2);
+		AsyncContext asyncContext2 = createAsyncContext(request2, response2);
+		servlet.service(request2, response2);
+
+		HttpServletRequest request3 = MockFactory.createHttpServletRequest("GET", "/v2/catalog");
+		HttpServletResponse response3 = MockFactory.createHttpServletResponse(new StringWriter());
+		AsyncContext asyncContext3 = createAsyncContext(request3, response3);
+		servlet.service(request3, response3);
+
+		ArgumentCaptor<AsyncListener> listener2 = ArgumentCaptor.forClass(AsyncListener.class);
+		verify(asyncContext2).addListener(listener2.capture());
+		listener2.getValue().onTimeout(null);
+
+		ArgumentCaptor<AsyncListener> listener3 = ArgumentCaptor.forClass(AsyncListener.class);
+		verify(asyncContext3).addListener(listener3.capture());
+		listener3.getValue().onError(null);
+		verify(asyncContext3, times(1)).complete();
+
+		latch.countDown();
+		servlet.getAsyncExecutor().shutdown();
+		assertTrue(servlet.getAsyncExecutor().awaitTermination(10, TimeUnit.SECONDS));
+
+		// only the first request reached the handler
+		assertEquals(1, servlet.getCalls());
+		assertEquals(200, response1.getStatus());
+		verify(asyncContext2, times(1)).complete();
+		assertEquals(503, response2.getStatus());
+		assertEquals("ServiceUnavailable", JSONHelper.parse(stringWriter2.toString()).get("error"));
+		verify(asyncContext3, times(1)).complete();
+	}
+
+	@Test
+	public void testVirtualThreadParameter() throws Exception {
+		ServletConfig config = mock(ServletConfig.class);
+		when(config.getInitParameter(OpenServiceBrokerServlet.PARAM_ASYNC)).thenReturn("true");
+		when(config.getInitParameter(OpenServiceBrokerServlet.PARAM_ASYNC_VIRTUAL_THREADS)).thenReturn("true");
+
+		TestServlet servlet = new TestServlet(new CountDownLatch(0));
+		servlet.init(config);
+
+		// the thread pool is the fallback on Java versions without virtual threads
+		assertEquals(!RequestExecutors.isVirtualThreadSupported(),
+				servlet.getAsyncExecutor() instanceof ThreadPoolExecutor);
+
+		HttpServletRequest request = MockFactory.createHttpServletRequest("GET", "/v2/catalog");
+		StringWriter stringWriter = new StringWriter();
+		HttpServletResponse response = MockFactory.createHttpServletResponse(stringWriter);
+		AsyncContext asyncContext = createAsyncContext(request, response);
+
+		servlet.service(request, response);
+
+		ExecutorService executor = servlet.getAsyncExecutor();
+		servlet.destroy();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+		verify(asyncContext, times(1)).complete();
+		assertEquals(200, response.getStatus());
+	}
+
+	private AsyncContext createAsyncContext(HttpServletRequest request, HttpServletResponse response) {
+		AsyncContext asyncContext = mock(AsyncContext.class);
+		when(request.isAsyncSupported()).thenReturn(true);
+		when(request.startAsync(any(), any())).thenReturn(asyncContext);
+
+		return asyncContext;
+	}
+
+	static class TestServlet extends OpenServiceBrokerServlet {
+		private static final long serialVersionUID = 1L;
+
+		private final AtomicInteger calls;
+
+		public TestServlet(final CountDownLatch latch) {
+			this(latch, new AtomicInteger());
+		}
+
+		private TestServlet(final CountDownLatch latch, final AtomicInteger calls) {
+			super(new AbstractTestHandler() {
+				@Override
+				public CatalogResponse getCatalog(CatalogRequest request) throws OpenServiceBrokerException {
+					calls.incrementAndGet();
+					try {
+						latch.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+
+					return CatalogResponse.builder().ok().body(new CatalogResponseBody()).build();
+				}
+			});
+			this.calls = calls;
+		}
+
+		public int getCalls() {
+			return calls.get();
+		}
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import de.fmui.osb.broker.internal.io.BodyBuffer;
+import de.fmui.osb.broker.internal.io.BufferPool;
+import de.fmui.osb.broker.internal.io.IOUtils;
+import de.fmui.osb.broker.internal.json.JSONObjectImpl;
+import de.fmui.osb.broker.internal.json.parser.JSONParser;
+
+public class BufferPoolTest {
+
+	@Test
+	public void testBufferSize() {
+		assertEquals(BufferPool.DEFAULT_BUFFER_SIZE, BufferPool.bufferSize(-1));
+		assertEquals(BufferPool.DEFAULT_BUFFER_SIZE, BufferPool.bufferSize(0));
+		assertEquals(BufferPool.MIN_BUFFER_SIZE, BufferPool.bufferSize(1));
+		assertEquals(BufferPool.MIN_BUFFER_SIZE, BufferPool.bufferSize(1024));
+		assertEquals(2048, BufferPool.bufferSize(1025));
+		assertEquals(64 * 1024, BufferPool.bufferSize(64 * 1024));
+		assertEquals(128 * 1024, BufferPool.bufferSize(64 * 1024 + 1));
+	}
+
+	@Test
+	public void testReuse() {
+		BufferPool pool = new BufferPool(1);
+
+		byte[] b1 = pool.getBytes(300);
+		assertEquals(BufferPool.MIN_BUFFER_SIZE, b1.length);
+		pool.release(b1);
+		assertSame(b1, pool.getBytes(500));
+
+		char[] c1 = pool.getChars(3000);
+		assertEquals(4096, c1.length);
+		pool.release(c1);
+		assertSame(c1, pool.getChars(4000));
+
+		assertEquals(2, pool.getHits());
+		assertEquals(2, pool.getMisses());
+		assertEquals(2, pool.getReturns());
+		assertEquals(0, pool.getIdleBuffers());
+	}
+
+	@Test
+	public void testBounds() {
+		BufferPool pool = new BufferPool(1);
+
+		// only one idle buffer per size class
+		byte[] b1 = pool.getBytes(100);
+		byte[] b2 = pool.getBytes(100);
+		assertNotSame(b1, b2);
+		pool.release(b1);
+		pool.release(b2);
+		assertEquals(1, pool.getReturns());
+		assertEquals(1, pool.getDrops());
+		assertEquals(1, pool.getIdleBuffers());
+
+		// large and odd sized buffers are not pooled
+		byte[] large = pool.getBytes(1024 * 1024);
+		assertEquals(1024 * 1024, large.length);
+		pool.release(large);
+		pool.release(new byte[1000]);
+		assertEquals(3, pool.getDrops());
+		assertEquals(1, pool.getIdleBuffers());
+	}
+
+	@Test
+	public void testBodyBuffer() throws Exception {
+		BufferPool pool = new BufferPool(4);
+		String json = "{\"a\": \"äöü€\", \"b\": [1, 2, 3]}";
+		byte[] bytes = IOUtils.toUTF8Bytes(json);
+
+		// correct, unknown and wrong content length
+		for (long contentLength : new long[] { bytes.length, -1, 0, 3, 5000 }) {
+			BodyBuffer body = new BodyBuffer(new ByteArrayInputStream(bytes), contentLength, 1000, pool);
+			assertEquals(bytes.length, body.getLength());
+			assertEquals(json, new String(body.getBytes(), 0, body.getLength(), StandardCharsets.UTF_8));
+
+			JSONObjectImpl obj = new JSONParser().parse(body.getBytes(), body.getLength(), new JSONObjectImpl());
+			assertEquals("äöü€", obj.get("a"));
+			body.release();
+		}
+
+		assertTrue(pool.getHits() > 0);
+
+		// a huge content length doesn't allocate a huge buffer up front
+		BodyBuffer body = new BodyBuffer(new ByteArrayInputStream(bytes), 8 * 1024 * 1024, 8 * 1024 * 1024, pool);
+		assertEquals(bytes.length, body.getLength());
+		assertTrue(body.getBytes().length <= BufferPool.DEFAULT_BUFFER_SIZE);
+		body.release();
+	}
+
+	@Test
+	public void testBodyBufferGrowth() throws Exception {
+		BufferPool pool = new BufferPool(4);
+		byte[] bytes = new byte[100 * 1024];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) ('a' + (i % 26));
+		}
+
+		BodyBuffer body = new BodyBuffer(new ByteArrayInputStream(bytes), -1, bytes.length, pool);
+		assertEquals(bytes.length, body.getLength());
+		for (int i = 0; i < bytes.length; i++) {
+			assertEquals(bytes[i], body.getBytes()[i]);
+		}
+		body.release();
+	}
+
+	@Test
+	public void testBodyBufferLimit() throws Exception {
+		BufferPool pool = new BufferPool(4);
+		InputStream in = new ByteArrayInputStream(new byte[2049]);
+
+		try {
+			new BodyBuffer(in, -1, 2048, pool);
+			fail("Limit not enforced!");
+		} catch (IOException e) {
+			// expected
+		}
+
+		// the buffers have been returned
+		assertEquals(pool.getMisses(), pool.getReturns() + pool.getDrops());
+	}
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.fmui.osb.broker.catalog.CatalogResponseBody;
+import de.fmui.osb.broker.helpers.JSONHelper;
+import de.fmui.osb.broker.internal.json.CompactMap;
+import de.fmui.osb.broker.internal.json.JSONArrayImpl;
+import de.fmui.osb.broker.internal.json.JSONObjectImpl;
+import de.fmui.osb.broker.objects.Plan;
+import de.fmui.osb.broker.objects.Service;
+
+public class CompactMapTest {
+
+	@Test
+	public void testAgainstLinkedHashMap() {
+		Random random = new Random(42);
+
+		for (int round = 0; round < 50; round++) {
+			Map<String, Object> expected = new LinkedHashMap<String, Object>();
+			CompactMap<String, Object> map = new CompactMap<String, Object>();
+			int keyRange = 1 + random.nextInt(40);
+
+			for (int op = 0; op < 500; op++) {
+				String key = random.nextInt(20) == 0 ? null : "key-" + random.nextInt(keyRange);
+				switch (random.nextInt(6)) {
+				case 0:
+				case 1:
+				case 2:
+					assertEquals(expected.put(key, op), map.put(key, op));
+					break;
+				case 3:
+					assertEquals(expected.remove(key), map.remove(key));
+					break;
+				case 4:
+					assertEquals(expected.containsKey(key), map.containsKey(key));
+					assertEquals(expected.get(key), map.get(key));
+					break;
+				default:
+					// remove every third entry through the iterator
+					Iterator<Map.Entry<String, Object>> ei = expected.entrySet().iterator();
+					Iterator<Map.Entry<String, Object>> mi = map.entrySet().iterator();
+					int n = 0;
+					while (ei.hasNext()) {
+						assertTrue(mi.hasNext());
+						assertEquals(ei.next(), mi.next());
+						if (n++ % 3 == 0) {
+							ei.remove();
+							mi.remove();
+						}
+					}
+					assertFalse(mi.hasNext());
+				}
+
+				assertEquals(expected.size(), map.size());
+			}
+
+			assertEquals(expected, map);
+			assertEquals(map, expected);
+			assertEquals(expected.hashCode(), map.hashCode());
+			assertEquals(new ArrayList<String>(expected.keySet()), new ArrayList<String>(map.keySet()));
+			assertEquals(new ArrayList<Object>(expected.values()), new ArrayList<Object>(map.values()));
+			assertEquals(expected.toString(), map.toString());
+		}
+	}
+
+	@Test
+	public void testEntries() {
+		CompactMap<String, Object> map = new CompactMap<String, Object>();
+		for (int i = 0; i < 20; i++) {
+			map.put("k" + i, i);
+		}
+
+		for (Map.Entry<String, Object> entry : map.entrySet()) {
+			entry.setValue("v" + entry.getValue());
+		}
+		assertEquals("v7", map.get("k7"));
+
+		List<String> keys = new ArrayList<String>();
+		map.forEach((k, v) -> keys.add(k));
+		assertEquals(20, keys.size());
+		assertEquals("k19", keys.get(19));
+
+		try {
+			for (String key : map.keySet()) {
+				map.remove(key);
+			}
+			throw new AssertionError("No ConcurrentModificationException!");
+		} catch (ConcurrentModificationException e) {
+			// expected
+		}
+
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.get("k1"));
+		map.put("a", 1);
+		assertEquals(1, map.get("a"));
+	}
+
+	@Test(timeout = 10000)
+	public void testCollidingKeys() {
+		// "Aa" and "BB" have the same hash code, and so have all strings
+		// made of the same number of these blocks
+		List<String> keys = new ArrayList<String>();
+		for (int i = 0; i < (1 << 16); i++) {
+			StringBuilder sb = new StringBuilder();
+			for (int b = 0; b < 16; b++) {
+				sb.append((i & (1 << b)) == 0 ? "Aa" : "BB");
+			}
+			keys.add(sb.toString());
+		}
+		assertEquals(keys.get(0).hashCode(), keys.get(keys.size() - 1).hashCode());
+
+		CompactMap<String, Object> map = new CompactMap<String, Object>();
+		for (int i = 0; i < keys.size(); i++) {
+			map.put(keys.get(i), i);
+		}
+		assertEquals(keys.size(), map.size());
+		for (int i = 0; i < keys.size(); i++) {
+			assertEquals(i, map.get(keys.get(i)));
+		}
+		assertNull(map.get("AaAa"));
+
+		// insertion order survives the index switch
+		Iterator<String> it = map.keySet().iterator();
+		for (int i = 0; i < 100; i++) {
+			assertEquals(keys.get(i), it.next());
+		}
+
+		// positions shift after a removal
+		map.remove(keys.get(0));
+		assertNull(map.get(keys.get(0)));
+		assertEquals(1, map.get(keys.get(1)));
+		assertEquals(keys.size() - 1, map.get(keys.get(keys.size() - 1)));
+
+		@SuppressWarnings("unchecked")
+		CompactMap<String, Object> clone = (CompactMap<String, Object>) map.clone();
+		clone.put("extra", "x");
+		assertEquals(keys.size() - 1, map.size());
+		assertNull(map.get("extra"));
+		assertEquals(2, clone.get(keys.get(2)));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testCloneAndSerialization() throws Exception {
+		Plan plan = new Plan();
+		for (int i = 0; i < 12; i++) {
+			plan.put("key-" + i, "value-" + i);
+		}
+		plan.setID("id-1");
+
+		Plan clone = (Plan) plan.clone();
+		assertEquals(plan, clone);
+		clone.setID("id-2");
+		assertEquals("id-1", plan.getID());
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(plan);
+		}
+
+		Map<String, Object> copy;
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			copy = (Map<String, Object>) in.readObject();
+		}
+
+		assertEquals(Plan.class, copy.getClass());
+		assertEquals(plan, copy);
+		assertEquals("value-11", copy.get("key-11"));
+		assertEquals(plan.toJSONString(), ((Plan) copy).toJSONString());
+	}
+
+	@Test
+	public void testFreeze() throws Exception {
+		CatalogResponseBody catalog = new CatalogResponseBody();
+		try (Reader r = JSONHelper.getJSONReader("/json/catalog.json")) {
+			catalog.load(r);
+		}
+		catalog.getServices().get(0).put("extra", new ArrayList<Object>(Arrays.asList("a", new HashMap<String, Object>())));
+		String json = catalog.toJSONString();
+		int hashCode = catalog.hashCode();
+
+		catalog.freeze();
+		assertTrue(catalog.isFrozen());
+		assertEquals(json, catalog.toJSONString());
+		assertEquals(hashCode, catalog.hashCode());
+
+		Service service = catalog.getServices().get(0);
+		Plan plan = service.getPlans().get(0);
+		assertTrue(service.isFrozen());
+		assertTrue(plan.isFrozen());
+		assertTrue(((JSONArrayImpl<?>) catalog.getServices()).isFrozen());
+		assertTrue(((JSONArrayImpl<?>) service.get("extra")).isFrozen());
+		assertTrue(((JSONObjectImpl) ((List<?>) service.get("extra")).get(1)).isFrozen());
+
+		assertFrozen(() -> catalog.put("key", "value"));
+		assertFrozen(() -> catalog.remove(CatalogResponseBody.KEY_SERVICES));
+		assertFrozen(() -> catalog.clear());
+		assertFrozen(() -> catalog.entrySet().iterator().next().setValue(null));
+		assertFrozen(() -> {
+			Iterator<String> iterator = catalog.keySet().iterator();
+			iterator.next();
+			iterator.remove();
+		});
+		assertFrozen(() -> service.setName("new-name"));
+		assertFrozen(() -> plan.setFree(false));
+		assertFrozen(() -> catalog.addService(new Service()));
+		assertFrozen(() -> service.getPlans().remove(0));
+		assertFrozen(() -> service.getPlans().subList(0, 1).clear());
+		assertFrozen(() -> {
+			Iterator<Plan> iterator = service.getPlans().iterator();
+			iterator.next();
+			iterator.remove();
+		});
+		assertFrozen(() -> service.getPlans().sort(null));
+
+		// copies are mutable
+		Plan copy = (Plan) plan.clone();
+		copy.setFree(false);
+		assertFalse(copy.isFrozen());
+	}
+
+	@Test
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void testCheckedElementClass() {
+		Service service = new Service();
+		service.addPlan(new Plan(), new Plan());
+		assertEquals(2, service.getPlans().size());
+		assertEquals(2, service.getArray(Service.KEY_PLANS, Object.class).size());
+
+		// sneak in an invalid element
+		List raw = service.getPlans();
+		raw.add("not a plan");
+		try {
+			service.getPlans();
+			throw new AssertionError("Invalid element not detected!");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		raw.remove(2);
+		assertEquals(2, service.getPlans().size());
+
+		raw.set(0, new Service());
+		try {
+			service.getPlans();
+			throw new AssertionError("Invalid element not detected!");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		raw.set(0, new Plan());
+		assertEquals(2, service.getPlans().size());
+
+		// sub-lists can replace elements without the array noticing
+		List view = raw.subList(0, 1);
+		assertEquals(2, service.getPlans().size());
+		view.set(0, "not a plan");
+		try {
+			service.getPlans();
+			throw new AssertionError("Invalid element not detected!");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	private static void assertFrozen(Runnable modification) {
+		try {
+			modification.run();
+			throw new AssertionError("Modification of a frozen object succeeded!");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+}
@@ -17,13 +17,30 @@ package de.fmui.osb.broker;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.junit.Test;
 
+import de.fmui.osb.broker.catalog.CatalogRequest;
+import de.fmui.osb.broker.catalog.CatalogResponse;
+import de.fmui.osb.broker.exceptions.OpenServiceBrokerException;
+import de.fmui.osb.broker.exceptions.UnauthorizedException;
+import de.fmui.osb.broker.handler.Authenticator;
+import de.fmui.osb.broker.helpers.AbstractTestHandler;
+import de.fmui.osb.broker.helpers.MockFactory;
+
 public class CredentialsTest {
 
 	@Test
@@ -48,4 +65,105 @@ public class CredentialsTest {
 		assertNotNull(credentials.getHttpServletRequest());
 		assertEquals("123", credentials.getToken());
 	}
+
+	@Test
+	public void testCachingAuthenticator() throws Exception {
+		AtomicInteger calls = new AtomicInteger();
+		Authenticator authenticator = new Authenticator() {
+			@Override
+			public String authenticate(RequestCredentials credentials) throws OpenServiceBrokerException {
+				calls.incrementAndGet();
+				BasicAuthCredentials basic = (BasicAuthCredentials) credentials;
+				if (!"pass".equals(basic.getPassword())) {
+					throw new UnauthorizedException();
+				}
+				return basic.getUsername();
+			}
+		};
+
+		CachingAuthenticator cache = new CachingAuthenticator(authenticator, 60000, 2);
+
+		// the first request is verified, the second one comes from the cache
+		assertEquals("user", cache.authenticate(basicCredentials("user", "pass")));
+		assertEquals("user", cache.authenticate(basicCredentials("user", "pass")));
+		assertEquals(1, calls.get());
+
+		// failures are not cached
+		for (int i = 0; i < 2; i++) {
+			try {
+				cache.authenticate(basicCredentials("user", "wrong"));
+				fail("Wrong password accepted!");
+			} catch (UnauthorizedException e) {
+				// expected
+			}
+		}
+		assertEquals(3, calls.get());
+		assertEquals(1, cache.size());
+
+		// the cache is bounded
+		cache.authenticate(basicCredentials("user2", "pass"));
+		cache.authenticate(basicCredentials("user3", "pass"));
+		assertEquals(2, cache.size());
+
+		cache.clear();
+		assertEquals(0, cache.size());
+
+		// expired entries are verified again
+		CachingAuthenticator shortCache = new CachingAuthenticator(authenticator, 1, 10);
+		calls.set(0);
+		shortCache.authenticate(basicCredentials("user", "pass"));
+		Thread.sleep(5);
+		shortCache.authenticate(basicCredentials("user", "pass"));
+		assertEquals(2, calls.get());
+	}
+
+	@Test
+	public void testBrokerAuthenticator() throws Exception {
+		OpenServiceBroker osb = new OpenServiceBroker();
+		osb.setAuthenticator(new Authenticator() {
+			@Override
+			public String authenticate(RequestCredentials credentials) throws OpenServiceBrokerException {
+				if (!credentials.isBasicAuthentication()) {
+					throw new UnauthorizedException();
+				}
+				return ((BasicAuthCredentials) credentials).getUsername();
+			}
+		});
+
+		AtomicReference<String> principal = new AtomicReference<>();
+		HttpServletRequest request = MockFactory.createHttpServletRequest("GET", "/v2/catalog");
+		HttpServletResponse response = MockFactory.createHttpServletResponse(new StringWriter());
+		osb.processRequest(request, response, new AbstractTestHandler() {
+			@Override
+			public CatalogResponse getCatalog(CatalogRequest request) throws OpenServiceBrokerException {
+				principal.set(request.getCredentials().getPrincipal());
+				return null;
+			}
+		});
+		assertEquals("user", principal.get());
+
+		// rejected before the handler is called
+		principal.set(null);
+		request = MockFactory.createHttpServletRequest("GET", "/v2/catalog");
+		when(request.getHeader("Authorization")).thenReturn("bearer 123");
+		response = MockFactory.createHttpServletResponse(new StringWriter());
+		osb.processRequest(request, response, new AbstractTestHandler() {
+			@Override
+			public CatalogResponse getCatalog(CatalogRequest request) throws OpenServiceBrokerException {
+				principal.set(request.getCredentials().getPrincipal());
+				return null;
+			}
+		});
+		assertEquals(401, response.getStatus());
+		assertNull(principal.get());
+	}
+
+	private static BasicAuthCredentials basicCredentials(String username, String password) {
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		String encoded = Base64.getEncoder()
+				.encodeToString((username + ":" + password).getBytes(StandardCharsets.ISO_8859_1));
+		when(request.getHeader("Authorization")).thenReturn("Basic " + encoded);
+
+		return BasicAuthCredentials.createCredentialsFromRequest(request);
+	}
 }
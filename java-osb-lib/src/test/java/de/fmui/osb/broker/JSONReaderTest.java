@@ -0,0 +1,292 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+import de.fmui.osb.broker.exceptions.BadRequestException;
+import de.fmui.osb.broker.exceptions.OpenServiceBrokerException;
+import de.fmui.osb.broker.handler.StreamingParametersHandler;
+import de.fmui.osb.broker.helpers.AbstractTestHandler;
+import de.fmui.osb.broker.helpers.MockFactory;
+import de.fmui.osb.broker.instance.ProvisionRequest;
+import de.fmui.osb.broker.instance.ProvisionResponse;
+import de.fmui.osb.broker.instance.ProvisionResponseBody;
+import de.fmui.osb.broker.internal.io.BufferPool;
+import de.fmui.osb.broker.internal.json.JSONArrayImpl;
+import de.fmui.osb.broker.internal.json.JSONObjectImpl;
+import de.fmui.osb.broker.internal.json.RawJSONValue;
+import de.fmui.osb.broker.internal.json.parser.JSONParseException;
+import de.fmui.osb.broker.internal.json.parser.JSONParser;
+import de.fmui.osb.broker.internal.json.parser.JSONPullParser;
+import de.fmui.osb.broker.json.JSONReader;
+import de.fmui.osb.broker.json.JSONReader.Event;
+
+public class JSONReaderTest {
+
+	@Test
+	public void testSameResult() throws Exception {
+		String[] jsons = new String[] { //
+				"{}", //
+				" { \"a\" : \"b\" } ", //
+				"{\"a\":\"b\",\"c\":[1,2,3],\"d\":{\"e\":null,\"f\":true,\"g\":false}}", //
+				"{\"n\": [0, -12, 1234567890123456789], \"d\": [1.5, 1E-3]}", //
+				"{\"s\": \"\\\"\\\\\\/\\n\\u0041\\u20AC\", \"u\": \"äöü € 😀\"}", //
+				// the reader is as lenient with separators as the parser
+				"{\"a\" \"b\" \"c\" 1,, \"d\" [1 2 , 3]}", //
+				"{\"a\":{\"b\":{\"c\":[[[{\"d\":[]}]]]}}}" };
+
+		for (String json : jsons) {
+			JSONObjectImpl expected = new JSONParser().parse(json, new JSONObjectImpl());
+			assertEquals(json, expected, read(createReader(json)));
+		}
+	}
+
+	@Test
+	public void testEvents() throws Exception {
+		JSONReader reader = createReader("{\"a\": [\"x\", 1, 2.5, true, false, null], \"b\": {}}");
+
+		assertEquals(Event.START_OBJECT, reader.next());
+		assertEquals(Event.KEY, reader.next());
+		assertEquals("a", reader.getString());
+		assertEquals(Event.START_ARRAY, reader.next());
+		assertEquals(Event.VALUE_STRING, reader.next());
+		assertEquals("x", reader.getString());
+		assertEquals(Event.VALUE_NUMBER, reader.next());
+		assertEquals(1L, reader.getNumber());
+		assertEquals(Event.VALUE_NUMBER, reader.next());
+		assertEquals(2.5, reader.getNumber().doubleValue(), 0.0);
+		assertEquals(Event.VALUE_TRUE, reader.next());
+		assertEquals(Event.VALUE_FALSE, reader.next());
+		assertEquals(Event.VALUE_NULL, reader.next());
+		assertEquals(Event.END_ARRAY, reader.next());
+		assertEquals(Event.KEY, reader.next());
+		assertEquals(Event.START_OBJECT, reader.next());
+		assertEquals(Event.END_OBJECT, reader.next());
+		assertTrue(reader.hasNext());
+		assertEquals(Event.END_OBJECT, reader.next());
+		assertFalse(reader.hasNext());
+
+		try {
+			reader.getNumber();
+			fail("Number of END_OBJECT!");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testSkipValue() throws Exception {
+		JSONReader reader = createReader("{\"a\": {\"b\": [1, {\"c\": 2}]}, \"d\": [3], \"e\": 4}");
+
+		assertEquals(Event.START_OBJECT, reader.next());
+		assertEquals(Event.KEY, reader.next());
+		reader.skipValue();
+		assertEquals(Event.KEY, reader.next());
+		assertEquals("d", reader.getString());
+		assertEquals(Event.START_ARRAY, reader.next());
+		reader.skipValue();
+		assertEquals(Event.KEY, reader.next());
+		assertEquals("e", reader.getString());
+		reader.skipValue();
+		assertEquals(Event.END_OBJECT, reader.next());
+		assertFalse(reader.hasNext());
+	}
+
+	@Test
+	public void testInvalidJSON() throws Exception {
+		String[] jsons = new String[] { "", "{", "{\"a\": }", "{\"a\" 1 \"b\"}", "[1, 2}", "{1: 2}", "{} {}",
+				"{\"a\": tru}" };
+
+		for (String json : jsons) {
+			try {
+				read(createReader(json));
+				fail("Invalid JSON accepted: " + json);
+			} catch (BadRequestException e) {
+				// expected
+			}
+		}
+
+		StringBuilder deep = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			deep.append('[');
+		}
+		try {
+			read(createReader(deep.toString()));
+			fail("Too deep JSON accepted!");
+		} catch (BadRequestException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testRawValues() throws Exception {
+		String parameters = "{\"x\": [1, 2, {\"y\": \"ä\"}], \"z\": null}";
+		String json = "{\"a\": 1, \"parameters\": " + parameters + ", \"nested\": {\"parameters\": {}}}";
+		byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+
+		JSONObjectImpl obj = new JSONParser().parse(bytes, bytes.length, new JSONObjectImpl(),
+				Collections.singleton("parameters"));
+		assertEquals(1L, obj.get("a"));
+		assertTrue(obj.get("parameters") instanceof RawJSONValue);
+		assertEquals(parameters, ((RawJSONValue) obj.get("parameters")).getText());
+		assertTrue(((JSONObjectImpl) obj.get("nested")).get("parameters") instanceof JSONObjectImpl);
+
+		JSONObjectImpl expected = new JSONParser().parse(parameters, new JSONObjectImpl());
+		assertEquals(expected.toJSONString(), ((RawJSONValue) obj.get("parameters")).toJSONString());
+		assertEquals(expected, read(((RawJSONValue) obj.get("parameters")).createReader()));
+
+		// raw values are validated
+		String[] invalid = new String[] { "{\"parameters\": {\"x\" ]}", "{\"parameters\": [1, {]}",
+				"{\"parameters\": {\"a\" \"b\" \"c\"}}" };
+		for (String s : invalid) {
+			bytes = s.getBytes(StandardCharsets.UTF_8);
+			try {
+				new JSONParser().parse(bytes, bytes.length, new JSONObjectImpl(), Collections.singleton("parameters"));
+				fail("Invalid JSON accepted: " + s);
+			} catch (JSONParseException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testStreamingParameters() throws Exception {
+		String json = "{\"service_id\": \"s1\", \"plan_id\": \"p1\", \"organization_guid\": \"o1\", "
+				+ "\"space_guid\": \"s1\", \"parameters\": {\"size\": 42, \"list\": [1, 2]}}";
+
+		class StreamingHandler extends AbstractTestHandler implements StreamingParametersHandler {
+			private boolean streaming;
+
+			@Override
+			public boolean isStreamingParameters(OpenServiceBrokerRequest request) {
+				return streaming && request instanceof ProvisionRequest;
+			}
+
+			@Override
+			public ProvisionResponse provision(ProvisionRequest request) throws OpenServiceBrokerException {
+				assertEquals("p1", request.getRequestBody().getPlanID());
+				if (streaming) {
+					assertNull(request.getRequestBody().getParameters());
+
+					JSONReader reader = request.getParametersReader();
+					assertNotNull(reader);
+					assertEquals(Event.START_OBJECT, reader.next());
+					assertEquals(Event.KEY, reader.next());
+					assertEquals("size", reader.getString());
+					assertEquals(Event.VALUE_NUMBER, reader.next());
+					assertEquals(42L, reader.getNumber());
+
+					// each call returns a new reader
+					assertEquals(Event.START_OBJECT, request.getParametersReader().next());
+				} else {
+					assertNull(request.getParametersReader());
+					assertEquals(42L, request.getRequestBody().getParameters().get("size"));
+				}
+
+				return ProvisionResponse.builder().created().body(new ProvisionResponseBody()).build();
+			}
+		}
+
+		StreamingHandler handler = new StreamingHandler();
+		OpenServiceBroker osb = new OpenServiceBroker();
+
+		for (boolean streaming : new boolean[] { true, false }) {
+			handler.streaming = streaming;
+
+			HttpServletRequest request = MockFactory.createHttpServletRequest("PUT", "/v2/service_instances/123",
+					json);
+			HttpServletResponse response = MockFactory.createHttpServletResponse(new StringWriter());
+			osb.processRequest(request, response, handler);
+
+			assertEquals(201, response.getStatus());
+		}
+
+		// the body buffer goes back to the pool if the request is rejected
+		handler.streaming = true;
+		BufferPool pool = BufferPool.getDefault();
+		long taken = pool.getHits() + pool.getMisses();
+		long released = pool.getReturns() + pool.getDrops();
+
+		HttpServletRequest request = MockFactory.createHttpServletRequest("PUT", "/v2/service_instances/123",
+				json.replace("\"plan_id\": \"p1\", ", ""));
+		HttpServletResponse response = MockFactory.createHttpServletResponse(new StringWriter());
+		osb.processRequest(request, response, handler);
+
+		assertEquals(400, response.getStatus());
+		assertEquals(pool.getHits() + pool.getMisses() - taken, pool.getReturns() + pool.getDrops() - released);
+	}
+
+	private static JSONReader createReader(String json) {
+		byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+		return new JSONPullParser(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Builds objects from reader events.
+	 */
+	private static Object read(JSONReader reader) throws BadRequestException {
+		Object result = readValue(reader, reader.next());
+		assertFalse(reader.hasNext());
+		return result;
+	}
+
+	private static Object readValue(JSONReader reader, Event event) throws BadRequestException {
+		switch (event) {
+		case START_OBJECT:
+			JSONObjectImpl obj = new JSONObjectImpl();
+			while ((event = reader.next()) != Event.END_OBJECT) {
+				assertEquals(Event.KEY, event);
+				String key = reader.getString();
+				obj.put(key, readValue(reader, reader.next()));
+			}
+			return obj;
+		case START_ARRAY:
+			JSONArrayImpl<Object> array = new JSONArrayImpl<Object>(Object.class);
+			while ((event = reader.next()) != Event.END_ARRAY) {
+				array.add(readValue(reader, event));
+			}
+			return array;
+		case VALUE_STRING:
+			return reader.getString();
+		case VALUE_NUMBER:
+			return reader.getNumber();
+		case VALUE_TRUE:
+			return Boolean.TRUE;
+		case VALUE_FALSE:
+			return Boolean.FALSE;
+		case VALUE_NULL:
+			return null;
+		default:
+			fail("Unexpected event: " + event);
+			return null;
+		}
+	}
+}
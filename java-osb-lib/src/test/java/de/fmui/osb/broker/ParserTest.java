@@ -17,22 +17,37 @@ package de.fmui.osb.broker;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
 import org.junit.Test;
 
+import de.fmui.osb.broker.catalog.CatalogResponseBody;
 import de.fmui.osb.broker.instance.ProvisionRequestBody;
 import de.fmui.osb.broker.internal.json.JSONObjectImpl;
+import de.fmui.osb.broker.internal.json.RawJSONValue;
 import de.fmui.osb.broker.internal.json.JSONValue;
+import de.fmui.osb.broker.internal.json.parser.JSONParseException;
 import de.fmui.osb.broker.internal.json.parser.JSONParser;
+import de.fmui.osb.broker.internal.json.parser.JSONParserPool;
 import de.fmui.osb.broker.json.JSONObject;
+import de.fmui.osb.broker.objects.Context;
+import de.fmui.osb.broker.objects.Parameters;
+import de.fmui.osb.broker.objects.Plan;
+import de.fmui.osb.broker.objects.PlanMetadata;
+import de.fmui.osb.broker.objects.Schema;
+import de.fmui.osb.broker.objects.Service;
 
 public class ParserTest {
 
@@ -90,4 +105,113 @@ public class ParserTest {
 		assertTrue(parsed.get("map") instanceof Map);
 		assertEquals(1, ((Map<?, ?>) parsed.get("map")).size());
 	}
+
+	@Test
+	public void testParserReuse() throws Exception {
+		JSONParserPool pool = new JSONParserPool(1);
+		JSONParser parser = pool.acquire();
+
+		// a failed parse must not leave any state behind
+		try {
+			parser.parse("{\"a\": [1, 2, {\"b\": ", new JSONObjectImpl());
+			fail("Invalid JSON accepted!");
+		} catch (JSONParseException e) {
+			// expected
+		}
+		pool.release(parser);
+		assertEquals(1, pool.getIdleParsers());
+
+		// a long string grows the internal buffers
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 50000; i++) {
+			sb.append((char) ('a' + (i % 26)));
+		}
+		String longString = sb.toString();
+
+		parser = pool.acquire();
+		JSONObjectImpl obj = parser.parse(new StringReader("{\"long\": \"" + longString + "\"}"),
+				new JSONObjectImpl());
+		assertEquals(longString, obj.get("long"));
+		pool.release(parser);
+
+		// the same parser works for string and reader input
+		assertSame(parser, pool.acquire());
+		assertEquals("z", parser.parse("{\"x\": \"z\"}", new JSONObjectImpl()).get("x"));
+		assertEquals(longString, parser.parse(new StringReader("{\"long\": \"" + longString + "\"}"),
+				new JSONObjectImpl()).get("long"));
+		pool.release(parser);
+
+		// the pool is bounded
+		pool.release(new JSONParser());
+		assertEquals(1, pool.getIdleParsers());
+	}
+
+	@Test
+	public void testKeyMappings() throws Exception {
+		String json = "{\"services\": [{\"id\": \"s1\", \"plans\": [{\"id\": \"p1\", "
+				+ "\"metadata\": {\"bullets\": [\"b1\"]}, "
+				+ "\"schemas\": {\"service_instance\": {\"create\": {\"parameters\": {}}}}}]}]}";
+
+		// parse twice, the second run uses the cached mappings and factories
+		for (int i = 0; i < 2; i++) {
+			CatalogResponseBody catalog = new JSONParser().parse(json, new CatalogResponseBody());
+			Service service = catalog.getServices().get(0);
+			assertEquals("s1", service.getID());
+
+			Plan plan = service.getPlans().get(0);
+			assertEquals("p1", plan.getID());
+			assertTrue(plan.get("metadata") instanceof PlanMetadata);
+			assertTrue(plan.getSchemas().getServiceInstanceSchema().get("create") instanceof Schema);
+		}
+
+		// unmapped keys and unmapped classes create plain objects
+		ProvisionRequestBody body = new JSONParser().parse(
+				"{\"context\": {\"a\": {}}, \"parameters\": {\"b\": {}}, \"other\": {}}",
+				new ProvisionRequestBody());
+		assertTrue(body.get("context") instanceof Context);
+		assertTrue(body.get("parameters") instanceof Parameters);
+		assertTrue(body.get("other") instanceof JSONObjectImpl);
+		assertTrue(((Context) body.get("context")).get("a") instanceof JSONObjectImpl);
+		assertTrue(((Parameters) body.get("parameters")).get("b") instanceof JSONObjectImpl);
+	}
+
+	@Test
+	public void testLazyValues() throws Exception {
+		String json = "{\"service_id\": \"s1\", \"parameters\": {\"a\": [1, {\"b\": \"ä\"}], \"c\": {}}, "
+				+ "\"context\": {\"platform\": \"cloudfoundry\"}, \"list\": [1, 2]}";
+		byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+		HashSet<String> lazyKeys = new HashSet<String>(Arrays.asList("parameters", "context", "list"));
+
+		JSONParser parser = new JSONParser();
+		ProvisionRequestBody lazy = parser.parse(bytes, bytes.length, new ProvisionRequestBody(), null, lazyKeys);
+		assertTrue(parser.hasRawValues());
+
+		ProvisionRequestBody expected = new JSONParser().parse(json, new ProvisionRequestBody());
+
+		// object values are kept raw until they are accessed, arrays are parsed
+		for (Object value : lazy.values()) {
+			assertTrue(!(value instanceof Map) || value instanceof RawJSONValue);
+		}
+		assertTrue(lazy.get("list") instanceof List);
+		assertEquals(expected.toJSONString(), lazy.toJSONString());
+
+		assertEquals(expected.getParameters(), lazy.getParameters());
+		assertEquals("cloudfoundry", lazy.getContext().getPlatform());
+		assertSame(lazy.getParameters(), lazy.getParameters());
+		assertTrue(lazy.getParameters().get("c") instanceof JSONObjectImpl);
+
+		// lazy values are checked against all limits in the first pass
+		StringBuilder sb = new StringBuilder("{\"parameters\": {\"a\": [");
+		for (int i = 0; i <= 10000; i++) {
+			sb.append("1,");
+		}
+		sb.append("1]}}");
+		bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+		try {
+			parser.parse(bytes, bytes.length, new ProvisionRequestBody(), null, lazyKeys);
+			fail("Too big array accepted!");
+		} catch (JSONParseException e) {
+			assertEquals(JSONParseException.ErrorType.ERROR_JSON_TOO_BIG, e.getErrorType());
+		}
+	}
 }
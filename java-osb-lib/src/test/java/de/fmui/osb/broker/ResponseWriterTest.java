@@ -0,0 +1,202 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+import de.fmui.osb.broker.helpers.MockFactory;
+import de.fmui.osb.broker.helpers.TestServletOutputStream;
+import de.fmui.osb.broker.instance.InstanceLastOperationResponse;
+import de.fmui.osb.broker.instance.InstanceLastOperationResponseBody;
+import de.fmui.osb.broker.internal.io.HttpUtils;
+import de.fmui.osb.broker.internal.io.IOUtils;
+import de.fmui.osb.broker.internal.io.ResponseBodyWriter;
+
+public class ResponseWriterTest {
+
+	private static final String TEXT = "abc äöü € 😀 \ud800 \udc00 xyz";
+
+	@Test
+	public void testContentLength() throws Exception {
+		StringWriter stringWriter = new StringWriter();
+		HttpServletResponse response = MockFactory.createHttpServletResponse(stringWriter);
+
+		InstanceLastOperationResponseBody body = new InstanceLastOperationResponseBody();
+		body.setState(State.IN_PROGRESS);
+		body.setDescription(TEXT);
+
+		HttpUtils.sendResponse(response, InstanceLastOperationResponse.builder().ok().body(body).build());
+
+		String json = body.toJSONString();
+		byte[] bytes = ((TestServletOutputStream) response.getOutputStream()).toByteArray();
+
+		assertEquals(200, response.getStatus());
+		assertArrayEquals(json.getBytes(IOUtils.UTF8), bytes);
+		assertEquals(String.valueOf(bytes.length), response.getHeader("Content-Length"));
+		assertEquals(json.replace('\ud800', '?').replace('\udc00', '?'), stringWriter.toString());
+	}
+
+	@Test
+	public void testStreaming() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			sb.append(TEXT);
+		}
+		String text = sb.toString();
+
+		for (int max : new int[] { 0, 100, 10000, text.length() * 2 }) {
+			HttpServletResponse response = MockFactory.createHttpServletResponse();
+
+			ResponseBodyWriter writer = new ResponseBodyWriter(response, max);
+			for (int i = 0; i < text.length(); i += 777) {
+				writer.write(text, i, Math.min(777, text.length() - i));
+			}
+			writer.close();
+
+			byte[] bytes = ((TestServletOutputStream) response.getOutputStream()).toByteArray();
+
+			assertArrayEquals(text.getBytes(IOUtils.UTF8), bytes);
+			if (bytes.length <= max) {
+				assertFalse(writer.isStreaming());
+				assertEquals(String.valueOf(bytes.length), response.getHeader("Content-Length"));
+			} else {
+				assertTrue(writer.isStreaming());
+				assertNull(response.getHeader("Content-Length"));
+			}
+		}
+	}
+
+	@Test
+	public void testBufferLimit() throws Exception {
+		// pooled buffers are larger than these limits
+		for (int[] test : new int[][] { { 100000, 120000 }, { 100000, 100000 }, { 100000, 100001 }, { 0, 10 },
+				{ 1000, 1001 } }) {
+			int max = test[0];
+			char[] text = new char[test[1]];
+			for (int i = 0; i < text.length; i++) {
+				text[i] = (char) ('a' + i % 26);
+			}
+
+			HttpServletResponse response = MockFactory.createHttpServletResponse();
+
+			ResponseBodyWriter writer = new ResponseBodyWriter(response, max);
+			writer.write(text);
+			writer.close();
+
+			byte[] bytes = ((TestServletOutputStream) response.getOutputStream()).toByteArray();
+
+			assertArrayEquals(new String(text).getBytes(IOUtils.UTF8), bytes);
+			assertEquals(bytes.length > max, writer.isStreaming());
+			if (bytes.length > max) {
+				assertNull(response.getHeader("Content-Length"));
+			} else {
+				assertEquals(String.valueOf(bytes.length), response.getHeader("Content-Length"));
+			}
+		}
+	}
+
+	@Test
+	public void testNegotiateEncoding() {
+		assertNull(HttpUtils.negotiateEncoding(null));
+		assertNull(HttpUtils.negotiateEncoding(""));
+		assertNull(HttpUtils.negotiateEncoding("identity"));
+		assertNull(HttpUtils.negotiateEncoding("br, gzip;q=0"));
+		assertNull(HttpUtils.negotiateEncoding("*;q=0"));
+		assertEquals("gzip", HttpUtils.negotiateEncoding("gzip"));
+		assertEquals("gzip", HttpUtils.negotiateEncoding("deflate, GZIP"));
+		assertEquals("gzip", HttpUtils.negotiateEncoding("br;q=1.0, gzip;q=0.8, *;q=0.1"));
+		assertEquals("gzip", HttpUtils.negotiateEncoding("*"));
+		assertEquals("deflate", HttpUtils.negotiateEncoding("deflate"));
+		assertEquals("deflate", HttpUtils.negotiateEncoding("gzip;q=0.5, deflate"));
+		assertEquals("deflate", HttpUtils.negotiateEncoding("gzip;q=0, *"));
+	}
+
+	@Test
+	public void testCompression() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			sb.append(TEXT);
+		}
+		String text = sb.toString();
+		byte[] expected = text.getBytes(IOUtils.UTF8);
+
+		for (String coding : new String[] { "gzip", "deflate" }) {
+			// buffered
+			HttpServletResponse response = MockFactory.createHttpServletResponse();
+			ResponseBodyWriter writer = new ResponseBodyWriter(response, expected.length, coding, 1024);
+			writer.write(text);
+			writer.close();
+
+			byte[] bytes = ((TestServletOutputStream) response.getOutputStream()).toByteArray();
+			assertFalse(writer.isStreaming());
+			assertEquals(coding, response.getHeader("Content-Encoding"));
+			assertEquals(String.valueOf(bytes.length), response.getHeader("Content-Length"));
+			assertTrue(bytes.length < expected.length / 10);
+			assertArrayEquals(expected, decompress(bytes, coding));
+
+			// streamed
+			response = MockFactory.createHttpServletResponse();
+			writer = new ResponseBodyWriter(response, 1000, coding, 1024);
+			writer.write(text);
+			writer.close();
+
+			bytes = ((TestServletOutputStream) response.getOutputStream()).toByteArray();
+			assertTrue(writer.isStreaming());
+			assertEquals(coding, response.getHeader("Content-Encoding"));
+			assertNull(response.getHeader("Content-Length"));
+			assertArrayEquals(expected, decompress(bytes, coding));
+
+			// below the threshold
+			response = MockFactory.createHttpServletResponse();
+			writer = new ResponseBodyWriter(response, expected.length, coding, 1024);
+			writer.write(TEXT);
+			writer.close();
+
+			assertNull(response.getHeader("Content-Encoding"));
+			assertArrayEquals(TEXT.getBytes(IOUtils.UTF8),
+					((TestServletOutputStream) response.getOutputStream()).toByteArray());
+		}
+	}
+
+	private static byte[] decompress(byte[] bytes, String coding) throws Exception {
+		InputStream in = new ByteArrayInputStream(bytes);
+		in = "gzip".equals(coding) ? new GZIPInputStream(in) : new InflaterInputStream(in);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			IOUtils.copy(in, out);
+		} finally {
+			in.close();
+		}
+
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.fmui.osb.broker.catalog.CatalogResponseBody;
+import de.fmui.osb.broker.internal.json.JSONArrayImpl;
+import de.fmui.osb.broker.internal.json.JSONObjectImpl;
+import de.fmui.osb.broker.internal.json.JSONValue;
+import de.fmui.osb.broker.json.JSONAware;
+import de.fmui.osb.broker.json.JSONObject;
+import de.fmui.osb.broker.objects.Plan;
+import de.fmui.osb.broker.objects.Service;
+
+public class SerializerTest {
+
+	@Test
+	public void testValues() throws Exception {
+		JSONObject json = new JSONObjectImpl();
+		json.put("null", null);
+		json.put("long", 42L);
+		json.put("double", 1.5d);
+		json.put("nan", Double.NaN);
+		json.put("float", Float.POSITIVE_INFINITY);
+		json.put("dec", new BigDecimal("1E+3"));
+		json.put("bool", false);
+		json.put("chars", "\"\\/\b\f\n\r\t\u0001\u007f\u2028ä€");
+		json.put("list", Arrays.asList("a", null, 1));
+		json.put("map", Collections.singletonMap("k", Collections.emptyList()));
+
+		String expected = "{\"null\":null,\"long\":42,\"double\":1.5,\"nan\":null,\"float\":null,\"dec\":1000,"
+				+ "\"bool\":false,\"chars\":\"\\\"\\\\\\/\\b\\f\\n\\r\\t\\u0001\\u007F\\u2028ä\\u20AC\","
+				+ "\"list\":[\"a\",null,1],\"map\":{\"k\":[]}}";
+
+		assertEquals(expected, json.toJSONString());
+		assertEquals(expected, write(json));
+		assertEquals("\"k\":" + expected, JSONObjectImpl.toString("k", json));
+		assertEquals("[" + expected + "]", JSONValue.toJSONString(Collections.singletonList(json)));
+	}
+
+	@Test
+	public void testLargeCatalog() throws Exception {
+		CatalogResponseBody catalog = new CatalogResponseBody();
+		List<Service> services = catalog.createArray(CatalogResponseBody.KEY_SERVICES, Service.class);
+		for (int s = 0; s < 20; s++) {
+			Service service = new Service();
+			service.put("id", "service-" + s);
+			List<Plan> plans = service.createArray("plans", Plan.class);
+			for (int p = 0; p < 100; p++) {
+				Plan plan = new Plan();
+				plan.put("id", "plan-" + s + "-" + p);
+				plan.put("description", "Plan \"" + p + "\" / – with a longer description");
+				plans.add(plan);
+			}
+			services.add(service);
+		}
+
+		// the output is many times larger than the serializer buffer
+		String json = catalog.toJSONString();
+		assertEquals(json, write(catalog));
+		assertEquals(catalog, JSONValue.parse(json, new CatalogResponseBody()));
+	}
+
+	@Test
+	public void testCustomSerialization() throws Exception {
+		JSONObject custom = new JSONObjectImpl() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public String toJSONString() {
+				return "\"custom\"";
+			}
+		};
+
+		JSONArrayImpl<Object> array = new JSONArrayImpl<Object>(Object.class);
+		array.add(custom);
+		array.add(new JSONAware() {
+			@Override
+			public String toJSONString() {
+				return "{\"aware\":true}";
+			}
+		});
+
+		assertEquals("[\"custom\",{\"aware\":true}]", array.toJSONString());
+	}
+
+	@Test
+	public void testEscape() throws Exception {
+		StringBuilder all = new StringBuilder();
+		for (int ch = 0; ch <= 0xFFFF; ch++) {
+			String s = "a" + (char) ch + "b";
+			String expected = "a" + escapeChar((char) ch) + "b";
+
+			assertEquals(expected, JSONValue.escape(s));
+			assertEquals(expected.substring(1), JSONValue.escape(s.substring(1)));
+			assertEquals(expected.substring(0, expected.length() - 1), JSONValue.escape(s.substring(0, 2)));
+			all.append((char) ch);
+		}
+
+		// clean runs and escapes across the serializer buffer boundary
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < all.length(); i++) {
+			expected.append(escapeChar(all.charAt(i)));
+		}
+
+		JSONObject json = new JSONObjectImpl();
+		json.put("all", all.toString());
+		assertEquals("{\"all\":\"" + expected + "\"}", json.toJSONString());
+		assertEquals("{\"all\":\"" + expected + "\"}", write(json));
+
+		String clean = "https://example.com/service-instances/0123456789";
+		assertEquals(clean.replace("/", "\\/"), JSONValue.escape(clean));
+		assertEquals("", JSONValue.escape(""));
+	}
+
+	/**
+	 * The original, char by char escaping rules.
+	 */
+	private static String escapeChar(char ch) {
+		switch (ch) {
+		case '"':
+			return "\\\"";
+		case '\\':
+			return "\\\\";
+		case '\b':
+			return "\\b";
+		case '\f':
+			return "\\f";
+		case '\n':
+			return "\\n";
+		case '\r':
+			return "\\r";
+		case '\t':
+			return "\\t";
+		case '/':
+			return "\\/";
+		default:
+			if ((ch >= '\u0000' && ch <= '\u001F') || (ch >= '\u007F' && ch <= '\u009F')
+					|| (ch >= '\u2000' && ch <= '\u20FF')) {
+				return String.format("\\u%04X", (int) ch);
+			}
+			return String.valueOf(ch);
+		}
+	}
+
+	private static String write(JSONObject json) throws Exception {
+		StringWriter sw = new StringWriter();
+		json.writeJSONString(sw);
+		return sw.toString();
+	}
+}
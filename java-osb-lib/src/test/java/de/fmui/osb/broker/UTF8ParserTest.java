@@ -0,0 +1,159 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import de.fmui.osb.broker.catalog.CatalogResponseBody;
+import de.fmui.osb.broker.instance.ProvisionRequestBody;
+import de.fmui.osb.broker.internal.json.JSONArrayImpl;
+import de.fmui.osb.broker.internal.json.JSONObjectImpl;
+import de.fmui.osb.broker.internal.json.parser.JSONParseException;
+import de.fmui.osb.broker.internal.json.parser.JSONParser;
+import de.fmui.osb.broker.json.JSONObject;
+import de.fmui.osb.broker.objects.Plan;
+
+public class UTF8ParserTest {
+
+	@Test
+	public void testSameResult() throws Exception {
+		String[] jsons = new String[] { //
+				"{}", //
+				" { \"a\" : \"b\" } ", //
+				"{\"a\":\"b\",\"c\":[1,2,3],\"d\":{\"e\":null,\"f\":true,\"g\":false}}", //
+				"{\"n\": [0, -0, 007, -12, 123456789012345678, 1234567890123456789, -9223372036854775808]}", //
+				"{\"d\": [1.5, -0.25, 1e10, 1E-3, 2.5e+7, 0.0]}", //
+				"{\"s\": \"\\\"\\\\\\/\\b\\f\\n\\r\\t\\u0041\\u00e4\\u20AC\"}", //
+				"{\"u\": \"äöü ß € 日本 😀\", \"äö\": \"x\"}", //
+				"{\"raw\": \"tab\tnewline\ncontrol\u0001\"}", //
+				// invalid escapes are kept as they are
+				"{\"e\": \"\\x \\u12 \\u12zz \\U0041 \\uD83D\\uDE00 \\\\ \\\"x\"}", //
+				// the parser is lenient with separators
+				"{\"a\" \"b\" \"c\" 1,, \"d\" [1 2 , 3]}", //
+				"{\"a\":{\"b\":{\"c\":[[[{\"d\":[]}]]]}}}" };
+
+		for (String json : jsons) {
+			JSONObjectImpl expected = new JSONParser().parse(json, new JSONObjectImpl());
+			JSONObjectImpl actual = parseBytes(json.getBytes(StandardCharsets.UTF_8), new JSONObjectImpl());
+			assertEquals(json, expected, actual);
+			assertEquals(json, expected.toJSONString(), actual.toJSONString());
+		}
+	}
+
+	@Test
+	public void testKeyMappings() throws Exception {
+		String json = "{\"services\": [{\"id\": \"s1\", \"name\": \"n\", \"plans\": [{\"id\": \"p1\", \"name\": \"pn\"}]}]}";
+
+		CatalogResponseBody body = parseBytes(json.getBytes(StandardCharsets.UTF_8), new CatalogResponseBody());
+		assertEquals(1, body.getServices().size());
+		assertTrue(body.getServices().get(0).getPlans().get(0) instanceof Plan);
+		assertEquals("p1", body.getServices().get(0).getPlans().get(0).getID());
+
+		json = "{\"context\": {\"platform\": \"cloudfoundry\"}, \"parameters\": {\"a\": [1]}}";
+		ProvisionRequestBody provision = parseBytes(json.getBytes(StandardCharsets.UTF_8),
+				new ProvisionRequestBody());
+		assertEquals("cloudfoundry", provision.getContext().getPlatform());
+		assertTrue(provision.getParameters().get("a") instanceof JSONArrayImpl);
+	}
+
+	@Test
+	public void testMalformedUTF8() throws Exception {
+		byte[][] inputs = new byte[][] { //
+				{ '{', '"', 'a', '"', ':', '"', (byte) 0xc3, '"', '}' }, //
+				{ '{', '"', 'a', '"', ':', '"', (byte) 0xff, (byte) 0xc3, (byte) 0xa4, '"', '}' }, //
+				{ '{', '"', 'a', '"', ':', '"', (byte) 0xe0, (byte) 0x80, (byte) 0x80, 'x', '"', '}' }, //
+				{ '{', '"', 'a', '"', ':', '"', (byte) 0xed, (byte) 0xa0, (byte) 0x80, '"', '}' }, //
+				{ '{', '"', 'a', '"', ':', '"', (byte) 0xf4, (byte) 0x90, (byte) 0x80, (byte) 0x80, '"', '}' }, //
+				{ '{', '"', 'a', '"', ':', '"', (byte) 0xf0, (byte) 0x9f, (byte) 0x98, '"', '}' } };
+
+		for (byte[] input : inputs) {
+			String decoded = new String(input, StandardCharsets.UTF_8);
+			JSONObject expected = new JSONParser().parse(decoded, new JSONObjectImpl());
+			JSONObject actual = parseBytes(input, new JSONObjectImpl());
+			assertEquals(expected, actual);
+		}
+	}
+
+	@Test
+	public void testInvalidJSON() throws Exception {
+		String[] jsons = new String[] { "", "[]", "\"a\"", "{", "{\"a\": \"b}", "{\"a\": tru}", "{\"a\": nul}",
+				"{\"a\": -}", "{\"a\": 1.}", "{\"a\": 1e}", "{\"a\": \"\\\"}", "{} {}",
+				"{\"a\": 12345678901234567890}", "{\"a\": +1}", "{\"a\": .5}", "{\"a\": [}", "{\"a\": \"ü\"]}",
+				"\u00ef\u00bb\u00bf{}" };
+
+		for (String json : jsons) {
+			assertInvalid(json, json.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	public void testLimits() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100 * 1024; i++) {
+			sb.append(i % 2 == 0 ? 'a' : 'ä');
+		}
+
+		// exactly at the limit
+		String json = "{\"s\": \"" + sb + "\"}";
+		assertEquals(sb.toString(), parseBytes(json.getBytes(StandardCharsets.UTF_8), new JSONObjectImpl()).get("s"));
+
+		// one char more
+		json = "{\"s\": \"x" + sb + "\"}";
+		assertInvalid(json, json.getBytes(StandardCharsets.UTF_8));
+		json = "{\"s\": \"" + sb.toString().replace('ä', 'b') + "b\"}";
+		assertInvalid(json, json.getBytes(StandardCharsets.UTF_8));
+
+		// too deep
+		StringBuilder deep = new StringBuilder("{");
+		for (int i = 0; i < 101; i++) {
+			deep.append("\"a\":{");
+		}
+		assertInvalid(deep.toString(), deep.toString().getBytes(StandardCharsets.UTF_8));
+
+		assertNull(parseBytes("{\"a\": null}".getBytes(StandardCharsets.UTF_8), new JSONObjectImpl()).get("a"));
+	}
+
+	private void assertInvalid(String json, byte[] bytes) {
+		try {
+			new JSONParser().parse(json, new JSONObjectImpl());
+			fail("Char parser accepted: " + json);
+		} catch (JSONParseException e) {
+			// expected
+		}
+
+		try {
+			parseBytes(bytes, new JSONObjectImpl());
+			fail("Byte parser accepted: " + json);
+		} catch (JSONParseException e) {
+			// expected
+		}
+	}
+
+	private <T> T parseBytes(byte[] bytes, T root) throws JSONParseException {
+		// pad the buffer, only the given length must be used
+		byte[] buffer = new byte[bytes.length + 10];
+		System.arraycopy(bytes, 0, buffer, 0, bytes.length);
+		buffer[bytes.length] = '}';
+		return new JSONParser().parse(buffer, bytes.length, root);
+	}
+}
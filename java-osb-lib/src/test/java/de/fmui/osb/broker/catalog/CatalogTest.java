@@ -19,12 +19,30 @@ import static de.fmui.osb.broker.helpers.ValidationHelper.assertNotValidating;
 import static de.fmui.osb.broker.helpers.ValidationHelper.assertValidating;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -33,9 +51,12 @@ import org.junit.Test;
 
 import de.fmui.osb.broker.OpenServiceBroker;
 import de.fmui.osb.broker.exceptions.OpenServiceBrokerException;
+import de.fmui.osb.broker.exceptions.ValidationException;
 import de.fmui.osb.broker.helpers.AbstractTestHandler;
 import de.fmui.osb.broker.helpers.JSONHelper;
 import de.fmui.osb.broker.helpers.MockFactory;
+import de.fmui.osb.broker.helpers.TestServletOutputStream;
+import de.fmui.osb.broker.internal.io.IOUtils;
 import de.fmui.osb.broker.json.JSONObject;
 import de.fmui.osb.broker.objects.Plan;
 import de.fmui.osb.broker.objects.PlanMetadata;
@@ -79,6 +100,125 @@ public class CatalogTest {
 		assertNotNull(responseBody.get("services"));
 	}
 
+	@Test
+	public void testCatalogCache() throws Exception {
+		CatalogResponseBody body = new CatalogResponseBody();
+		try (Reader r = JSONHelper.getJSONReader("/json/catalog.json")) {
+			body.load(r);
+		}
+
+		OpenServiceBroker osb = new OpenServiceBroker();
+		AbstractTestHandler handler = new AbstractTestHandler() {
+			@Override
+			public CatalogResponse getCatalog(CatalogRequest request) throws OpenServiceBrokerException {
+				return CatalogResponse.builder().ok().body(body).build();
+			}
+		};
+
+		// first request
+		HttpServletRequest request = MockFactory.createHttpServletRequest("GET", "/v2/catalog");
+		StringWriter stringWriter = new StringWriter();
+		HttpServletResponse response = MockFactory.createHttpServletResponse(stringWriter);
+		osb.processRequest(request, response, handler);
+
+		assertEquals(200, response.getStatus());
+		assertEquals(body.toJSONString(), stringWriter.toString());
+		String etag = response.getHeader("ETag");
+		assertNotNull(etag);
+
+		// same catalog, same ETag
+		request = MockFactory.createHttpServletRequest("GET", "/v2/catalog");
+		when(request.getHeader("If-None-Match")).thenReturn("\"other\", " + etag);
+		stringWriter = new StringWriter();
+		response = MockFactory.createHttpServletResponse(stringWriter);
+		osb.processRequest(request, response, handler);
+
+		assertEquals(304, response.getStatus());
+		assertEquals(etag, response.getHeader("ETag"));
+		assertEquals("", stringWriter.toString());
+
+		// deflate preferred
+		request = MockFactory.createHttpServletRequest("GET", "/v2/catalog");
+		when(request.getHeader("Accept-Encoding")).thenReturn("deflate, gzip;q=0.5");
+		response = MockFactory.createHttpServletResponse();
+		osb.processRequest(request, response, handler);
+
+		assertEquals(200, response.getStatus());
+		assertEquals("deflate", response.getHeader("Content-Encoding"));
+		assertEquals(etag.substring(0, etag.length() - 1) + "-deflate\"", response.getHeader("ETag"));
+		byte[] deflateBytes = ((TestServletOutputStream) response.getOutputStream()).toByteArray();
+		assertEquals(String.valueOf(deflateBytes.length), response.getHeader("Content-Length"));
+		ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+		try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(deflateBytes))) {
+			IOUtils.copy(in, inflated);
+		}
+		assertEquals(body.toJSONString(), inflated.toString(IOUtils.UTF8));
+
+		// gzip preferred
+		request = MockFactory.createHttpServletRequest("GET", "/v2/catalog");
+		when(request.getHeader("Accept-Encoding")).thenReturn("deflate;q=0.5, gzip");
+		response = MockFactory.createHttpServletResponse();
+		osb.processRequest(request, response, handler);
+
+		assertEquals(200, response.getStatus());
+		assertEquals("gzip", response.getHeader("Content-Encoding"));
+		byte[] gzipBytes = ((TestServletOutputStream) response.getOutputStream()).toByteArray();
+		assertEquals(String.valueOf(gzipBytes.length), response.getHeader("Content-Length"));
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipBytes))) {
+			IOUtils.copy(in, bytes);
+		}
+		assertEquals(body.toJSONString(), bytes.toString(IOUtils.UTF8));
+
+		// the gzip variant has its own ETag
+		String gzipETag = response.getHeader("ETag");
+		assertEquals(etag.substring(0, etag.length() - 1) + "-gzip\"", gzipETag);
+
+		request = MockFactory.createHttpServletRequest("GET", "/v2/catalog");
+		when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+		when(request.getHeader("If-None-Match")).thenReturn(etag);
+		response = MockFactory.createHttpServletResponse();
+		osb.processRequest(request, response, handler);
+		assertEquals(200, response.getStatus());
+		assertEquals("gzip", response.getHeader("Content-Encoding"));
+
+		request = MockFactory.createHttpServletRequest("GET", "/v2/catalog");
+		when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+		when(request.getHeader("If-None-Match")).thenReturn(gzipETag);
+		response = MockFactory.createHttpServletResponse();
+		osb.processRequest(request, response, handler);
+		assertEquals(304, response.getStatus());
+		assertEquals(gzipETag, response.getHeader("ETag"));
+
+		request = MockFactory.createHttpServletRequest("GET", "/v2/catalog");
+		when(request.getHeader("If-None-Match")).thenReturn(gzipETag);
+		response = MockFactory.createHttpServletResponse();
+		osb.processRequest(request, response, handler);
+		assertEquals(200, response.getStatus());
+		assertEquals(etag, response.getHeader("ETag"));
+
+		// gzip not acceptable
+		request = MockFactory.createHttpServletRequest("GET", "/v2/catalog");
+		when(request.getHeader("Accept-Encoding")).thenReturn("gzip;q=0, identity");
+		response = MockFactory.createHttpServletResponse();
+		osb.processRequest(request, response, handler);
+		assertNull(response.getHeader("Content-Encoding"));
+
+		// changed catalog
+		body.getServices().get(0).getPlans().get(0).setDescription("changed");
+
+		request = MockFactory.createHttpServletRequest("GET", "/v2/catalog");
+		when(request.getHeader("If-None-Match")).thenReturn(etag);
+		stringWriter = new StringWriter();
+		response = MockFactory.createHttpServletResponse(stringWriter);
+		osb.processRequest(request, response, handler);
+
+		assertEquals(200, response.getStatus());
+		assertNotEquals(etag, response.getHeader("ETag"));
+		assertEquals(body.toJSONString(), stringWriter.toString());
+		assertTrue(stringWriter.toString().contains("\"changed\""));
+	}
+
 	@Test
 	public void testCatalogResponseBody() throws Exception {
 		CatalogResponseBody body = new CatalogResponseBody();
@@ -111,6 +251,293 @@ public class CatalogTest {
 		assertNull(plan3);
 	}
 
+	@Test
+	public void testCatalogIndex() throws Exception {
+		String serviceID = "e1270a8f-50a6-476d-9e16-c456c0815949";
+		String planID = "cebcb73b-da3a-404d-bf6c-f37087600fe1";
+
+		CatalogResponseBody body = new CatalogResponseBody();
+
+		try (Reader r = JSONHelper.getJSONReader("/json/catalog.json")) {
+			body.load(r);
+		}
+
+		Service service = body.getService(serviceID);
+		assertNotNull(service);
+		assertSame(service, body.getServiceByName("fake-service"));
+		assertNull(body.getServiceByName("none"));
+		assertSame(body.getPlan(serviceID, planID), body.getPlanByName(serviceID, "fake-plan-1"));
+		assertNull(body.getPlanByName(serviceID, "none"));
+		assertNull(body.getPlanByName("none", "fake-plan-1"));
+
+		// bulk lookups
+		Map<String, Plan> plans = body.getPlans(serviceID,
+				Arrays.asList("3ea75c97-67b9-4951-9327-99fe09058154", "none", planID));
+		assertEquals(Arrays.asList("3ea75c97-67b9-4951-9327-99fe09058154", planID),
+				new ArrayList<String>(plans.keySet()));
+		assertEquals(Collections.singleton(serviceID), body.getServices(Arrays.asList("none", serviceID)).keySet());
+
+		// added plan
+		Plan plan = new Plan();
+		plan.setID("new-plan");
+		plan.setName("new-plan-name");
+		service.addPlan(plan);
+		assertSame(plan, body.getPlan(serviceID, "new-plan"));
+		assertSame(plan, body.getPlanByName(serviceID, "new-plan-name"));
+
+		// modified plan
+		plan.setID("changed-plan");
+		assertNull(body.getPlan(serviceID, "new-plan"));
+		assertSame(plan, body.getPlan(serviceID, "changed-plan"));
+
+		// modified service
+		service.setName("changed-service");
+		assertNull(body.getServiceByName("fake-service"));
+		assertSame(service, body.getServiceByName("changed-service"));
+
+		// added service
+		Service service2 = new Service();
+		service2.setID("new-service");
+		body.addService(service2);
+		assertSame(service2, body.getService("new-service"));
+
+		// removed service
+		body.getServices().remove(service);
+		assertNull(body.getService(serviceID));
+		assertNull(body.getPlan(serviceID, planID));
+
+		// service shared by two catalogs
+		CatalogResponseBody body2 = new CatalogResponseBody();
+		body2.setServices(service2);
+		assertSame(service2, body2.getService("new-service"));
+		service2.setID("changed-service");
+		assertSame(service2, body.getService("changed-service"));
+		assertSame(service2, body2.getService("changed-service"));
+		assertNull(body2.getService("new-service"));
+
+		// only frozen catalogs are indexed
+		assertNull(body.getIndex());
+		body.freeze();
+		assertNotNull(body.getIndex());
+		assertSame(body.getIndex(), body.getIndex());
+		assertSame(service2, body.getService("changed-service"));
+		assertNull(body.getService("new-service"));
+
+		// a clone has no index and can be changed
+		CatalogResponseBody clone = (CatalogResponseBody) body.clone();
+		assertNull(clone.getIndex());
+		Service service3 = new Service();
+		service3.setID("clone-service");
+		clone.setServices(service3);
+		assertSame(service3, clone.getService("clone-service"));
+		assertNull(body.getService("clone-service"));
+		clone.freeze();
+		assertNotSame(body.getIndex(), clone.getIndex());
+		assertSame(service3, clone.getService("clone-service"));
+	}
+
+	@Test
+	public void testCatalogSource() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (InputStream in = getClass().getResourceAsStream("/json/catalog.json")) {
+			IOUtils.copy(in, bytes);
+		}
+		String json = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+
+		Path dir = Files.createTempDirectory("catalog");
+		Path file = dir.resolve("catalog.json");
+		Files.write(file, json.getBytes(StandardCharsets.UTF_8));
+
+		try (CatalogSource source = new CatalogSource(file)) {
+			CatalogResponseBody catalog = source.getCatalog();
+			assertTrue(catalog.isFrozen());
+			assertEquals("fake-service", catalog.getService("e1270a8f-50a6-476d-9e16-c456c0815949").getName());
+
+			// unchanged file
+			assertFalse(source.reload());
+			assertSame(catalog, source.getCatalog());
+
+			// changed file
+			Files.write(file, json.replace("fake-service", "fake-service-2").getBytes(StandardCharsets.UTF_8));
+			assertTrue(source.reload());
+			CatalogResponseBody catalog2 = source.getCatalog();
+			assertNotSame(catalog, catalog2);
+			assertNotNull(catalog2.getServiceByName("fake-service-2"));
+
+			// invalid file
+			Files.write(file, "{\"services\": []}".getBytes(StandardCharsets.UTF_8));
+			try {
+				source.reload();
+				fail("Invalid catalog loaded!");
+			} catch (IOException e) {
+				// expected
+			}
+			assertSame(catalog2, source.getCatalog());
+
+			// watched file
+			source.setQuietPeriod(50);
+			source.startWatching();
+			assertTrue(source.isWatching());
+			Files.write(file, json.replace("fake-service", "fake-service-3").getBytes(StandardCharsets.UTF_8));
+
+			long timeout = System.currentTimeMillis() + 20000;
+			while (source.getCatalog() == catalog2 && System.currentTimeMillis() < timeout) {
+				Thread.sleep(20);
+			}
+			assertNotNull(source.getCatalog().getServiceByName("fake-service-3"));
+		} finally {
+			Files.delete(file);
+			Files.delete(dir);
+		}
+	}
+
+	@Test
+	public void testCatalogViews() throws Exception {
+		String serviceID = "e1270a8f-50a6-476d-9e16-c456c0815949";
+
+		CatalogResponseBody base = new CatalogResponseBody();
+		try (Reader r = JSONHelper.getJSONReader("/json/catalog.json")) {
+			base.load(r);
+		}
+		base.freeze();
+
+		CatalogViews views = new CatalogViews(new CatalogViewFilter() {
+			@Override
+			public boolean isServiceVisible(String view, Service service) {
+				return !view.equals("none");
+			}
+
+			@Override
+			public boolean isPlanVisible(String view, Service service, Plan plan) {
+				return !(view.equals("kubernetes") && plan.getName().equals("fake-plan-2"));
+			}
+		});
+
+		assertSame(base, views.getView(base, null));
+
+		// filtered plan
+		CatalogResponseBody k8s = views.getView(base, "kubernetes");
+		assertTrue(k8s.isFrozen());
+		assertSame(k8s, views.getView(base, "kubernetes"));
+		assertEquals(1, k8s.getService(serviceID).getPlans().size());
+		assertNotNull(k8s.getPlanByName(serviceID, "fake-plan-1"));
+		assertNull(k8s.getPlanByName(serviceID, "fake-plan-2"));
+		assertEquals(2, base.getService(serviceID).getPlans().size());
+
+		// nothing filtered
+		CatalogResponseBody cf = views.getView(base, "cloudfoundry");
+		assertEquals(base, cf);
+		assertSame(base.getService(serviceID), cf.getService(serviceID));
+
+		// filtered service
+		assertTrue(views.getView(base, "none").getServices().isEmpty());
+
+		// new base catalog
+		CatalogResponseBody base2 = new CatalogResponseBody();
+		base2.putAll(base);
+		base2.freeze();
+		CatalogResponseBody k8s2 = views.getView(base2, "kubernetes");
+		assertNotSame(k8s, k8s2);
+		assertEquals(k8s, k8s2);
+		assertSame(k8s2, views.getView(base2, "kubernetes"));
+		assertTrue(k8s2.isCacheable());
+
+		// views beyond the limit are created for every call and not cached
+		views.setMaxViews(1);
+		CatalogResponseBody cf2 = views.getView(base2, "cloudfoundry");
+		assertFalse(cf2.isFrozen());
+		assertFalse(cf2.isCacheable());
+		assertEquals(base2, cf2);
+		assertNotSame(cf2, views.getView(base2, "cloudfoundry"));
+		assertSame(k8s2, views.getView(base2, "kubernetes"));
+		assertTrue(((CatalogResponseBody) cf2.clone()).isCacheable());
+
+		HttpServletRequest request = MockFactory.createHttpServletRequest("GET", "/v2/catalog");
+		when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+		HttpServletResponse response = MockFactory.createHttpServletResponse();
+		OpenServiceBroker osb = new OpenServiceBroker();
+		osb.setCompressionThreshold(0);
+		osb.processRequest(request, response, new AbstractTestHandler() {
+			@Override
+			public CatalogResponse getCatalog(CatalogRequest request) throws OpenServiceBrokerException {
+				return CatalogResponse.builder().body(cf2).build();
+			}
+		});
+		assertEquals(200, response.getStatus());
+		assertEquals("gzip", response.getHeader("Content-Encoding"));
+		assertEquals("Accept-Encoding", response.getHeader("Vary"));
+		assertNull(response.getHeader("ETag"));
+		byte[] gzipBytes = ((TestServletOutputStream) response.getOutputStream()).toByteArray();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipBytes))) {
+			IOUtils.copy(in, bytes);
+		}
+		assertEquals(cf2.toJSONString(), bytes.toString(IOUtils.UTF8));
+
+		// mutable base catalog
+		CatalogResponseBody base3 = new CatalogResponseBody();
+		try (Reader r = JSONHelper.getJSONReader("/json/catalog.json")) {
+			base3.load(r);
+		}
+		CatalogResponseBody k8s3 = views.getView(base3, "kubernetes");
+		assertFalse(k8s3.isFrozen());
+		assertFalse(base3.isFrozen());
+		assertNotSame(k8s3, views.getView(base3, "kubernetes"));
+	}
+
+	@Test
+	public void testCompiledCatalog() throws Exception {
+		CatalogResponseBody catalog = new CatalogResponseBody();
+		try (Reader r = JSONHelper.getJSONReader("/json/catalog.json")) {
+			catalog.load(r);
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		CompiledCatalog.write(catalog, out);
+
+		CatalogResponseBody compiled = CompiledCatalog.read(new ByteArrayInputStream(out.toByteArray()));
+		assertTrue(compiled.isFrozen());
+		assertEquals(catalog, compiled);
+		assertNotNull(compiled.getPlanByName("e1270a8f-50a6-476d-9e16-c456c0815949", "fake-plan-1"));
+
+		// the catalog is sent as compiled
+		HttpServletRequest request = MockFactory.createHttpServletRequest("GET", "/v2/catalog");
+		when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+		HttpServletResponse response = MockFactory.createHttpServletResponse(new StringWriter());
+
+		OpenServiceBroker broker = new OpenServiceBroker();
+		broker.processRequest(request, response, new AbstractTestHandler() {
+			@Override
+			public CatalogResponse getCatalog(CatalogRequest request) throws OpenServiceBrokerException {
+				return CatalogResponse.builder().body(compiled).build();
+			}
+		});
+
+		assertEquals("gzip", response.getHeader("Content-Encoding"));
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] gzipBytes = ((TestServletOutputStream) response.getOutputStream()).toByteArray();
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipBytes))) {
+			IOUtils.copy(in, body);
+		}
+		assertEquals(catalog.toJSONString(), new String(body.toByteArray(), StandardCharsets.UTF_8));
+
+		// invalid catalog
+		try {
+			CompiledCatalog.write(new CatalogResponseBody(), new ByteArrayOutputStream());
+			fail("Invalid catalog compiled!");
+		} catch (ValidationException e) {
+			// expected
+		}
+
+		// not a compiled catalog
+		try {
+			CompiledCatalog.read(new ByteArrayInputStream("{}".getBytes(StandardCharsets.UTF_8)));
+			fail("Invalid compiled catalog read!");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
 	@Test
 	public void testServiceObject() throws Exception {
 		Service service = new Service();
@@ -21,9 +21,12 @@ import static org.mockito.Mockito.when;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 
 import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpServletResponseWrapper;
@@ -86,14 +89,56 @@ public class MockFactory {
 		}
 		PrintWriter writer = new PrintWriter(stringWriter);
 
+		final StringWriter sw = stringWriter;
+
 		HttpServletResponse response = new HttpServletResponseWrapper(mock(HttpServletResponse.class)) {
 			private int sc;
+			private Map<String, String> headers = new HashMap<>();
+			private TestServletOutputStream outputStream;
 
 			@Override
 			public PrintWriter getWriter() throws IOException {
 				return writer;
 			}
 
+			@Override
+			public ServletOutputStream getOutputStream() throws IOException {
+				if (outputStream == null) {
+					outputStream = new TestServletOutputStream(sw);
+				}
+				return outputStream;
+			}
+
+			@Override
+			public void setContentLength(int len) {
+				setHeader("Content-Length", String.valueOf(len));
+			}
+
+			@Override
+			public void setContentLengthLong(long len) {
+				setHeader("Content-Length", String.valueOf(len));
+			}
+
+			@Override
+			public void setHeader(String name, String value) {
+				headers.put(name.toLowerCase(Locale.ENGLISH), value);
+			}
+
+			@Override
+			public void addHeader(String name, String value) {
+				headers.merge(name.toLowerCase(Locale.ENGLISH), value, (a, b) -> a + "," + b);
+			}
+
+			@Override
+			public String getHeader(String name) {
+				return headers.get(name.toLowerCase(Locale.ENGLISH));
+			}
+
+			@Override
+			public boolean containsHeader(String name) {
+				return headers.containsKey(name.toLowerCase(Locale.ENGLISH));
+			}
+
 			@Override
 			public void setStatus(int sc) {
 				this.sc = sc;
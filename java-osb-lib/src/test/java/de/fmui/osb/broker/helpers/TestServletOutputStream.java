@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.helpers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+import de.fmui.osb.broker.internal.io.IOUtils;
+
+/**
+ * Collects the bytes and puts the UTF-8 decoded text into a
+ * {@link StringWriter}.
+ */
+public class TestServletOutputStream extends ServletOutputStream {
+
+	private final StringWriter stringWriter;
+	private final int start;
+	private final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+	public TestServletOutputStream(StringWriter stringWriter) {
+		this.stringWriter = stringWriter;
+		this.start = stringWriter.getBuffer().length();
+	}
+
+	public byte[] toByteArray() {
+		return stream.toByteArray();
+	}
+
+	@Override
+	public boolean isReady() {
+		return true;
+	}
+
+	@Override
+	public void setWriteListener(WriteListener writeListener) {
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		stream.write(b);
+		update();
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		stream.write(b, off, len);
+		update();
+	}
+
+	private void update() throws IOException {
+		stringWriter.getBuffer().setLength(start);
+		stringWriter.write(stream.toString(IOUtils.UTF8));
+	}
+}
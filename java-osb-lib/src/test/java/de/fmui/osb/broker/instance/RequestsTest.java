@@ -22,6 +22,7 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.StringWriter;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -37,6 +38,7 @@ import de.fmui.osb.broker.helpers.AbstractTestHandler;
 import de.fmui.osb.broker.helpers.JSONHelper;
 import de.fmui.osb.broker.helpers.MockFactory;
 import de.fmui.osb.broker.json.JSONObject;
+import de.fmui.osb.broker.objects.Parameters;
 
 public class RequestsTest {
 
@@ -77,6 +79,37 @@ public class RequestsTest {
 		assertEquals(dashboardURL, responseBody.get("dashboard_url"));
 	}
 
+	@Test
+	public void testLazyParameters() throws Exception {
+		// prepare request and response object
+		HttpServletRequest request = MockFactory.createHttpServletRequest("PUT", "/v2/service_instances/123",
+				JSONHelper.getJSONString("/json/provision.json"));
+
+		StringWriter stringWriter = new StringWriter();
+		HttpServletResponse response = MockFactory.createHttpServletResponse(stringWriter);
+
+		// run
+		OpenServiceBroker osb = new OpenServiceBroker();
+		osb.setLazyParsedKeys(Collections.singleton(ProvisionRequestBody.KEY_PARAMETERS));
+		osb.processRequest(request, response, new AbstractTestHandler() {
+			@Override
+			public ProvisionResponse provision(ProvisionRequest request) throws OpenServiceBrokerException {
+				assertEquals("service-id-here", request.getRequestBody().getServiceID());
+				assertNull(request.getParametersReader());
+
+				Parameters parameters = request.getRequestBody().getParameters();
+				assertNotNull(parameters);
+				assertEquals(1L, parameters.get("parameter1"));
+				assertEquals("foo", parameters.get("parameter2"));
+
+				return ProvisionResponse.builder().created().body(new ProvisionResponseBody()).build();
+			}
+		});
+
+		// check status code
+		assertEquals(201, response.getStatus());
+	}
+
 	@Test
 	public void testProvisionResponses() {
 		ProvisionResponseBody body = new ProvisionResponseBody();
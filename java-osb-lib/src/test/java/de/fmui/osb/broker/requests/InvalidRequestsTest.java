@@ -20,6 +20,9 @@ import static org.junit.Assert.assertNotNull;
 import static org.mockito.Mockito.when;
 
 import java.io.StringWriter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -27,10 +30,29 @@ import javax.servlet.http.HttpServletResponse;
 import org.junit.Test;
 
 import de.fmui.osb.broker.OpenServiceBroker;
+import de.fmui.osb.broker.binding.BindRequest;
+import de.fmui.osb.broker.binding.BindResponse;
+import de.fmui.osb.broker.binding.BindingLastOperationRequest;
+import de.fmui.osb.broker.binding.BindingLastOperationResponse;
+import de.fmui.osb.broker.binding.UnbindRequest;
+import de.fmui.osb.broker.binding.UnbindResponse;
+import de.fmui.osb.broker.catalog.CatalogResponseBody;
+import de.fmui.osb.broker.exceptions.ConflictException;
+import de.fmui.osb.broker.exceptions.OpenServiceBrokerException;
 import de.fmui.osb.broker.helpers.AbstractTestHandler;
 import de.fmui.osb.broker.helpers.JSONHelper;
 import de.fmui.osb.broker.helpers.MockFactory;
+import de.fmui.osb.broker.instance.DeprovisionRequest;
+import de.fmui.osb.broker.instance.DeprovisionResponse;
+import de.fmui.osb.broker.instance.InstanceLastOperationRequest;
+import de.fmui.osb.broker.instance.InstanceLastOperationResponse;
+import de.fmui.osb.broker.instance.ProvisionRequest;
+import de.fmui.osb.broker.instance.ProvisionResponse;
+import de.fmui.osb.broker.instance.UpdateServiceInstanceRequest;
+import de.fmui.osb.broker.instance.UpdateServiceInstanceResponse;
 import de.fmui.osb.broker.json.JSONObject;
+import de.fmui.osb.broker.objects.Plan;
+import de.fmui.osb.broker.objects.Service;
 
 public class InvalidRequestsTest {
 
@@ -198,4 +220,154 @@ public class InvalidRequestsTest {
 		JSONObject responseBody = JSONHelper.parse(stringWriter.toString());
 		assertNotNull(responseBody.get("error"));
 	}
+
+	@Test
+	public void testCatalogCheck() throws Exception {
+		Plan plan1 = new Plan();
+		plan1.setID("plan-1");
+		plan1.setBindable(false);
+		Plan plan2 = new Plan();
+		plan2.setID("plan-2");
+		Plan plan3 = new Plan();
+		plan3.setID("plan-3");
+		plan3.setPlanUpdateable(true);
+
+		Service service = new Service();
+		service.setID("service-1");
+		service.setBindable(true);
+		service.setPlans(plan1, plan2, plan3);
+
+		CatalogResponseBody catalog = new CatalogResponseBody();
+		catalog.setServices(service);
+		catalog.freeze();
+
+		OpenServiceBroker osb = new OpenServiceBroker();
+
+		// no catalog, no checks
+		assertEquals(409, executeCatalogCheckRequest(osb, "PUT", "/v2/service_instances/1",
+				provisionBody("service-x", "plan-x"), null));
+
+		osb.setCatalog(catalog);
+		assertEquals(catalog, osb.getCatalog());
+
+		// provision
+		assertEquals(409, executeCatalogCheckRequest(osb, "PUT", "/v2/service_instances/1",
+				provisionBody("service-1", "plan-1"), null));
+		assertEquals(400, executeCatalogCheckRequest(osb, "PUT", "/v2/service_instances/1",
+				provisionBody("service-1", "plan-x"), null));
+		assertEquals(400, executeCatalogCheckRequest(osb, "PUT", "/v2/service_instances/1",
+				provisionBody("service-x", "plan-1"), null));
+
+		// update
+		assertEquals(409, executeCatalogCheckRequest(osb, "PATCH", "/v2/service_instances/1",
+				"{\"service_id\": \"service-1\"}", null));
+		assertEquals(400, executeCatalogCheckRequest(osb, "PATCH", "/v2/service_instances/1",
+				"{\"service_id\": \"service-x\"}", null));
+		assertEquals(409, executeCatalogCheckRequest(osb, "PATCH", "/v2/service_instances/1",
+				updateBody("plan-2", "plan-2"), null));
+		assertEquals(422, executeCatalogCheckRequest(osb, "PATCH", "/v2/service_instances/1",
+				updateBody("plan-2", "plan-1"), null));
+		assertEquals(409, executeCatalogCheckRequest(osb, "PATCH", "/v2/service_instances/1",
+				updateBody("plan-3", "plan-1"), null));
+		assertEquals(400, executeCatalogCheckRequest(osb, "PATCH", "/v2/service_instances/1",
+				updateBody("plan-x", "plan-1"), null));
+
+		// bind
+		assertEquals(409, executeCatalogCheckRequest(osb, "PUT", "/v2/service_instances/1/service_bindings/2",
+				"{\"service_id\": \"service-1\", \"plan_id\": \"plan-2\"}", null));
+		assertEquals(400, executeCatalogCheckRequest(osb, "PUT", "/v2/service_instances/1/service_bindings/2",
+				"{\"service_id\": \"service-1\", \"plan_id\": \"plan-1\"}", null));
+
+		// deprovision and unbind
+		Map<String, String> known = new HashMap<>();
+		known.put("service_id", "service-1");
+		known.put("plan_id", "plan-1");
+		Map<String, String> unknown = new HashMap<>();
+		unknown.put("service_id", "service-1");
+		unknown.put("plan_id", "plan-x");
+
+		assertEquals(409, executeCatalogCheckRequest(osb, "DELETE", "/v2/service_instances/1", null, known));
+		assertEquals(400, executeCatalogCheckRequest(osb, "DELETE", "/v2/service_instances/1", null, unknown));
+		assertEquals(409, executeCatalogCheckRequest(osb, "DELETE", "/v2/service_instances/1/service_bindings/2",
+				null, known));
+		assertEquals(400, executeCatalogCheckRequest(osb, "DELETE", "/v2/service_instances/1/service_bindings/2",
+				null, unknown));
+
+		// last operation
+		assertEquals(409, executeCatalogCheckRequest(osb, "GET", "/v2/service_instances/1/last_operation", null,
+				Collections.<String, String> emptyMap()));
+		assertEquals(409, executeCatalogCheckRequest(osb, "GET", "/v2/service_instances/1/last_operation", null,
+				known));
+		assertEquals(400, executeCatalogCheckRequest(osb, "GET", "/v2/service_instances/1/last_operation", null,
+				unknown));
+		assertEquals(400, executeCatalogCheckRequest(osb, "GET",
+				"/v2/service_instances/1/service_bindings/2/last_operation", null,
+				Collections.singletonMap("service_id", "service-x")));
+
+		// checks turned off
+		osb.setCatalog(null);
+		assertEquals(409, executeCatalogCheckRequest(osb, "DELETE", "/v2/service_instances/1", null, unknown));
+	}
+
+	private static String provisionBody(String serviceID, String planID) {
+		return "{\"service_id\": \"" + serviceID + "\", \"plan_id\": \"" + planID
+				+ "\", \"organization_guid\": \"org\", \"space_guid\": \"space\"}";
+	}
+
+	private static String updateBody(String planID, String previousPlanID) {
+		return "{\"service_id\": \"service-1\", \"plan_id\": \"" + planID
+				+ "\", \"previous_values\": {\"plan_id\": \"" + previousPlanID + "\"}}";
+	}
+
+	private int executeCatalogCheckRequest(OpenServiceBroker osb, String method, String path, String body,
+			Map<String, String> parameters) throws Exception {
+		HttpServletRequest request = MockFactory.createHttpServletRequest(method, path, body, parameters);
+		when(request.getParameter("accepts_incomplete")).thenReturn("true");
+
+		StringWriter stringWriter = new StringWriter();
+		HttpServletResponse response = MockFactory.createHttpServletResponse(stringWriter);
+
+		// the handler rejects everything that passes the catalog check
+		osb.processRequest(request, response, new AbstractTestHandler() {
+			@Override
+			public ProvisionResponse provision(ProvisionRequest request) throws OpenServiceBrokerException {
+				throw new ConflictException("Handler called.");
+			}
+
+			@Override
+			public UpdateServiceInstanceResponse update(UpdateServiceInstanceRequest request)
+					throws OpenServiceBrokerException {
+				throw new ConflictException("Handler called.");
+			}
+
+			@Override
+			public DeprovisionResponse deprovision(DeprovisionRequest request) throws OpenServiceBrokerException {
+				throw new ConflictException("Handler called.");
+			}
+
+			@Override
+			public InstanceLastOperationResponse getLastOperationForInstance(InstanceLastOperationRequest request)
+					throws OpenServiceBrokerException {
+				throw new ConflictException("Handler called.");
+			}
+
+			@Override
+			public BindResponse bind(BindRequest request) throws OpenServiceBrokerException {
+				throw new ConflictException("Handler called.");
+			}
+
+			@Override
+			public UnbindResponse unbind(UnbindRequest request) throws OpenServiceBrokerException {
+				throw new ConflictException("Handler called.");
+			}
+
+			@Override
+			public BindingLastOperationResponse getLastOperationForBinding(BindingLastOperationRequest request)
+					throws OpenServiceBrokerException {
+				throw new ConflictException("Handler called.");
+			}
+		});
+
+		return response.getStatus();
+	}
 }
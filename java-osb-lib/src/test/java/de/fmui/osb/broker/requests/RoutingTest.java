@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.requests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import de.fmui.osb.broker.internal.io.IOUtils;
+import de.fmui.osb.broker.internal.routing.Operation;
+import de.fmui.osb.broker.internal.routing.RequestPath;
+import de.fmui.osb.broker.internal.routing.RouteMatch;
+import de.fmui.osb.broker.internal.routing.RouteTable;
+
+public class RoutingTest {
+
+	@Test
+	public void testRoutes() {
+		assertRoute(Operation.CATALOG, null, null, "GET", "v2", "catalog");
+		assertRoute(Operation.PROVISION, "i1", null, "PUT", "v2", "service_instances", "i1");
+		assertRoute(Operation.FETCH_INSTANCE, "i1", null, "GET", "v2", "service_instances", "i1");
+		assertRoute(Operation.UPDATE, "i1", null, "PATCH", "v2", "service_instances", "i1");
+		assertRoute(Operation.DEPROVISION, "i1", null, "DELETE", "v2", "service_instances", "i1");
+		assertRoute(Operation.INSTANCE_LAST_OPERATION, "i1", null, "GET", "v2", "service_instances", "i1",
+				"last_operation");
+		assertRoute(Operation.BIND, "i1", "b1", "PUT", "v2", "service_instances", "i1", "service_bindings", "b1");
+		assertRoute(Operation.FETCH_BINDING, "i1", "b1", "GET", "v2", "service_instances", "i1", "service_bindings",
+				"b1");
+		assertRoute(Operation.UNBIND, "i1", "b1", "DELETE", "v2", "service_instances", "i1", "service_bindings",
+				"b1");
+		assertRoute(Operation.BINDING_LAST_OPERATION, "i1", "b1", "GET", "v2", "service_instances", "i1",
+				"service_bindings", "b1", "last_operation");
+	}
+
+	@Test
+	public void testRoutesWithPrefix() {
+		assertRoute(Operation.CATALOG, null, null, "GET", "async", "v2", "catalog");
+		assertRoute(Operation.FETCH_INSTANCE, "catalog", null, "GET", "v2", "v2", "service_instances", "catalog");
+		assertRoute(Operation.INSTANCE_LAST_OPERATION, "i1", null, "GET", "a", "b", "v2", "service_instances", "i1",
+				"last_operation");
+		assertRoute(Operation.BINDING_LAST_OPERATION, "i1", "b1", "GET", "x", "v2", "service_instances", "i1",
+				"service_bindings", "b1", "last_operation");
+	}
+
+	@Test
+	public void testNoRoute() {
+		assertNull(match("GET"));
+		assertNull(match("GET", "catalog"));
+		assertNull(match("GET", "v2", "catalog", "test"));
+		assertNull(match("PUT", "v2", "catalog"));
+		assertNull(match("POST", "v2", "service_instances", "i1"));
+		assertNull(match("PATCH", "v2", "service_instances", "i1", "service_bindings", "b1"));
+		assertNull(match("GET", "v3", "service_instances", "i1", "last_operation"));
+	}
+
+	@Test
+	public void testRequestPath() {
+		String[] paths = new String[] { "", "/", "//", " /v2/catalog", "/v2/catalog", "/v2/catalog/", "/v2//catalog//",
+				"/v2/service_instances/a%20b+c", "/v2/service_instances/%C3%A4/last_operation", "/%76%32/catalog",
+				"/v2/service_instances/a%2Fb/service_bindings/b" };
+
+		for (String path : paths) {
+			RequestPath requestPath = new RequestPath("/context" + path, "/context".length());
+			assertArrayEquals(path, splitPath(path), requestPath.getSegments());
+		}
+
+		assertEquals("a b c", RouteTable.OSB_V2.match("GET", new RequestPath("/v2/service_instances/a%20b+c", 0))
+				.getInstanceID());
+		assertEquals(Operation.CATALOG, RouteTable.OSB_V2.match("GET", new RequestPath("/%76%32/catalog", 0))
+				.getOperation());
+	}
+
+	@Test
+	public void testInvalidRequestPath() {
+		String[] paths = new String[] { "/v2/service_instances/a\nb", "/v2/service_instances/a%0Ab",
+				"/v2/service_instances/a%0db", "/v2%00/catalog", "/x%08/v2/catalog", "/v2/catalog\r" };
+
+		for (String path : paths) {
+			try {
+				new RequestPath(path, 0);
+				fail(path);
+			} catch (RuntimeException e) {
+				// expected
+			}
+		}
+	}
+
+	private String[] splitPath(String p) {
+		// reference implementation
+		if (p.length() == 0) {
+			return new String[0];
+		}
+
+		String[] result = p.substring(1).split("/");
+		for (int i = 0; i < result.length; i++) {
+			result[i] = IOUtils.decodeURL(result[i]);
+		}
+
+		return result;
+	}
+
+	private void assertRoute(Operation operation, String instanceID, String bindingID, String method,
+			String... path) {
+		RouteMatch match = match(method, path);
+		assertEquals(operation, match.getOperation());
+		assertEquals(instanceID, match.getInstanceID());
+		assertEquals(bindingID, match.getBindingID());
+	}
+
+	private RouteMatch match(String method, String... path) {
+		return RouteTable.OSB_V2.match(method, path);
+	}
+}
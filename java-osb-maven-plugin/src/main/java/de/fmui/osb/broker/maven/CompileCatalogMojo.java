@@ -0,0 +1,188 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.maven;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import de.fmui.osb.broker.catalog.CatalogResponseBody;
+import de.fmui.osb.broker.catalog.CompiledCatalog;
+import de.fmui.osb.broker.exceptions.ValidationException;
+
+/**
+ * Validates a catalog file and compiles it.
+ *
+ * The compiled catalog is written to the output directory of the project, so
+ * that it ends up in the JAR or WAR. Load it with
+ * {@code AbstractOpenServiceBrokerHandler.readCompiledCatalogFromResourceFile()}
+ * or {@link CompiledCatalog#read(java.io.InputStream)}.
+ *
+ * The catalog is only compiled again if the content of the catalog file, the
+ * compiled catalog format or the plugin version has changed. These are
+ * recorded in a stamp file in the build directory.
+ */
+@Mojo(name = "compile-catalog", defaultPhase = LifecyclePhase.PROCESS_RESOURCES, threadSafe = true)
+public class CompileCatalogMojo extends AbstractMojo {
+
+	/**
+	 * The catalog file.
+	 */
+	@Parameter(property = "osb.catalog", defaultValue = "${project.basedir}/src/main/catalog/catalog.json")
+	private File catalog;
+
+	/**
+	 * The compiled catalog file.
+	 */
+	@Parameter(property = "osb.compiledCatalog", defaultValue = "${project.build.outputDirectory}/catalog.osbc")
+	private File outputFile;
+
+	/**
+	 * The directory that holds the stamp file.
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/osb", readonly = true)
+	private File stampDirectory;
+
+	@Parameter(defaultValue = "${plugin.version}", readonly = true)
+	private String pluginVersion;
+
+	/**
+	 * Skips the compilation.
+	 */
+	@Parameter(property = "osb.skip", defaultValue = "false")
+	private boolean skip;
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		if (skip) {
+			getLog().info("Skipping catalog compilation.");
+			return;
+		}
+
+		if (!catalog.isFile()) {
+			throw new MojoFailureException("Catalog file not found: " + catalog);
+		}
+
+		byte[] catalogBytes;
+		try {
+			catalogBytes = Files.readAllBytes(catalog.toPath());
+		} catch (IOException e) {
+			throw new MojoFailureException("Cannot read catalog " + catalog + ": " + e.getMessage(), e);
+		}
+
+		File stampFile = new File(stampDirectory, outputFile.getName() + ".stamp");
+		String stamp = createStamp(catalogBytes);
+		if (outputFile.isFile() && stamp.equals(readStamp(stampFile))) {
+			getLog().info("Compiled catalog is up to date: " + outputFile);
+			return;
+		}
+
+		CatalogResponseBody catalogBody = new CatalogResponseBody();
+		try {
+			Reader reader = new InputStreamReader(new ByteArrayInputStream(catalogBytes), StandardCharsets.UTF_8);
+			try {
+				catalogBody.load(reader);
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			throw new MojoFailureException("Cannot read catalog " + catalog + ": " + e.getMessage(), e);
+		}
+
+		File dir = outputFile.getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+			throw new MojoExecutionException("Cannot create directory " + dir);
+		}
+
+		try {
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile));
+			try {
+				CompiledCatalog.write(catalogBody, out);
+			} finally {
+				out.close();
+			}
+		} catch (ValidationException e) {
+			outputFile.delete();
+			throw new MojoFailureException("Invalid catalog " + catalog + ": " + e.getMessage(), e);
+		} catch (IOException e) {
+			outputFile.delete();
+			throw new MojoExecutionException("Cannot write compiled catalog " + outputFile, e);
+		}
+
+		try {
+			if (!stampDirectory.isDirectory() && !stampDirectory.mkdirs()) {
+				throw new IOException("Cannot create directory " + stampDirectory);
+			}
+			Files.write(stampFile.toPath(), stamp.getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			throw new MojoExecutionException("Cannot write stamp file " + stampFile, e);
+		}
+
+		getLog().info("Compiled catalog " + catalog + " to " + outputFile);
+	}
+
+	/**
+	 * Creates the stamp of a compilation from the catalog content, the format
+	 * version and the plugin version.
+	 */
+	private String createStamp(byte[] catalogBytes) throws MojoExecutionException {
+		byte[] digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256").digest(catalogBytes);
+		} catch (NoSuchAlgorithmException e) {
+			throw new MojoExecutionException("SHA-256 not available!", e);
+		}
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("format=").append(CompiledCatalog.FORMAT_VERSION).append('\n');
+		sb.append("plugin=").append(pluginVersion).append('\n');
+		sb.append("sha256=");
+		for (byte b : digest) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		sb.append('\n');
+
+		return sb.toString();
+	}
+
+	private static String readStamp(File stampFile) {
+		if (!stampFile.isFile()) {
+			return null;
+		}
+
+		try {
+			return new String(Files.readAllBytes(stampFile.toPath()), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2018 Florian Müller
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package de.fmui.osb.broker.maven;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.fmui.osb.broker.catalog.CatalogResponseBody;
+import de.fmui.osb.broker.catalog.CompiledCatalog;
+
+public class CompileCatalogMojoTest {
+
+	private static final String CATALOG = "{\"services\": [{\"id\": \"s1\", \"name\": \"service\", "
+			+ "\"description\": \"A service.\", \"bindable\": true, \"plans\": [{\"id\": \"p1\", "
+			+ "\"name\": \"plan\", \"description\": \"%s\"}]}]}";
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void testCompileCatalog() throws Exception {
+		File catalog = tmp.newFile("catalog.json");
+		File outputFile = new File(tmp.getRoot(), "classes/catalog.osbc");
+		File stampDirectory = new File(tmp.getRoot(), "osb");
+
+		writeCatalog(catalog, "A plan.");
+		createMojo(catalog, outputFile, stampDirectory, "1.0").execute();
+		assertEquals(loadCatalog("A plan."), readCompiledCatalog(outputFile));
+
+		// unchanged catalog
+		long lastModified = outputFile.lastModified() - 10000;
+		assertTrue(outputFile.setLastModified(lastModified));
+		createMojo(catalog, outputFile, stampDirectory, "1.0").execute();
+		assertEquals(lastModified, outputFile.lastModified());
+
+		// changed catalog that looks older than the compiled catalog
+		writeCatalog(catalog, "A changed plan.");
+		assertTrue(catalog.setLastModified(lastModified - 10000));
+		createMojo(catalog, outputFile, stampDirectory, "1.0").execute();
+		assertEquals(loadCatalog("A changed plan."), readCompiledCatalog(outputFile));
+
+		// new plugin version
+		assertTrue(outputFile.setLastModified(lastModified));
+		createMojo(catalog, outputFile, stampDirectory, "1.1").execute();
+		assertFalse(lastModified == outputFile.lastModified());
+		assertEquals(loadCatalog("A changed plan."), readCompiledCatalog(outputFile));
+	}
+
+	@Test
+	public void testInvalidCatalog() throws Exception {
+		File catalog = tmp.newFile("catalog.json");
+		Files.write(catalog.toPath(), "{\"services\": []}".getBytes(StandardCharsets.UTF_8));
+		File outputFile = new File(tmp.getRoot(), "classes/catalog.osbc");
+
+		try {
+			createMojo(catalog, outputFile, new File(tmp.getRoot(), "osb"), "1.0").execute();
+			fail("Invalid catalog compiled!");
+		} catch (MojoFailureException e) {
+			// expected
+		}
+
+		assertFalse(outputFile.exists());
+	}
+
+	private static CompileCatalogMojo createMojo(File catalog, File outputFile, File stampDirectory,
+			String pluginVersion) throws Exception {
+		CompileCatalogMojo mojo = new CompileCatalogMojo();
+		setField(mojo, "catalog", catalog);
+		setField(mojo, "outputFile", outputFile);
+		setField(mojo, "stampDirectory", stampDirectory);
+		setField(mojo, "pluginVersion", pluginVersion);
+
+		return mojo;
+	}
+
+	private static void setField(Object obj, String name, Object value) throws Exception {
+		Field field = obj.getClass().getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(obj, value);
+	}
+
+	private static void writeCatalog(File file, String planDescription) throws Exception {
+		Files.write(file.toPath(), String.format(CATALOG, planDescription).getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static CatalogResponseBody loadCatalog(String planDescription) throws Exception {
+		CatalogResponseBody result = new CatalogResponseBody();
+		result.load(String.format(CATALOG, planDescription));
+		return result;
+	}
+
+	private static CatalogResponseBody readCompiledCatalog(File file) throws Exception {
+		try (InputStream in = Files.newInputStream(file.toPath())) {
+			return CompiledCatalog.read(in);
+		}
+	}
+}